@@ -24,6 +24,7 @@ import android.graphics.YuvImage;
 import android.hardware.Camera;
 import android.util.Log;
 
+import org.ftccommunity.ftcxtensible.core.trace.EventTracer;
 import org.ftccommunity.ftcxtensible.robot.RobotContext;
 
 import java.io.ByteArrayOutputStream;
@@ -31,6 +32,7 @@ import java.util.concurrent.TimeUnit;
 
 public class CameraPreviewCallback implements Camera.PreviewCallback {
     private static final String TAG = CameraPreviewCallback.class.getSimpleName();
+    private static final String FRAME_EVENT = "Camera.onPreviewFrame";
     private final ByteArrayOutputStream outputStream;
     private long delay;
     private RobotContext context;
@@ -55,6 +57,7 @@ public class CameraPreviewCallback implements Camera.PreviewCallback {
         }
 
         if (extensibleCameraManager != null && context.cameraManager().getCamera() != null) {
+            EventTracer.begin(FRAME_EVENT);
             Camera.Parameters parameters = context.cameraManager().getCamera().getParameters();
             Camera.Size previewSize = parameters.getPreviewSize();
             YuvImage image = new YuvImage(data, parameters.getPreviewFormat(),
@@ -79,6 +82,8 @@ public class CameraPreviewCallback implements Camera.PreviewCallback {
                 timestamp = System.nanoTime();
             } catch (Exception e) {
                 Log.e(TAG, e.getLocalizedMessage(), e);
+            } finally {
+                EventTracer.end(FRAME_EVENT);
             }
 
         }
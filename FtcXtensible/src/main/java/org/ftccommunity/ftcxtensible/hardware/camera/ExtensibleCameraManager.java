@@ -27,6 +27,7 @@ import android.widget.RelativeLayout;
 
 import com.google.common.collect.EvictingQueue;
 
+import org.ftccommunity.ftcxtensible.core.trace.EventTracer;
 import org.ftccommunity.ftcxtensible.gui.CameraPreview;
 import org.ftccommunity.ftcxtensible.internal.Beta;
 import org.ftccommunity.ftcxtensible.robot.RobotContext;
@@ -48,6 +49,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 @TargetApi(19)
 public class ExtensibleCameraManager {
     private static final String TAG = "CAMERA_MGR::";
+    private static final String PROCESS_IMAGE_EVENT = "Camera.processImage";
 
     private final EvictingQueue<SoftReference<Bitmap>> imageQueue;
     private final RobotContext context;
@@ -204,6 +206,7 @@ public class ExtensibleCameraManager {
             context.submitAsyncTask(new Runnable() {
                 @Override
                 public void run() {
+                    EventTracer.begin(PROCESS_IMAGE_EVENT);
                     try {
                         Bitmap post = imageProcessingCallback.processImage(softBitmap);
                         if (post != null) {
@@ -211,6 +214,8 @@ public class ExtensibleCameraManager {
                         }
                     } catch (Exception ex) {
                         Log.e("CAMERA_PROCESSING::", ex.getLocalizedMessage(), ex);
+                    } finally {
+                        EventTracer.end(PROCESS_IMAGE_EVENT);
                     }
                 }
             });
@@ -15,30 +15,26 @@
  * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
  * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
-package org.ftccommunity.ftcxtensible.robot.formatters;
+package org.ftccommunity.ftcxtensible.interfaces;
 
-import org.ftccommunity.ftcxtensible.internal.Alpha;
-import org.ftccommunity.ftcxtensible.internal.NotDocumentedWell;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Date;
-import java.util.logging.LogRecord;
-
-@NotDocumentedWell
-@Alpha
-class JSON {
-    private String level;
-    private Date date;
-    private String message;
-
-    private JSON(String lvl, Date timestamp, String mess) {
-        level = lvl;
-        date = timestamp;
-        message = mess;
-    }
-
-    public static JSON fromLogRecord(LogRecord r, String mess) {
-        String lvl = r.getLevel().toString();
-        Date time = new Date(r.getMillis());
-        return new JSON(lvl, time, mess);
-    }
+/**
+ * Gets the telemetry data that is sent, as it is sent. Listeners are called on the telemetry
+ * sender thread, never the loop thread, and must return quickly since the next send waits on
+ * them.
+ *
+ * @author David Sargent
+ * @see org.ftccommunity.ftcxtensible.robot.ExtensibleTelemetry#addListener(TelemetryListener)
+ * @since 0.3.2
+ */
+public interface TelemetryListener {
+    /**
+     * Called for every value that is sent because it is new or changed
+     *
+     * @param key   the key of the value, or {@code null} for a line of data, which has no key
+     * @param value the value
+     */
+    void onData(@Nullable String key, @NotNull String value);
 }
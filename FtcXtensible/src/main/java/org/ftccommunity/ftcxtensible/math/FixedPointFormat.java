@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.math;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Appends numbers to a {@link StringBuilder} with a fixed number of decimal places, without
+ * creating any garbage along the way (unlike {@link String#format(String, Object...)} or
+ * {@link Double#toString(double)}).
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+public final class FixedPointFormat {
+    /**
+     * The most decimal places supported
+     */
+    public static final int MAX_DECIMALS = 9;
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
+    private FixedPointFormat() {
+        throw new AssertionError("No FixedPointFormat for you!");
+    }
+
+    /**
+     * Appends a number rounded to the given number of decimal places, half away from zero
+     *
+     * @param builder  where to append the number
+     * @param value    the number
+     * @param decimals how many decimal places to show, between 0 and {@value #MAX_DECIMALS}
+     * @return the builder
+     */
+    @NotNull
+    public static StringBuilder append(@NotNull StringBuilder builder, double value, int decimals) {
+        // Not checkArgument, its varargs would allocate on every call
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("Between 0 and " + MAX_DECIMALS + " decimals are supported");
+        }
+        if (Double.isNaN(value)) {
+            return builder.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            return builder.append(value > 0 ? "Infinity" : "-Infinity");
+        }
+
+        long scale = POWERS_OF_TEN[decimals];
+        double magnitude = Math.abs(value) * scale + 0.5;
+        if (magnitude >= Long.MAX_VALUE) {
+            // Too big to be exact anyway
+            return builder.append(value);
+        }
+
+        long scaled = (long) magnitude;
+        if (value < 0 && scaled != 0) {
+            builder.append('-');
+        }
+
+        builder.append(scaled / scale);
+        if (decimals > 0) {
+            builder.append('.');
+            long fraction = scaled % scale;
+            for (long digit = scale / 10; digit > fraction && digit > 1; digit /= 10) {
+                builder.append('0');
+            }
+            builder.append(fraction);
+        }
+
+        return builder;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.math;
+
+import java.io.Serializable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A fixed-memory latency histogram with log-linear buckets, in the style of HdrHistogram. Each
+ * power of two is split into {@value #SUB_BUCKETS} linear sub-buckets, so a recorded value is
+ * reported to within about 1.6% of its real value, no matter how many values are recorded.
+ * Recording never allocates.
+ * <p>
+ * This is not thread-safe, it is meant to be written to by a single thread.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+public final class LatencyHistogram implements Serializable {
+    private static final long serialVersionUID = 0;
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    private final long[] counts;
+    private long count;
+    private long sum;
+    private long min;
+    private long max;
+
+    /**
+     * Creates a new, empty, histogram able to track values up to about 2<sup>40</sup> (about 18
+     * minutes when recording nanoseconds)
+     */
+    public LatencyHistogram() {
+        counts = new long[indexOf(MAX_VALUE) + 1];
+        reset();
+    }
+
+    private static int indexOf(long value) {
+        int bucket = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        int subBucket = (int) (value >>> bucket);
+        return (bucket << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    private static long highestValueAt(int index) {
+        int bucket = Math.max(0, (index >> SUB_BUCKET_BITS) - 1);
+        long subBucket = index - (bucket << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << bucket) - 1;
+    }
+
+    /**
+     * Records a single value, negative values are recorded as zero and values larger than the
+     * histogram can track are recorded as the largest trackable value
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        value = Math.min(Math.max(value, 0), MAX_VALUE);
+        counts[indexOf(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Clears every recorded value
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Gets the value that the given percentage of recorded values are less than or equal to
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "The percentile must be between 0 and 100");
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.max(min, Math.min(max, highestValueAt(i)));
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * Gets how many values have been recorded
+     *
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the smallest recorded value
+     *
+     * @return the exact minimum, or 0 if nothing has been recorded
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * Gets the largest recorded value
+     *
+     * @return the exact maximum, or 0 if nothing has been recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the mean of every recorded value
+     *
+     * @return the mean, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+}
@@ -29,12 +29,14 @@ public class ServerSettings {
     private String index;
     private String hardwareMapJsonPage;
     private String logPage;
+    private String eventStreamPage;
 
     private ServerSettings() {
         setWebDirectory("/sdcard/FIRST/web");
         setIndex("/index.html");
         setHardwareMapJsonPage("/robot.json");
         setLogPage("/robot-log.html");
+        setEventStreamPage("/events");
     }
 
     /**
@@ -119,4 +121,23 @@ public class ServerSettings {
     public void setLogPage(String logPage) {
         this.logPage = logPage;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the name of the event stream page, which pushes telemetry and log entries to the
+     * browser as Server-Sent Events
+     *
+     * @return event stream page name
+     */
+    public String getEventStreamPage() {
+        return eventStreamPage;
+    }
+
+    /**
+     * Sets the name of the event stream page, under the same conditions as the HardwareMap page
+     *
+     * @param eventStreamPage name of the event stream page
+     */
+    public void setEventStreamPage(String eventStreamPage) {
+        this.eventStreamPage = eventStreamPage;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.networking.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The events waiting to be written to one client of the event stream. The buffer has a fixed
+ * size; once it is full, the oldest event is dropped to make room, so a client that can't keep up
+ * loses events instead of holding up whoever produces them.
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+final class EventBuffer {
+    private final String[] events;
+    private int head;
+    private int size;
+    private long dropped;
+    private long unreportedDrops;
+
+    /**
+     * Creates a buffer
+     *
+     * @param capacity the most events to hold
+     */
+    EventBuffer(int capacity) {
+        checkArgument(capacity > 0, "The buffer must hold at least one event");
+        events = new String[capacity];
+    }
+
+    /**
+     * Adds an event, dropping the oldest one if the buffer is full
+     *
+     * @param event the event to add
+     * @return {@code true} if an event was dropped
+     */
+    synchronized boolean offer(@NotNull String event) {
+        checkNotNull(event);
+        boolean drop = size == events.length;
+        if (drop) {
+            events[head] = null;
+            head = (head + 1) % events.length;
+            size--;
+            dropped++;
+            unreportedDrops++;
+        }
+
+        events[(head + size) % events.length] = event;
+        size++;
+        return drop;
+    }
+
+    /**
+     * Takes the oldest event out of the buffer
+     *
+     * @return the oldest event, or {@code null} if the buffer is empty
+     */
+    @Nullable
+    synchronized String poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        String event = events[head];
+        events[head] = null;
+        head = (head + 1) % events.length;
+        size--;
+        return event;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets how many events were dropped since the buffer was created
+     *
+     * @return the number of dropped events
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Gets how many events were dropped since the last call, so the client can be told
+     *
+     * @return the number of events dropped since the last call
+     */
+    synchronized long takeUnreportedDrops() {
+        long drops = unreportedDrops;
+        unreportedDrops = 0;
+        return drops;
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.networking.http;
+
+import android.util.Log;
+
+import com.google.common.base.Charsets;
+
+import org.ftccommunity.ftcxtensible.interfaces.TelemetryListener;
+import org.ftccommunity.ftcxtensible.robot.ExtensibleTelemetry;
+import org.ftccommunity.ftcxtensible.robot.LogRing;
+import org.ftccommunity.ftcxtensible.robot.RobotContext;
+import org.ftccommunity.ftcxtensible.robot.formatters.JsonLogWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.AttributeKey;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CACHE_CONTROL;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpHeaders.Values;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+/**
+ * Pushes telemetry and log entries to browsers as Server-Sent Events. Each browser that opens the
+ * {@link org.ftccommunity.ftcxtensible.networking.ServerSettings#getEventStreamPage() event stream
+ * page} gets a stream of:
+ * <ul>
+ * <li>{@code telemetry} events, {@code {"key":...,"value":...}}, for every value the telemetry
+ * sends because it is new or changed; lines of data have a {@code null} key</li>
+ * <li>{@code log} events, {@code {"sequence":...,"time":...,"level":...,"tag":...,"message":...}},
+ * for every new entry in the robot's log</li>
+ * <li>{@code dropped} events, with the number of events the browser missed</li>
+ * </ul>
+ * <p>
+ * Every event is formatted once and put in each client's own {@link EventBuffer}, which drops
+ * its oldest events once it is full. Writing to the browser happens on the client's Netty event
+ * loop, and stops while the connection can't take more; so a slow browser only ever loses events,
+ * it never backs up into the telemetry or the robot loop.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+public final class EventStreamHub implements TelemetryListener {
+    /**
+     * How many events a client can fall behind before the oldest are dropped
+     */
+    public static final int DEFAULT_CLIENT_BUFFER = 256;
+    private static final long LOG_POLL_PERIOD = 100;
+    private static final int LOG_BATCH = 64;
+    private static final String TAG = "EVENT_STREAM::";
+    private static final AttributeKey<Client> CLIENT = AttributeKey.valueOf("xtensible.eventStreamClient");
+
+    private final RobotContext context;
+    private final int clientBuffer;
+    private final CopyOnWriteArrayList<Client> clients;
+    // Only touched by the log poller
+    private final ArrayList<LogRing.Entry> entries;
+    private long logCursor;
+    private ExtensibleTelemetry telemetry;
+    private ScheduledFuture<?> logPoller;
+
+    /**
+     * Creates a hub for the telemetry and log of the given context
+     *
+     * @param ctx the context to stream
+     */
+    public EventStreamHub(@NotNull RobotContext ctx) {
+        this(ctx, DEFAULT_CLIENT_BUFFER);
+    }
+
+    /**
+     * Creates a hub for the telemetry and log of the given context
+     *
+     * @param ctx          the context to stream
+     * @param clientBuffer how many events a client can fall behind before the oldest are dropped
+     */
+    public EventStreamHub(@NotNull RobotContext ctx, int clientBuffer) {
+        context = checkNotNull(ctx);
+        this.clientBuffer = clientBuffer;
+        clients = new CopyOnWriteArrayList<>();
+        entries = new ArrayList<>(LOG_BATCH);
+    }
+
+    /**
+     * Starts listening to the telemetry and watching the log
+     *
+     * @param executor where to watch the log from, normally the server's event loops
+     */
+    public synchronized void start(@NotNull ScheduledExecutorService executor) {
+        if (logPoller != null) {
+            return;
+        }
+
+        telemetry = context.telemetry();
+        if (telemetry != null) {
+            telemetry.addListener(this);
+        }
+        logCursor = context.status().logRing().lastSequence();
+        logPoller = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                pollLog();
+            }
+        }, LOG_POLL_PERIOD, LOG_POLL_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops streaming and closes every client
+     */
+    public synchronized void stop() {
+        if (logPoller != null) {
+            logPoller.cancel(false);
+            logPoller = null;
+        }
+        if (telemetry != null) {
+            telemetry.removeListener(this);
+            telemetry = null;
+        }
+        for (Client client : clients) {
+            client.channel.close();
+        }
+        clients.clear();
+    }
+
+    /**
+     * Turns a request for the event stream into a stream, the response stays open until the
+     * browser closes it
+     *
+     * @param ctx the context of the requesting channel
+     */
+    void open(@NotNull ChannelHandlerContext ctx) {
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
+        response.headers().set(CONTENT_TYPE, "text/event-stream; charset=utf-8");
+        response.headers().set(CACHE_CONTROL, Values.NO_CACHE);
+        response.headers().set(CONNECTION, Values.KEEP_ALIVE);
+        HttpHeaders.setTransferEncodingChunked(response);
+
+        Channel channel = ctx.channel();
+        Client client = new Client(channel, new EventBuffer(clientBuffer));
+        channel.attr(CLIENT).set(client);
+        // Tell the browser how long to wait before reconnecting
+        ctx.writeAndFlush(response);
+        channel.writeAndFlush(chunk("retry: 1000\n\n"));
+        clients.add(client);
+    }
+
+    /**
+     * Forgets a channel once it is closed
+     *
+     * @param channel the closed channel
+     */
+    void closed(@NotNull Channel channel) {
+        Client client = channel.attr(CLIENT).getAndRemove();
+        if (client != null) {
+            clients.remove(client);
+        }
+    }
+
+    /**
+     * Resumes writing to a channel once it can take more
+     *
+     * @param channel the channel
+     */
+    void writabilityChanged(@NotNull Channel channel) {
+        Client client = channel.attr(CLIENT).get();
+        if (client != null && channel.isWritable()) {
+            client.schedule();
+        }
+    }
+
+    /**
+     * Gets how many browsers are streaming
+     *
+     * @return the number of clients
+     */
+    public int getClients() {
+        return clients.size();
+    }
+
+    @Override
+    public void onData(@Nullable String key, @NotNull String value) {
+        if (clients.isEmpty()) {
+            return;
+        }
+
+        StringBuilder event = new StringBuilder("event: telemetry\ndata: ");
+        try {
+            new JsonLogWriter(event).beginObject()
+                    .member("key", key)
+                    .member("value", value)
+                    .endObject();
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+        publish(event.append("\n\n").toString());
+    }
+
+    /**
+     * Publishes the log entries added since the last poll, this runs on the log poller
+     */
+    void pollLog() {
+        LogRing ring = context.status().logRing();
+        if (clients.isEmpty()) {
+            logCursor = ring.lastSequence();
+            return;
+        }
+
+        try {
+            while (ring.read(logCursor, entries, LOG_BATCH) > 0) {
+                for (int i = 0; i < entries.size(); i++) {
+                    LogRing.Entry entry = entries.get(i);
+                    StringBuilder event = new StringBuilder("id: ").append(entry.getSequence())
+                            .append("\nevent: log\ndata: ");
+                    new JsonLogWriter(event).beginObject()
+                            .member("sequence", entry.getSequence())
+                            .member("time", entry.getTime())
+                            .member("level", entry.getLevel().getName())
+                            .member("tag", entry.getTag())
+                            .member("message", entry.getMessage())
+                            .endObject();
+                    publish(event.append("\n\n").toString());
+                    logCursor = entry.getSequence();
+                }
+                entries.clear();
+            }
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        } catch (RuntimeException ex) {
+            // Keep the poller scheduled
+            entries.clear();
+            Log.w(TAG, "Cannot stream the log", ex);
+        }
+    }
+
+    private void publish(String event) {
+        for (Client client : clients) {
+            client.buffer.offer(event);
+            client.schedule();
+        }
+    }
+
+    private static DefaultHttpContent chunk(String text) {
+        return new DefaultHttpContent(Unpooled.copiedBuffer(text, Charsets.UTF_8));
+    }
+
+    private static final class Client implements Runnable {
+        private final Channel channel;
+        private final EventBuffer buffer;
+        private final AtomicBoolean scheduled;
+
+        Client(Channel channel, EventBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+            scheduled = new AtomicBoolean();
+        }
+
+        /**
+         * Has the channel's event loop write out the buffer, unless it is already going to
+         */
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                channel.eventLoop().execute(this);
+            }
+        }
+
+        /**
+         * Writes out as much of the buffer as the channel will take, this runs on the channel's
+         * event loop
+         */
+        @Override
+        public void run() {
+            scheduled.set(false);
+            if (!channel.isActive()) {
+                return;
+            }
+
+            long drops = buffer.takeUnreportedDrops();
+            if (drops > 0) {
+                channel.write(chunk("event: dropped\ndata: " + drops + "\n\n"));
+            }
+
+            String event;
+            while (channel.isWritable() && (event = buffer.poll()) != null) {
+                channel.write(chunk(event)).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            }
+            channel.flush();
+        }
+    }
+}
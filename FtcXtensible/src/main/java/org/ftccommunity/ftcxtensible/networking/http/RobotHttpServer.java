@@ -61,6 +61,7 @@ public final class RobotHttpServer implements Runnable {
         // Configure the server.
         EventLoopGroup bossGroup = new NioEventLoopGroup(1);
         EventLoopGroup workerGroup = new NioEventLoopGroup();
+        final EventStreamHub eventStream = new EventStreamHub(context);
         try {
             try {
                 ServerBootstrap b = new ServerBootstrap();
@@ -81,17 +82,19 @@ public final class RobotHttpServer implements Runnable {
                             protected void initChannel(SocketChannel ch) throws Exception {
                                 ch.pipeline()
                                         .addLast(new HttpServerCodec(),
-                                                new org.ftccommunity.ftcxtensible.networking.http.RobotHttpServerHandler(context));
+                                                new org.ftccommunity.ftcxtensible.networking.http.RobotHttpServerHandler(context, eventStream));
                             }
                         });
 
                 Channel ch = b.bind(PORT).sync().channel();
+                eventStream.start(workerGroup);
 
                 System.err.println("Open your web browser and navigate to " +
                         ("http") + "://127.0.0.1:" + PORT + '/');
 
                 ch.closeFuture().sync();
             } finally {
+                eventStream.stop();
                 bossGroup.shutdownGracefully();
                 workerGroup.shutdownGracefully();
             }
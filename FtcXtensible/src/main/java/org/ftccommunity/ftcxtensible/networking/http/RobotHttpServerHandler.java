@@ -28,12 +28,14 @@ import com.google.gson.GsonBuilder;
 import org.ftccommunity.ftcxtensible.networking.ServerSettings;
 import org.ftccommunity.ftcxtensible.robot.ExtensibleHardwareMap;
 import org.ftccommunity.ftcxtensible.robot.RobotContext;
+import org.ftccommunity.ftcxtensible.robot.RobotStatus;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFutureListener;
@@ -45,6 +47,7 @@ import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
 import io.netty.handler.codec.http.multipart.DefaultHttpDataFactory;
 import io.netty.handler.codec.http.multipart.HttpPostRequestDecoder;
 import io.netty.handler.codec.http.multipart.InterfaceHttpData;
@@ -54,6 +57,7 @@ import static io.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
 import static io.netty.handler.codec.http.HttpHeaders.Values;
+import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
 import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
 import static io.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
@@ -68,16 +72,49 @@ import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
  * @since 0.1.0
  */
 public class RobotHttpServerHandler extends ChannelInboundHandlerAdapter {
+    /**
+     * The header the cursor of the next log page is sent in, see {@link RobotStatus#getLog(long, int)}
+     */
+    public static final String LOG_CURSOR_HEADER = "X-Log-Cursor";
+    private static final int DEFAULT_LOG_PAGE = 100;
     private HashMap<String, String> cache;
     private HashMap<String, String> mimeTypes;
     private ServerSettings serverSettings;
     private RobotContext context;
+    private EventStreamHub eventStream;
 
     public RobotHttpServerHandler(RobotContext ctx) {
+        this(ctx, null);
+    }
+
+    /**
+     * Creates a handler that also serves the event stream page
+     *
+     * @param ctx         the robot context
+     * @param eventStream the hub to stream events from, or {@code null} to not serve the stream
+     */
+    public RobotHttpServerHandler(RobotContext ctx, EventStreamHub eventStream) {
         checkNotNull(ctx);
         serverSettings = ctx.serverSettings();
         context = ctx;
         cache = new HashMap<>();
+        this.eventStream = eventStream;
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (eventStream != null) {
+            eventStream.closed(ctx.channel());
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (eventStream != null) {
+            eventStream.writabilityChanged(ctx.channel());
+        }
+        super.channelWritabilityChanged(ctx);
     }
 
     @Override
@@ -109,13 +146,35 @@ public class RobotHttpServerHandler extends ChannelInboundHandlerAdapter {
 
             HttpResponseStatus responseStatus = OK;
             String uri = (req.getUri().equals("/") ? context.serverSettings().getIndex() : req.getUri());
+            QueryStringDecoder query = new QueryStringDecoder(uri);
+            String logCursor = null;
+            if (eventStream != null && query.path().equals(serverSettings.getEventStreamPage())) {
+                // The response stays open, the hub writes to it from here on
+                eventStream.open(ctx);
+                return;
+            }
             if (uri.equals(context.serverSettings().getHardwareMapJsonPage())) {
                 GsonBuilder gsonBuilder = new GsonBuilder().enableComplexMapKeySerialization();
                 Gson gson = gsonBuilder.create();
                 ExtensibleHardwareMap hardwareMap = context.hardwareMap();
                 page = gson.toJson(hardwareMap.dcMotors());
-            } else if (uri.equals(context.serverSettings().getLogPage())) {
-                page = context.status().getLog();
+            } else if (query.path().equals(context.serverSettings().getLogPage())) {
+                List<String> after = query.parameters().get("after");
+                if (after == null || after.isEmpty()) {
+                    page = context.status().getLog();
+                } else {
+                    // Only the entries the page hasn't seen yet
+                    List<String> max = query.parameters().get("max");
+                    try {
+                        RobotStatus.LogPage logPage = context.status().getLog(Long.parseLong(after.get(0)),
+                                max == null || max.isEmpty() ? DEFAULT_LOG_PAGE : Integer.parseInt(max.get(0)));
+                        page = logPage.getContent();
+                        logCursor = Long.toString(logPage.getNextCursor());
+                    } catch (IllegalArgumentException ex) {
+                        page = "Bad log cursor: " + ex.getMessage();
+                        responseStatus = BAD_REQUEST;
+                    }
+                }
             } else {
                 if (cache.containsKey(uri)) {
                     page = cache.get(uri);
@@ -146,6 +205,9 @@ public class RobotHttpServerHandler extends ChannelInboundHandlerAdapter {
 
             response.headers().set(CONTENT_TYPE, (MIME != null ? MIME : MimeForExtension(extension)) + (MIME != null && MIME.equals("application/octet-stream") ? "" : "; charset=utf-8"));
             response.headers().set(CONTENT_LENGTH, response.content().readableBytes());
+            if (logCursor != null) {
+                response.headers().set(LOG_CURSOR_HEADER, logCursor);
+            }
 
             if (!keepAlive) {
                 ctx.write(response).addListener(ChannelFutureListener.CLOSE);
@@ -0,0 +1,358 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.IllegalFormatException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A bounded queue of log records that any number of threads can write to, and one background
+ * thread writes out. Writers never take a lock: they claim a slot with one atomic operation, fill
+ * in a record that was allocated up front, and publish it. Formatting the message is left to the
+ * background thread.
+ * <p>
+ * The slots follow Dmitry Vyukov's bounded queue: each slot has a sequence number that tells
+ * writers when it is free and the reader when it is filled in.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+final class AsyncLogQueue {
+    private static final String TAG = "ASYNC_LOG_QUEUE";
+    private static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Record[] records;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    private final Sink sink;
+    private final Thread consumer;
+    private final AtomicLong dropped;
+    private final AtomicLong blocked;
+    private final AtomicLong written;
+    private final Object[] oneArgument;
+    private final Object[] twoArguments;
+    private volatile RobotLogger.OverflowPolicy policy;
+    private volatile boolean sleeping;
+    private volatile boolean running;
+    // Only touched by the consumer
+    private long head;
+
+    /**
+     * Creates the queue and starts its background thread
+     *
+     * @param capacity how many records can wait to be written, rounded up to a power of two
+     * @param policy   what to do with records that don't fit
+     * @param sink     where records are written to
+     * @param name     the name of the background thread
+     */
+    AsyncLogQueue(int capacity, @NotNull RobotLogger.OverflowPolicy policy, @NotNull Sink sink, @NotNull String name) {
+        checkArgument(capacity > 1 && capacity <= 1 << 16, "The capacity must be between 2 and 2^16");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        records = new Record[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            records[i] = new Record();
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+        tail = new AtomicLong();
+        this.policy = checkNotNull(policy);
+        this.sink = checkNotNull(sink);
+        dropped = new AtomicLong();
+        blocked = new AtomicLong();
+        written = new AtomicLong();
+        oneArgument = new Object[1];
+        twoArguments = new Object[2];
+
+        running = true;
+        consumer = new Thread(new Consumer(), checkNotNull(name));
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Adds a record, the message is formatted with {@link String#format(String, Object...)} by the
+     * background thread if there are any arguments
+     *
+     * @param status    the status the record belongs to, handed to the sink
+     * @param level     the level of the record
+     * @param tag       the tag of the record
+     * @param format    the message, or its format if there are arguments
+     * @param arguments how many of the arguments are used, 0 to 2
+     * @param first     the first argument
+     * @param second    the second argument
+     * @return {@code true} if the record was queued, {@code false} if it was dropped
+     */
+    boolean offer(@Nullable RobotStatus status, @NotNull Level level, @NotNull String tag, @NotNull String format,
+                  int arguments, @Nullable Object first, @Nullable Object second) {
+        long position = claim(level);
+        if (position < 0) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        int index = (int) (position & mask);
+        Record record = records[index];
+        record.status = status;
+        record.time = System.currentTimeMillis();
+        record.level = level;
+        record.tag = tag;
+        record.format = format;
+        record.arguments = arguments;
+        record.first = first;
+        record.second = second;
+        sequences.set(index, position + 1);
+
+        if (sleeping) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Claims the next slot for writing
+     *
+     * @return the position of the slot, or {@code -1} if the record should be dropped
+     */
+    private long claim(Level level) {
+        boolean waited = false;
+        while (true) {
+            long position = tail.get();
+            long sequence = sequences.get((int) (position & mask));
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+            } else if (sequence < position) {
+                // Full, the consumer hasn't freed this slot yet
+                RobotLogger.OverflowPolicy current = policy;
+                if (current == RobotLogger.OverflowPolicy.DROP ||
+                        (current == RobotLogger.OverflowPolicy.BLOCK_ON_ERRORS && level.intValue() < Level.WARNING.intValue()) ||
+                        !running) {
+                    return -1;
+                }
+                if (!waited) {
+                    waited = true;
+                    blocked.incrementAndGet();
+                }
+                LockSupport.unpark(consumer);
+                LockSupport.parkNanos(this, FULL_PARK);
+            }
+            // Otherwise another writer got the slot first, try the next one
+        }
+    }
+
+    /**
+     * Writes out every record published so far, this is only called by the consumer
+     *
+     * @return the number of records written
+     */
+    private int drain() {
+        int count = 0;
+        while (true) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                return count;
+            }
+
+            Record record = records[index];
+            String message = format(record);
+            RobotStatus status = record.status;
+            long time = record.time;
+            Level level = record.level;
+            String tag = record.tag;
+            record.clear();
+            sequences.set(index, head + records.length);
+            head++;
+
+            try {
+                sink.write(status, time, level, tag, message);
+            } catch (RuntimeException ex) {
+                // Only logcat is left to log this, and the consumer must keep going
+                Log.e(TAG, "Couldn't write a log message", ex);
+            }
+            written.incrementAndGet();
+            count++;
+        }
+    }
+
+    private String format(Record record) {
+        if (record.arguments == 0) {
+            return record.format;
+        }
+
+        Object[] arguments;
+        if (record.arguments == 1) {
+            arguments = oneArgument;
+            arguments[0] = record.first;
+        } else {
+            arguments = twoArguments;
+            arguments[0] = record.first;
+            arguments[1] = record.second;
+        }
+
+        try {
+            return String.format(Locale.US, record.format, arguments);
+        } catch (IllegalFormatException ex) {
+            return record.format + ' ' + String.valueOf(record.first) +
+                    (record.arguments > 1 ? ' ' + String.valueOf(record.second) : "");
+        } finally {
+            oneArgument[0] = null;
+            twoArguments[0] = null;
+            twoArguments[1] = null;
+        }
+    }
+
+    /**
+     * Waits until every record added before this call is written out
+     *
+     * @param timeout how long to wait, at most
+     * @param unit    the unit of the timeout
+     * @return {@code true} if everything was written in time
+     */
+    boolean awaitDrained(long timeout, @NotNull TimeUnit unit) {
+        // Dropped records never claim a slot, so every slot up to the tail gets written
+        long target = tail.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (written.get() < target && System.nanoTime() - deadline < 0) {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(this, FULL_PARK);
+        }
+        return written.get() >= target;
+    }
+
+    /**
+     * Sets what happens to records that are added while the queue is full
+     *
+     * @param policy the new policy
+     */
+    void setPolicy(@NotNull RobotLogger.OverflowPolicy policy) {
+        this.policy = checkNotNull(policy);
+    }
+
+    @NotNull
+    RobotLogger.OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets how many records were dropped because the queue was full
+     *
+     * @return the number of records dropped
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Gets how many records had to wait for room in the queue
+     *
+     * @return the number of records that blocked their writer
+     */
+    long getBlocked() {
+        return blocked.get();
+    }
+
+    /**
+     * Gets how many records were written to the sink
+     *
+     * @return the number of records written
+     */
+    long getWritten() {
+        return written.get();
+    }
+
+    int capacity() {
+        return records.length;
+    }
+
+    /**
+     * Stops the background thread once everything queued so far is written, records added after
+     * this are dropped
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Where records end up, this is only called from the background thread
+     */
+    interface Sink {
+        void write(@Nullable RobotStatus status, long time, @NotNull Level level, @NotNull String tag,
+                   @NotNull String message);
+    }
+
+    private static final class Record {
+        private RobotStatus status;
+        private long time;
+        private Level level;
+        private String tag;
+        private String format;
+        private int arguments;
+        private Object first;
+        private Object second;
+
+        void clear() {
+            status = null;
+            format = null;
+            first = null;
+            second = null;
+        }
+    }
+
+    private class Consumer implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                if (drain() > 0) {
+                    continue;
+                }
+                if (!running) {
+                    drain();
+                    return;
+                }
+
+                sleeping = true;
+                if (sequences.get((int) (head & mask)) != head + 1) {
+                    LockSupport.parkNanos(this, IDLE_PARK);
+                }
+                sleeping = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Paces the loop cycles of an {@link ExtensibleOpMode} to a fixed period. Every cycle is released
+ * on a fixed schedule and has to finish before the next release, its deadline. Calls from the
+ * event loop that come before the next release are turned away, so user code sees a predictable
+ * {@link #getDeltaTime() dt} instead of whatever the event loop happens to give it.
+ * <p>
+ * When a cycle starts after its own deadline the loop has fallen behind, and the
+ * {@link OverrunPolicy} decides how to recover.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+public final class DeadlinePacer {
+    /**
+     * How far behind, in periods, {@link OverrunPolicy#CATCH_UP} is allowed to get before it
+     * gives up on the missed cycles
+     */
+    private static final int MAX_CATCH_UP_CYCLES = 10;
+
+    private boolean enabled;
+    private long period;
+    private OverrunPolicy policy;
+
+    private boolean started;
+    private boolean late;
+    private long release;
+    private long deadline;
+    private long deltaTime;
+
+    private long cycles;
+    private long lateCycles;
+    private long missedDeadlines;
+    private long skippedCycles;
+    private long maxOverrun;
+
+    DeadlinePacer() {
+        policy = OverrunPolicy.SKIP_ASSISTANTS;
+    }
+
+    /**
+     * Enables fixed rate execution, the schedule starts on the next cycle
+     *
+     * @param period the target period
+     * @param unit   the unit of the period
+     * @param policy what to do when the loop falls behind
+     */
+    void enable(long period, @NotNull TimeUnit unit, @NotNull OverrunPolicy policy) {
+        checkArgument(period > 0, "The period must be positive");
+        this.period = checkNotNull(unit).toNanos(period);
+        this.policy = checkNotNull(policy);
+        enabled = true;
+        started = false;
+        late = false;
+    }
+
+    void disable() {
+        enabled = false;
+        late = false;
+    }
+
+    /**
+     * Checks if a cycle should run now, and if so starts it
+     *
+     * @param now the current time, from {@link System#nanoTime()}
+     * @return {@code true} if the cycle should run, {@code false} if it is not due yet
+     */
+    boolean begin(long now) {
+        if (!enabled) {
+            return true;
+        }
+
+        if (!started) {
+            started = true;
+            release = now;
+            deltaTime = period;
+        } else if (now - release < 0) {
+            return false;
+        } else {
+            deltaTime = period;
+        }
+
+        long lateness = now - release;
+        late = lateness >= period;
+        if (late) {
+            lateCycles++;
+            long missed = lateness / period;
+            if (policy != OverrunPolicy.CATCH_UP || missed > MAX_CATCH_UP_CYCLES) {
+                // Drop the cycles that can't be made up, and start again from the latest release
+                skippedCycles += missed;
+                release += missed * period;
+                deltaTime += missed * period;
+            }
+        }
+
+        deadline = release + period;
+        cycles++;
+        return true;
+    }
+
+    /**
+     * Finishes the current cycle
+     *
+     * @param now the current time, from {@link System#nanoTime()}
+     */
+    void end(long now) {
+        if (!enabled || !started) {
+            return;
+        }
+
+        long overrun = now - deadline;
+        if (overrun > 0) {
+            missedDeadlines++;
+            maxOverrun = Math.max(maxOverrun, overrun);
+        }
+
+        release += period;
+    }
+
+    /**
+     * Checks if the {@link org.ftccommunity.ftcxtensible.interfaces.RunAssistant}s should run in
+     * the current cycle
+     *
+     * @return {@code false} if the current cycle is late and the policy is
+     * {@link OverrunPolicy#SKIP_ASSISTANTS}, otherwise {@code true}
+     */
+    boolean shouldRunAssistants() {
+        return !(late && policy == OverrunPolicy.SKIP_ASSISTANTS);
+    }
+
+    /**
+     * Checks if telemetry should be sent in the current cycle
+     *
+     * @return {@code false} if the current cycle is late and the policy is
+     * {@link OverrunPolicy#DROP_TELEMETRY}, otherwise {@code true}
+     */
+    boolean shouldSendTelemetry() {
+        return !(late && policy == OverrunPolicy.DROP_TELEMETRY);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the target period
+     *
+     * @return the period, in nanoseconds
+     */
+    public long getPeriod() {
+        return period;
+    }
+
+    @NotNull
+    public OverrunPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets the scheduled time between the release of the last cycle and the current one. This is
+     * always the period, unless cycles were skipped to catch up, then it is a whole multiple of
+     * the period.
+     *
+     * @return the delta time, in nanoseconds
+     */
+    public long getDeltaTime() {
+        return deltaTime;
+    }
+
+    /**
+     * Checks if the current cycle started after its deadline
+     *
+     * @return {@code true} if the loop is behind schedule
+     */
+    public boolean isLate() {
+        return late;
+    }
+
+    /**
+     * Gets how many cycles have run since fixed rate execution was enabled
+     *
+     * @return the number of cycles
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Gets how many cycles started after their deadline, and so ran the {@link OverrunPolicy}
+     *
+     * @return the number of late cycles
+     */
+    public long getLateCycles() {
+        return lateCycles;
+    }
+
+    /**
+     * Gets how many cycles finished after their deadline
+     *
+     * @return the number of missed deadlines
+     */
+    public long getMissedDeadlines() {
+        return missedDeadlines;
+    }
+
+    /**
+     * Gets how many scheduled cycles never ran, because the loop was too far behind
+     *
+     * @return the number of skipped cycles
+     */
+    public long getSkippedCycles() {
+        return skippedCycles;
+    }
+
+    /**
+     * Gets the longest time a cycle finished after its deadline
+     *
+     * @return the worst overrun, in nanoseconds
+     */
+    public long getMaxOverrun() {
+        return maxOverrun;
+    }
+
+    /**
+     * What a fixed rate loop does when a cycle starts after its deadline
+     */
+    public enum OverrunPolicy {
+        /**
+         * Skip the {@link org.ftccommunity.ftcxtensible.interfaces.RunAssistant}s of late cycles
+         * and drop the cycles that were missed
+         */
+        SKIP_ASSISTANTS,
+        /**
+         * Don't send telemetry in late cycles and drop the cycles that were missed
+         */
+        DROP_TELEMETRY,
+        /**
+         * Run every missed cycle back to back until the loop is on schedule again; if the loop
+         * falls more than a few periods behind, the missed cycles are dropped instead
+         */
+        CATCH_UP
+    }
+}
@@ -19,11 +19,6 @@ package org.ftccommunity.ftcxtensible.robot;
 
 import android.util.Log;
 
-import com.google.common.io.Files;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonIOException;
-import com.google.gson.JsonSyntaxException;
 import com.qualcomm.robotcore.hardware.Gamepad;
 
 import org.ftccommunity.ftcxtensible.core.exceptions.RuntimeIOException;
@@ -37,19 +32,13 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileFilter;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.Writer;
-import java.nio.charset.Charset;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -62,48 +51,59 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 @Alpha
 public class ExtensibleGamepad implements Closeable {
-    private final Joystick leftJoystick;
-    private final Joystick rightJoystick;
-    private final Dpad dpad;
-    private final long millisecondDelay = 2;
-    private boolean a;
-    private boolean b;
-    private boolean x;
-    private boolean y;
-    private boolean guide;
-    private boolean start;
-    private boolean back;
-    private boolean leftBumper;
-    private boolean rightBumper;
-    private float leftTrigger;
-    private float rightTrigger;
-    private long timestamp;
-    private int userDefinedRight;
-    private int userDefinedLeft;
+    // The bit each button has when the state of the buttons is packed into an int
+    public static final int BUTTON_A = 1;
+    public static final int BUTTON_B = 1 << 1;
+    public static final int BUTTON_X = 1 << 2;
+    public static final int BUTTON_Y = 1 << 3;
+    public static final int BUTTON_GUIDE = 1 << 4;
+    public static final int BUTTON_START = 1 << 5;
+    public static final int BUTTON_BACK = 1 << 6;
+    public static final int BUTTON_LEFT_BUMPER = 1 << 7;
+    public static final int BUTTON_RIGHT_BUMPER = 1 << 8;
+    public static final int BUTTON_DPAD_UP = 1 << 9;
+    public static final int BUTTON_DPAD_DOWN = 1 << 10;
+    public static final int BUTTON_DPAD_LEFT = 1 << 11;
+    public static final int BUTTON_DPAD_RIGHT = 1 << 12;
+    public static final int BUTTON_LEFT_STICK = 1 << 13;
+    public static final int BUTTON_RIGHT_STICK = 1 << 14;
+    static final int BUTTON_COUNT = 15;
+
+    private final GamepadSnapshot[] snapshots;
+    private volatile GamepadSnapshot current;
+    private long sequence;
     private JoystickScaler leftScaler;
     private JoystickScaler rightScaler;
     private transient boolean recording;
     private transient boolean playingBack;
-    private transient GamepadRecord gamepadRecord;
+    private transient GamepadRecordWriter recordWriter;
+    private transient GamepadPlayback playback;
+    private transient long recordingStart;
+    private transient long playbackStart;
+    private transient long playbackPausedAt;
+    private transient boolean playbackStarted;
+    private boolean interpolatePlayback;
+    private final GamepadFrame input = new GamepadFrame();
+    private long debounceNanos;
     private boolean hasBeenClosed = false;
     private boolean paused;
-    private long lastLoopTime;
 
     /**
      * Setup a basic gamepad; be sure to call {@link ExtensibleGamepad#updateGamepad} to make this
      * safe to use
      */
     public ExtensibleGamepad() {
-        leftJoystick = new Joystick();
-        rightJoystick = new Joystick();
-        dpad = new Dpad();
+        snapshots = new GamepadSnapshot[GamepadSnapshot.REUSE_DISTANCE];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = new GamepadSnapshot();
+        }
+        current = snapshots[0];
 
         leftScaler = new PlainJoystickScaler();
         rightScaler = new PlainJoystickScaler();
 
         recording = false;
         playingBack = false;
-        lastLoopTime = System.currentTimeMillis();
     }
 
     public ExtensibleGamepad(final RobotContext ctx, Gamepad gp) {
@@ -130,129 +130,154 @@ public class ExtensibleGamepad implements Closeable {
 
     /**
      * Updates this to the status of the provided Gamepad (recast this from a <code>{@link
-     * Gamepad}</code>)
+     * Gamepad}</code>). The new state is published as a whole once the update is done, so readers
+     * on other threads never see a half updated gamepad.
      *
      * @param ctx the Robot Context (nullable, depending on the given <code>{@link
      *            JoystickScaler}</code>)
      * @param gp  the <code>Gamepad</code> to cast into
      */
     public synchronized void updateGamepad(final RobotContext ctx, Gamepad gp) {
+        final long now = System.nanoTime();
+        final long timestamp;
         if (playingBack) {
-            GamepadState state;
             if (!paused) {
-                state = gamepadRecord.nextRecord();
-            } else {
-                state = gamepadRecord.currentRecord();
+                if (!playbackStarted) {
+                    playbackStart = now;
+                    playbackStarted = true;
+                }
+
+                if (!seekPlayback(TimeUnit.NANOSECONDS.toMillis(now - playbackStart))) {
+                    Log.w("GAMEPAD", "Stopping playback due to end-of-record");
+                    stopPlayback();
+                    updateGamepad(ctx, gp);
+                    return;
+                }
             }
-            if (state == null) {
-                Log.w("GAMEPAD", "Stopping playback due to end-of-record");
-                stopPlayback();
-                updateGamepad(ctx, gp);
-                return;
+            timestamp = System.currentTimeMillis();
+        } else {
+            input.buttons = (gp.a ? BUTTON_A : 0) |
+                    (gp.b ? BUTTON_B : 0) |
+                    (gp.x ? BUTTON_X : 0) |
+                    (gp.y ? BUTTON_Y : 0) |
+                    (gp.guide ? BUTTON_GUIDE : 0) |
+                    (gp.start ? BUTTON_START : 0) |
+                    (gp.back ? BUTTON_BACK : 0) |
+                    (gp.left_bumper ? BUTTON_LEFT_BUMPER : 0) |
+                    (gp.right_bumper ? BUTTON_RIGHT_BUMPER : 0) |
+                    (gp.dpad_up ? BUTTON_DPAD_UP : 0) |
+                    (gp.dpad_down ? BUTTON_DPAD_DOWN : 0) |
+                    (gp.dpad_left ? BUTTON_DPAD_LEFT : 0) |
+                    (gp.dpad_right ? BUTTON_DPAD_RIGHT : 0) |
+                    (gp.left_stick_button ? BUTTON_LEFT_STICK : 0) |
+                    (gp.right_stick_button ? BUTTON_RIGHT_STICK : 0);
+            input.leftX = gp.left_stick_x;
+            input.leftY = gp.left_stick_y;
+            input.rightX = gp.right_stick_x;
+            input.rightY = gp.right_stick_y;
+            input.leftTrigger = gp.left_trigger;
+            input.rightTrigger = gp.right_trigger;
+            if (recording) {
+                input.time = (int) TimeUnit.NANOSECONDS.toMillis(now - recordingStart);
             }
-            a = state.a;
-            b = state.b;
-            x = state.x;
-            y = state.y;
-
-            guide = state.guide;
-            start = state.start;
-            back = state.back;
-
-            leftBumper = state.leftBumper;
-            rightBumper = state.rightBumper;
 
-            leftTrigger = state.leftTrigger;
-            rightTrigger = state.rightTrigger;
-
-            getDpad().update(state.dpad.isUpPressed(), state.dpad.isDownPressed(),
-                    state.dpad.isRightPressed(), state.dpad.isLeftPressed());
-
-            rightJoystick().update(state.rightJoystick.x, state.rightJoystick.y, state.rightJoystick.pressed);
-
-            userDefinedLeft = getLeftScaler().userDefinedLeft(ctx, this);
-            userDefinedRight = getRightScaler().userDefinedRight(ctx, this);
-
-            double leftX = state.leftJoystick.x;
-            double leftY = state.leftJoystick.y;
-            leftX = getLeftScaler().scaleX(this, leftX);
-            leftY = getLeftScaler().scaleY(this, leftY);
-            leftJoystick().update(leftX, leftY, state.leftJoystick.pressed);
-
-            double rightX = state.rightJoystick.x;
-            double rightY = state.rightJoystick.y;
-            rightX = getRightScaler().scaleX(this, rightX);
-            rightY = getRightScaler().scaleY(this, rightY);
-            rightJoystick().update(rightX, rightY, state.rightJoystick.pressed);
+            timestamp = gp.timestamp;
+        }
 
-            timestamp = System.currentTimeMillis();
-        } else {
-            a = gp.a;
-            b = gp.b;
-            x = gp.x;
-            y = gp.y;
+        apply(ctx, input, now, timestamp);
 
-            guide = gp.guide;
-            start = gp.start;
-            back = gp.back;
+        if (recording) {
+            try {
+                recordWriter.write(input);
+            } catch (IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        }
+    }
 
-            leftBumper = gp.left_bumper;
-            rightBumper = gp.right_bumper;
+    /**
+     * Fills in the next snapshot from a frame of input and publishes it; the scalers still see
+     * the previous snapshot through this gamepad while this runs
+     */
+    private void apply(final RobotContext ctx, GamepadFrame frame, long now, long timestamp) {
+        final GamepadSnapshot previous = current;
+        final int slot = (int) (++sequence % snapshots.length);
+        GamepadSnapshot next = snapshots[slot];
+        if (next.holders.get() > 0) {
+            // Someone still holds it, so it leaves the ring for good
+            next = new GamepadSnapshot();
+            snapshots[slot] = next;
+        }
 
-            leftTrigger = gp.left_trigger;
-            rightTrigger = gp.right_trigger;
+        final int buttons = updateButtons(previous, next, frame.buttons, now);
+        next.leftTrigger = frame.leftTrigger;
+        next.rightTrigger = frame.rightTrigger;
+        next.timestamp = timestamp;
 
-            timestamp = gp.timestamp;
+        next.dpad.update((buttons & BUTTON_DPAD_UP) != 0, (buttons & BUTTON_DPAD_DOWN) != 0,
+                (buttons & BUTTON_DPAD_RIGHT) != 0, (buttons & BUTTON_DPAD_LEFT) != 0);
 
-            getDpad().update(gp.dpad_up, gp.dpad_down, gp.dpad_right, gp.dpad_left);
+        next.userDefinedLeft = getLeftScaler().userDefinedLeft(ctx, this);
+        next.userDefinedRight = getRightScaler().userDefinedRight(ctx, this);
 
-            rightJoystick().update(gp.right_stick_x, gp.right_stick_y, gp.right_stick_button);
+        double leftX = getLeftScaler().scaleX(this, frame.leftX);
+        double leftY = getLeftScaler().scaleY(this, frame.leftY);
+        next.leftJoystick.update(leftX, leftY, (buttons & BUTTON_LEFT_STICK) != 0);
 
-            userDefinedLeft = getLeftScaler().userDefinedLeft(ctx, this);
-            userDefinedRight = getRightScaler().userDefinedRight(ctx, this);
+        double rightX = getRightScaler().scaleX(this, frame.rightX);
+        double rightY = getRightScaler().scaleY(this, frame.rightY);
+        next.rightJoystick.update(rightX, rightY, (buttons & BUTTON_RIGHT_STICK) != 0);
 
-            double leftX = gp.left_stick_x;
-            double leftY = gp.left_stick_y;
-            leftX = getLeftScaler().scaleX(this, leftX);
-            leftY = getLeftScaler().scaleY(this, leftY);
-            leftJoystick().update(leftX, leftY, gp.left_stick_button);
+        next.sequence = sequence;
+        current = next;
+    }
 
-            double rightX = gp.right_stick_x;
-            double rightY = gp.right_stick_y;
-            rightX = getRightScaler().scaleX(this, rightX);
-            rightY = getRightScaler().scaleY(this, rightY);
-            rightJoystick().update(rightX, rightY, gp.right_stick_button);
+    /**
+     * Works out which buttons changed since the last update, in one pass over the bits that
+     * differ; a change to a button within the debounce time of its last change is held off until
+     * the debounce time has passed
+     */
+    private int updateButtons(GamepadSnapshot previousSnapshot, GamepadSnapshot next, int raw, long now) {
+        final int previous = previousSnapshot.buttons;
+        final long[] changedAt = next.changedAt;
+        System.arraycopy(previousSnapshot.changedAt, 0, changedAt, 0, BUTTON_COUNT);
+
+        int current = previous;
+        int changed = raw ^ previous;
+        while (changed != 0) {
+            int bit = Integer.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            if (debounceNanos == 0 || now - changedAt[bit] >= debounceNanos) {
+                current ^= 1 << bit;
+            }
         }
 
-        if (recording) {
-            gamepadRecord.addRecord(new GamepadState(leftJoystick.copy(), rightJoystick.copy(), dpad.copy(),
-                    a, b, x, y,
-                    guide, start, back,
-                    leftBumper, rightBumper, leftTrigger, rightTrigger));
+        next.clearEvents();
+        int edges = current ^ previous;
+        while (edges != 0) {
+            int bit = Integer.numberOfTrailingZeros(edges);
+            edges &= edges - 1;
+            if ((current & (1 << bit)) != 0) {
+                next.addEvent(bit, true, 0);
+            } else {
+                next.addEvent(bit, false, now - changedAt[bit]);
+            }
+            changedAt[bit] = now;
         }
 
-        if (recording || playingBack) {
-            try {
-                //long delay = TimeUnit.MILLISECONDS.convert(millisecondDelay - (System.nanoTime() - lastLoopTime), TimeUnit.NANOSECONDS);
-                long delay = millisecondDelay - (System.currentTimeMillis() - lastLoopTime);
-                lastLoopTime = System.currentTimeMillis();
-                boolean inferTiming = true;
-                if (lastLoopTime > 0) {
-                    try {
-                        Thread.sleep(delay);
-                    } catch (Exception ex) {
-                        inferTiming = false;
-                        Thread.sleep(2, (int) 5E4);
-                    }
-
-                }
-                //Thread.sleep(2, (int) 5E4);
+        next.buttons = current;
+        next.pressedButtons = current & ~previous;
+        next.releasedButtons = previous & ~current;
+        next.updateTime = now;
+        return current;
+    }
 
-                ctx.telemetry().data("AUTO_DELAY", delay);
-                ctx.telemetry().data("INFER TIMING", inferTiming ? "true" : "false");
-            } catch (InterruptedException e) {
-                return;
-            }
+    private boolean seekPlayback(long elapsed) {
+        try {
+            return playback.seek(elapsed, input, interpolatePlayback);
+        } catch (IOException e) {
+            Log.e("GAMEPAD", "Cannot read the gamepad record", e);
+            return false;
         }
     }
 
@@ -262,7 +287,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return is button A pressed
      */
     public boolean isAPressed() {
-        return a;
+        return current.isPressed(BUTTON_A);
     }
 
     /**
@@ -271,7 +296,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return is button B pressed
      */
     public boolean isBPressed() {
-        return b;
+        return current.isPressed(BUTTON_B);
     }
 
     /**
@@ -280,7 +305,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return is button X pressed
      */
     public boolean isXPressed() {
-        return x;
+        return current.isPressed(BUTTON_X);
     }
 
     /**
@@ -289,7 +314,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return is button Y pressed
      */
     public boolean isYPressed() {
-        return y;
+        return current.isPressed(BUTTON_Y);
     }
 
     /**
@@ -298,7 +323,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return is the Guide button pressed
      */
     public boolean isGuidePressed() {
-        return guide;
+        return current.isPressed(BUTTON_GUIDE);
     }
 
     /**
@@ -307,7 +332,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return is the Start button pressed
      */
     public boolean isStartPressed() {
-        return start;
+        return current.isPressed(BUTTON_START);
     }
 
     /**
@@ -316,7 +341,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return is the Back button pressed
      */
     public boolean isBackPressed() {
-        return back;
+        return current.isPressed(BUTTON_BACK);
     }
 
     /**
@@ -325,7 +350,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return is the Left Bumper pressed
      */
     public boolean isLeftBumperPressed() {
-        return leftBumper;
+        return current.isPressed(BUTTON_LEFT_BUMPER);
     }
 
     /**
@@ -334,7 +359,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return is the Right Bumper pressed
      */
     public boolean isRightBumperPressed() {
-        return rightBumper;
+        return current.isPressed(BUTTON_RIGHT_BUMPER);
     }
 
     /**
@@ -343,7 +368,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return the value of the Left Trigger
      */
     public float getLeftTrigger() {
-        return leftTrigger;
+        return current.leftTrigger;
     }
 
     /**
@@ -353,7 +378,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return the value of the Right Trigger
      */
     public float getRightTrigger() {
-        return rightTrigger;
+        return current.rightTrigger;
     }
 
     /**
@@ -362,7 +387,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return the time in milliseconds of last update
      */
     public long getTimestamp() {
-        return timestamp;
+        return current.timestamp;
     }
 
     /**
@@ -372,7 +397,7 @@ public class ExtensibleGamepad implements Closeable {
      * @return the value that the code returned
      */
     public int getUserDefinedRight() {
-        return userDefinedRight;
+        return current.userDefinedRight;
     }
 
     /**
@@ -382,25 +407,65 @@ public class ExtensibleGamepad implements Closeable {
      * @return the value that the code returned
      */
     public int getUserDefinedLeft() {
-        return userDefinedLeft;
+        return current.userDefinedLeft;
+    }
+
+    /**
+     * Gets the scaled X value of the left joystick
+     *
+     * @return the X value of the left joystick
+     */
+    public double getLeftX() {
+        return current.leftJoystick.X();
+    }
+
+    /**
+     * Gets the scaled Y value of the left joystick
+     *
+     * @return the Y value of the left joystick
+     */
+    public double getLeftY() {
+        return current.leftJoystick.Y();
+    }
+
+    /**
+     * Gets the scaled X value of the right joystick
+     *
+     * @return the X value of the right joystick
+     */
+    public double getRightX() {
+        return current.rightJoystick.X();
     }
 
     /**
-     * Gets the left joystick
+     * Gets the scaled Y value of the right joystick
+     *
+     * @return the Y value of the right joystick
+     */
+    public double getRightY() {
+        return current.rightJoystick.Y();
+    }
+
+    /**
+     * Gets the left joystick. The joystick belongs to a snapshot that later updates recycle, so
+     * this is only for the thread that updates the gamepad; other threads should use
+     * {@link #getLeftX()} and {@link #getLeftY()}, or read it from {@link #acquireSnapshot()}.
      *
      * @return the left <code> {@link ExtensibleGamepad.Joystick} </code> of this controller
      */
     public Joystick leftJoystick() {
-        return leftJoystick;
+        return current.leftJoystick;
     }
 
     /**
-     * Gets the right joystick
+     * Gets the right joystick. The joystick belongs to a snapshot that later updates recycle, so
+     * this is only for the thread that updates the gamepad; other threads should use
+     * {@link #getRightX()} and {@link #getRightY()}, or read it from {@link #acquireSnapshot()}.
      *
      * @return the right <code>Joystick</code> of this controller
      */
     public Joystick rightJoystick() {
-        return rightJoystick;
+        return current.rightJoystick;
     }
 
     /**
@@ -422,12 +487,137 @@ public class ExtensibleGamepad implements Closeable {
     }
 
     /**
-     * Gets the D-Pad of this controller
+     * Gets the D-Pad of this controller. The D-Pad belongs to a snapshot that later updates
+     * recycle, so this is only for the thread that updates the gamepad; other threads should use
+     * {@link #isPressed(int)} with the {@code BUTTON_DPAD_*} bits, or {@link #acquireSnapshot()}.
      *
      * @return {@link org.ftccommunity.ftcxtensible.robot.ExtensibleGamepad.Dpad} of this controller
      */
     public Dpad getDpad() {
-        return dpad;
+        return current.dpad;
+    }
+
+    /**
+     * Gets the state of this gamepad after its last update, code that reads several values should
+     * read them from one snapshot. The snapshot is recycled by later updates, so this is meant for
+     * the thread that updates the gamepad; other threads should use {@link #acquireSnapshot()}.
+     *
+     * @return the latest snapshot of this gamepad
+     */
+    public GamepadSnapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Gets the state of this gamepad after its last update and holds on to it, so it doesn't
+     * change until it is {@linkplain GamepadSnapshot#release() released}. This can be called from
+     * any thread; an update that comes around to a held snapshot allocates a new one instead.
+     *
+     * @return the latest snapshot of this gamepad, which must be released
+     */
+    public GamepadSnapshot acquireSnapshot() {
+        while (true) {
+            GamepadSnapshot snapshot = current;
+            snapshot.holders.incrementAndGet();
+            // An update only refills snapshots that aren't current, and checks the holders first
+            if (snapshot == current) {
+                return snapshot;
+            }
+            snapshot.holders.decrementAndGet();
+        }
+    }
+
+    /**
+     * Gets every button that is pressed, as the {@code BUTTON_*} bits of this class
+     *
+     * @return the pressed buttons
+     */
+    public int getButtons() {
+        return current.buttons;
+    }
+
+    /**
+     * Gets the buttons that went down in the last update
+     *
+     * @return the {@code BUTTON_*} bits of the buttons that were just pressed
+     */
+    public int getPressedButtons() {
+        return current.pressedButtons;
+    }
+
+    /**
+     * Gets the buttons that came up in the last update
+     *
+     * @return the {@code BUTTON_*} bits of the buttons that were just released
+     */
+    public int getReleasedButtons() {
+        return current.releasedButtons;
+    }
+
+    /**
+     * Checks if any of the given buttons is pressed
+     *
+     * @param buttons one or more {@code BUTTON_*} bits of this class
+     * @return {@code true} if any of them are pressed, otherwise {@code false}
+     */
+    public boolean isPressed(int buttons) {
+        return current.isPressed(buttons);
+    }
+
+    /**
+     * Checks if any of the given buttons went down in the last update; unlike comparing against
+     * the state of the previous loop, this is true for exactly one update per press
+     *
+     * @param buttons one or more {@code BUTTON_*} bits of this class
+     * @return {@code true} if any of them were just pressed, otherwise {@code false}
+     */
+    public boolean wasPressed(int buttons) {
+        return current.wasPressed(buttons);
+    }
+
+    /**
+     * Checks if any of the given buttons came up in the last update
+     *
+     * @param buttons one or more {@code BUTTON_*} bits of this class
+     * @return {@code true} if any of them were just released, otherwise {@code false}
+     */
+    public boolean wasReleased(int buttons) {
+        return current.wasReleased(buttons);
+    }
+
+    /**
+     * Gets how long a button has been held down, as of the last update
+     *
+     * @param button a single {@code BUTTON_*} bit of this class
+     * @param unit   the unit to return the time in
+     * @return how long the button has been held, or 0 if it is not pressed
+     */
+    public long getHoldTime(int button, TimeUnit unit) {
+        return current.getHoldTime(button, unit);
+    }
+
+    /**
+     * Gets the buttons that were pressed or released in the last update, in the order of their
+     * bits. The events belong to the snapshot of that update, so they are recycled along with
+     * it.
+     *
+     * @return the button events of the last update
+     */
+    public List<ButtonEvent> getEvents() {
+        return current.getEvents();
+    }
+
+    /**
+     * Sets the debounce time of the buttons; a button that changes within this time of its last
+     * change keeps its state until the time has passed, which filters out a button that bounces
+     * when it is pressed or released. The default is no debouncing.
+     *
+     * @param time the debounce time, or 0 to turn debouncing off
+     * @param unit the unit of the time
+     */
+    public synchronized void setDebounce(long time, TimeUnit unit) {
+        checkArgument(time >= 0, "The debounce time cannot be negative");
+        debounceNanos = unit.toNanos(time);
     }
 
     /**
@@ -437,33 +627,37 @@ public class ExtensibleGamepad implements Closeable {
      * @param name the unique and case-sensitive name of the Gamepad Record for later reference
      */
     public synchronized void startRecording(String name) {
-        gamepadRecord = new GamepadRecord(checkNotNull(name));
+        checkNotNull(name);
+        stopRecording();
+        try {
+            GamepadRecordIndex.Entry existing = GamepadRecord.index().find(name);
+            int id = existing != null ? existing.getId() : GamepadRecord.index().nextId();
+            recordWriter = new GamepadRecordWriter(GamepadRecord.fileFor(name), name, id, System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+        recordingStart = System.nanoTime();
         recording = true;
     }
 
-    /**
-     * Records the state of the gamepad at a specific interval, this method should only be
-     * called after {@link #startRecording(String)} has been called and before {@link #stopRecording()}
-     * has been called on this object
-     */
-    private synchronized void record() {
-        GamepadState record = new GamepadState(leftJoystick, rightJoystick, dpad,
-                a, b, x, y, guide, start, back,
-                leftBumper, rightBumper, leftTrigger, rightTrigger);
-        gamepadRecord.addRecord(record);
-    }
-
     /**
      * Stops the recording session and saves the recording session
      */
     public synchronized void stopRecording() {
         recording = false;
+        if (recordWriter == null) {
+            return;
+        }
+
         try {
-            gamepadRecord.save();
+            recordWriter.close();
+            GamepadRecord.index().put(new GamepadRecordIndex.Entry(recordWriter.getName(), recordWriter.getId(),
+                    recordWriter.getSamples(), recordWriter.getDuration(), recordWriter.getFrameOffset()));
         } catch (IOException e) {
             throw new RuntimeIOException(e);
+        } finally {
+            recordWriter = null;
         }
-        gamepadRecord = null;
     }
 
     /**
@@ -481,7 +675,15 @@ public class ExtensibleGamepad implements Closeable {
      * @return the available playback records
      */
     public List<String> playbackRecords() {
-        return new LinkedList<>(GamepadRecord.getMap().keySet());
+        List<String> names = new LinkedList<>();
+        try {
+            for (GamepadRecordIndex.Entry entry : GamepadRecord.index().entries()) {
+                names.add(entry.getName());
+            }
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+        return names;
     }
 
     /**
@@ -490,24 +692,38 @@ public class ExtensibleGamepad implements Closeable {
      * @return {@code true} if the given record exists, otherwise false
      */
     public boolean hasRecord(String name) {
-        return GamepadRecord.getMap().containsKey(name);
+        try {
+            return GamepadRecord.index().find(checkNotNull(name)) != null;
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
     }
 
     /**
      * Starts a playback for the specified gamepad recording, this can be called multiple times
-     * without any effect
+     * without any effect. The playback keeps to the timing of the recording, starting with the
+     * first {@link #updateGamepad(RobotContext, Gamepad)} after this call
      *
      * @param name the name of the the gamepad record
      */
     public synchronized void startPlayback(String name) {
-        Map<String, GamepadRecord> map = GamepadRecord.toNameMap(GamepadRecord.getAvailableRecords());
-        if (map.containsKey(name)) {
-            gamepadRecord = map.get(name);
-            playingBack = true;
-        } else {
+        File file = GamepadRecord.fileFor(checkNotNull(name));
+        if (!hasRecord(name) || !file.isFile()) {
             throw new IllegalArgumentException("Unknown name for playback: " + name);
         }
 
+        stopPlayback();
+        try {
+            playback = new GamepadPlayback(new GamepadRecordReader(file));
+            if (!playback.seek(0, input, interpolatePlayback)) {
+                Log.w("GAMEPAD", "The gamepad record \"" + name + "\" is empty");
+            }
+        } catch (IOException e) {
+            stopPlayback();
+            throw new RuntimeIOException(e);
+        }
+        playbackStarted = false;
+        playingBack = true;
     }
 
     /**
@@ -515,6 +731,16 @@ public class ExtensibleGamepad implements Closeable {
      */
     public synchronized void stopPlayback() {
         playingBack = false;
+        if (playback == null) {
+            return;
+        }
+
+        try {
+            playback.close();
+        } catch (IOException e) {
+            Log.w("GAMEPAD", "Cannot close the gamepad record", e);
+        }
+        playback = null;
     }
 
     /**
@@ -545,20 +771,7 @@ public class ExtensibleGamepad implements Closeable {
             return false;
         }
         ExtensibleGamepad s = (ExtensibleGamepad) o;
-        return leftJoystick.equals(s.leftJoystick) &&
-                rightJoystick.equals(s.rightJoystick) &&
-                dpad.equals(s.dpad) &&
-                a == s.a &&
-                b == s.b &&
-                x == s.x &&
-                y == s.y &&
-                guide == s.guide &&
-                start == s.guide &&
-                back == s.back &&
-                leftBumper == s.leftBumper &&
-                rightBumper == s.rightBumper &&
-                leftTrigger == s.leftTrigger &&
-                rightTrigger == s.rightTrigger;
+        return current.sameState(s.current);
     }
 
     /**
@@ -571,54 +784,88 @@ public class ExtensibleGamepad implements Closeable {
     @Override
     public void close() throws IOException {
         if (!hasBeenClosed) {
-            if (gamepadRecord != null) {
-                gamepadRecord.save();
-            }
+            stopRecording();
+            stopPlayback();
         }
 
         hasBeenClosed = true;
     }
 
-    public void resumePlayback() {
+    /**
+     * Resumes a paused playback from where it was paused
+     */
+    public synchronized void resumePlayback() {
+        if (!paused) {
+            return;
+        }
+
         paused = false;
+        if (playbackStarted) {
+            playbackStart += System.nanoTime() - playbackPausedAt;
+        }
     }
 
-    public void pausePlayback() {
+    /**
+     * Pauses the playback, holding the gamepad in its current state; the time spent paused does
+     * not count towards the playback
+     */
+    public synchronized void pausePlayback() {
+        if (paused) {
+            return;
+        }
+
         paused = true;
+        playbackPausedAt = System.nanoTime();
+    }
+
+    /**
+     * Sets whether playback should interpolate the joysticks and triggers between recorded
+     * samples, instead of holding each sample until the next one. The buttons are never
+     * interpolated.
+     *
+     * @param interpolate {@code true} to interpolate, otherwise {@code false}
+     */
+    public synchronized void setPlaybackInterpolation(boolean interpolate) {
+        interpolatePlayback = interpolate;
+    }
+
+    /**
+     * Checks if playback interpolates the joysticks and triggers between recorded samples
+     *
+     * @return {@code true} if the playback is interpolated, otherwise {@code false}
+     */
+    public boolean isPlaybackInterpolated() {
+        return interpolatePlayback;
     }
 
     @Override
     public int hashCode() {
+        GamepadSnapshot snapshot = current;
         HashUtil hash = new HashUtil(65);
-        hash.addFieldToHash(leftJoystick)
-                .addFieldToHash(rightJoystick)
-                .addFieldToHash(dpad)
-                .addFieldToHash(a)
-                .addFieldToHash(b)
-                .addFieldToHash(x)
-                .addFieldToHash(y)
-                .addFieldToHash(guide)
-                .addFieldToHash(start)
-                .addFieldToHash(back)
-                .addFieldToHash(leftBumper)
-                .addFieldToHash(rightBumper)
-                .addFieldToHash(leftTrigger)
-                .addFieldToHash(rightTrigger);
+        hash.addFieldToHash(snapshot.leftJoystick)
+                .addFieldToHash(snapshot.rightJoystick)
+                .addFieldToHash(snapshot.buttons)
+                .addFieldToHash(snapshot.leftTrigger)
+                .addFieldToHash(snapshot.rightTrigger);
         return hash.get();
     }
 
     @Override
     public String toString() {
+        GamepadSnapshot snapshot = current;
+        int buttons = snapshot.buttons;
         return String.format(Locale.ENGLISH, "left joystick: %s right joystick: %s" +
                         " dpad: %s" +
                         " a: %s b: %s x: %s y: %s" +
                         " guide: %s back: %s" +
                         " left bumper: %s right bumper: %s" +
                         " left trigger: %s right trigger: %s",
-                leftJoystick, rightJoystick, dpad,
-                a, b, x, y, guide, back,
-                leftBumper, rightBumper,
-                leftTrigger, rightTrigger);
+                snapshot.leftJoystick, snapshot.rightJoystick, snapshot.dpad,
+                (buttons & BUTTON_A) != 0, (buttons & BUTTON_B) != 0,
+                (buttons & BUTTON_X) != 0, (buttons & BUTTON_Y) != 0,
+                (buttons & BUTTON_GUIDE) != 0, (buttons & BUTTON_BACK) != 0,
+                (buttons & BUTTON_LEFT_BUMPER) != 0, (buttons & BUTTON_RIGHT_BUMPER) != 0,
+                snapshot.leftTrigger, snapshot.rightTrigger);
     }
 
     /**
@@ -633,12 +880,6 @@ public class ExtensibleGamepad implements Closeable {
         private double y;
         private boolean pressed;
 
-        private Joystick() {
-            x = 0;
-            y = 0;
-            pressed = false;
-        }
-
         public Joystick(double x, double y, boolean pressed) {
             this.x = x;
             this.y = y;
@@ -734,6 +975,58 @@ public class ExtensibleGamepad implements Closeable {
         }
     }
 
+    /**
+     * A button that was pressed or released in an update of an {@link ExtensibleGamepad}
+     *
+     * @author David Sargent
+     * @since 0.3.2
+     */
+    public static final class ButtonEvent {
+        private static final String[] NAMES = {"a", "b", "x", "y", "guide", "start", "back",
+                "left bumper", "right bumper", "dpad up", "dpad down", "dpad left", "dpad right",
+                "left stick", "right stick"};
+        private final int button;
+        boolean pressed;
+        long holdTime;
+
+        ButtonEvent(int button) {
+            this.button = button;
+        }
+
+        /**
+         * Gets the button of the event
+         *
+         * @return a {@code BUTTON_*} bit of {@link ExtensibleGamepad}
+         */
+        public int getButton() {
+            return button;
+        }
+
+        /**
+         * Checks if the button was pressed or released
+         *
+         * @return {@code true} if the button was pressed, or {@code false} if it was released
+         */
+        public boolean isPressed() {
+            return pressed;
+        }
+
+        /**
+         * Gets how long the button was held before it was released
+         *
+         * @param unit the unit to return the time in
+         * @return the time the button was held, or 0 if the button was pressed
+         */
+        public long getHoldTime(TimeUnit unit) {
+            return unit.convert(holdTime, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return NAMES[Integer.numberOfTrailingZeros(button)] + (pressed ? " pressed" : " released");
+        }
+    }
+
     /**
      * An representation of a gamepad's D-Pad control
      *
@@ -746,13 +1039,6 @@ public class ExtensibleGamepad implements Closeable {
         private boolean right;
         private boolean left;
 
-        private Dpad() {
-            up = false;
-            down = false;
-            left = false;
-            right = false;
-        }
-
         public Dpad(boolean upPressed, boolean downPressed,
                     boolean rightPressed, boolean leftPressed) {
             up = upPressed;
@@ -847,192 +1133,25 @@ public class ExtensibleGamepad implements Closeable {
         }
     }
 
-    private static class GamepadState {
-        public final Joystick leftJoystick;
-        public final Joystick rightJoystick;
-        public final Dpad dpad;
-        public final boolean a;
-        public final boolean b;
-        public final boolean x;
-        public final boolean y;
-        public final boolean guide;
-        public final boolean start;
-        public final boolean back;
-        public final boolean leftBumper;
-        public final boolean rightBumper;
-        public final float leftTrigger;
-        public final float rightTrigger;
-
-        private transient int hashcode = 0;
-
-        public GamepadState(Joystick leftJoystick, Joystick rightJoystick,
-                            Dpad dpad, boolean a, boolean b, boolean x, boolean y,
-                            boolean guide, boolean start, boolean back,
-                            boolean leftBumper, boolean rightBumper, float leftTrigger, float rightTrigger) {
-            this.leftJoystick = leftJoystick;
-            this.rightJoystick = rightJoystick;
-            this.dpad = dpad;
-            this.a = a;
-            this.b = b;
-            this.x = x;
-            this.y = y;
-            this.guide = guide;
-            this.start = start;
-            this.back = back;
-            this.leftBumper = leftBumper;
-            this.rightBumper = rightBumper;
-            this.leftTrigger = leftTrigger;
-            this.rightTrigger = rightTrigger;
-        }
-
-        @Override
-        public int hashCode() {
-            if (hashcode != 0) {
-                return hashcode;
-            }
-
-            HashUtil hash = new HashUtil(3546);
-            hash.addFieldToHash(leftJoystick)
-                    .addFieldToHash(rightJoystick)
-                    .addFieldToHash(dpad)
-                    .addFieldToHash(a)
-                    .addFieldToHash(b)
-                    .addFieldToHash(x)
-                    .addFieldToHash(y)
-                    .addFieldToHash(guide)
-                    .addFieldToHash(start)
-                    .addFieldToHash(back)
-                    .addFieldToHash(leftBumper)
-                    .addFieldToHash(rightBumper)
-                    .addFieldToHash(leftTrigger)
-                    .addFieldToHash(rightTrigger);
-            hashcode = hash.get();
-            return hashcode;
-        }
-
-        public boolean equals(Object o) {
-            if (o == this) {
-                return true;
-            }
-
-            if (!(o instanceof GamepadState)) {
-                return false;
-            }
-            GamepadState s = (GamepadState) o;
-            return leftJoystick.equals(s.leftJoystick) &&
-                    rightJoystick.equals(s.rightJoystick) &&
-                    dpad.equals(s.dpad) &&
-                    a == s.a &&
-                    b == s.b &&
-                    x == s.x &&
-                    y == s.y &&
-                    guide == s.guide &&
-                    start == s.guide &&
-                    back == s.back &&
-                    leftBumper == s.leftBumper &&
-                    rightBumper == s.rightBumper &&
-                    leftTrigger == s.leftTrigger &&
-                    rightTrigger == s.rightTrigger;
-        }
-
-        @Override
-        public String toString() {
-            return String.format(Locale.ENGLISH, "left joystick: %s right joystick: %s" +
-                            " dpad: %s" +
-                            " a: %s b: %s x: %s y: %s" +
-                            " guide: %s back: %s" +
-                            " left bumper: %s right bumper: %s" +
-                            " left trigger: %s right trigger: %s",
-                    leftJoystick, rightJoystick, dpad,
-                    a, b, x, y, guide, back,
-                    leftBumper, rightBumper,
-                    leftTrigger, rightTrigger);
-        }
-    }
-
-    private static class GamepadRecord implements Iterable<GamepadState> {
+    /**
+     * Where gamepad recordings are stored; the recordings are found through a {@link
+     * GamepadRecordIndex}, so nothing has to be parsed to look one up
+     */
+    private static class GamepadRecord {
         private final static String RECORD_DIR = "/sdcard/xtensible/gamepad/records/";
-        private final static List<GamepadRecord> RECORDS = getAvailableRecords();
-        private final String name;
-        private final int id;
-        private final LinkedList<GamepadState> states;
-        private transient int index = 0;
-
-        private GamepadRecord(String name) {
-            this.name = checkNotNull(name);
-            this.id = nextRecordId();
-            this.states = new LinkedList<>();
-        }
-
-        public static int nextRecordId(List<GamepadRecord> records) {
-            Map<Integer, GamepadRecord> recordMap = toIdMap(records);
-
-            for (int i = 0; i < Integer.MAX_VALUE; i++) {
-                if (!recordMap.containsKey(i)) {
-                    return i;
-                }
-            }
-
-            throw new IllegalArgumentException("The list of gamepad records doesn't have an available slot left between 0-" + Integer.MAX_VALUE);
-        }
+        private final static GamepadRecordIndex INDEX = new GamepadRecordIndex(new File(RECORD_DIR));
 
-        @NotNull
-        public static List<GamepadRecord> getAvailableRecords() {
-            File gamepadDir = getRecordDir();
-            List<File> files = Arrays.asList(gamepadDir.listFiles(new FileFilter() {
-                @Override
-                public boolean accept(File pathname) {
-                    return pathname.getPath().endsWith(".gsr.json");
-                }
-            }));
-
-            Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-            List<GamepadRecord> records = new LinkedList<>();
-            for (File possibleFile : files) {
-                try {
-                    GamepadRecord record = gson.fromJson(Files.newReader(possibleFile, Charset.forName("UTF-8")), GamepadRecord.class);
-                    if (record == null) {
-                        continue;
-                    }
-                    records.add(record);
-                } catch (FileNotFoundException e) {
-                    Log.e("GAMEPAD_RECORDS", "The file \"" + possibleFile.getPath() + "\" did not exist when it was attempted to be parsed", e);
-                } catch (JsonIOException ex) {
-                    Log.e("GAMEPAD_RECORDS", "The file \"" + possibleFile.getPath() + "\" was unable to be read from its input stream", ex);
-                } catch (JsonSyntaxException syntax) {
-                    Log.e("GAMEPAD_RECORDS", "The file \"" + possibleFile.getPath() + "\" has a syntax error", syntax);
-                }
-            }
-
-            return records;
-        }
-
-        private static Map<Integer, GamepadRecord> toIdMap(List<GamepadRecord> records) {
-            HashMap<Integer, GamepadRecord> recordMap = new HashMap<>();
-            for (GamepadRecord record : records) {
-                if (recordMap.containsKey(record.id)) {
-                    throw new IllegalArgumentException("The list of gamepad records contain non-unique ids; this is unsupported. The conflict is " + record.id + " in which the record " + recordMap.get(record.id) + " would be overridden by " + record);
-                }
-                recordMap.put(record.id, record);
-            }
-
-            return recordMap;
+        private GamepadRecord() {
+            throw new AssertionError("No GamepadRecord for you!");
         }
 
-        private static Map<String, GamepadRecord> toNameMap(List<GamepadRecord> records) {
-            HashMap<String, GamepadRecord> recordMap = new HashMap<>();
-            for (GamepadRecord record : records) {
-                if (recordMap.containsKey(record.name)) {
-                    throw new IllegalArgumentException("The list of gamepad records contain non-unique names; this is unsupported. The conflict is " + record.name + " in which the record " + recordMap.get(record.name) + " would be overridden by " + record);
-                }
-                recordMap.put(record.name, record);
-            }
-
-            return recordMap;
+        static GamepadRecordIndex index() {
+            getRecordDir();
+            return INDEX;
         }
 
-        public static Map<String, GamepadRecord> getMap() {
-            return toNameMap(getAvailableRecords());
+        static File fileFor(String name) {
+            return new File(getRecordDir(), name + GamepadRecordWriter.EXTENSION);
         }
 
         private static File getRecordDir() throws RuntimeIOException {
@@ -1042,93 +1161,6 @@ public class ExtensibleGamepad implements Closeable {
                 return new File(RECORD_DIR);
             }
         }
-
-        public void addRecord(@NotNull GamepadState state) {
-            states.add(checkNotNull(state));
-        }
-
-        public GamepadState nextRecord() {
-            try {
-                return states.get(index++);
-            } catch (IndexOutOfBoundsException ex) {
-                Log.e("GAMEPAD RECORD", "End of Record! Returning null");
-                return null;
-            }
-        }
-
-        public boolean isFinished() {
-            return index == states.size() - 1;
-        }
-
-        public Iterator<GamepadState> iterator() {
-            return states.iterator();
-        }
-
-        public String name() {
-            return name;
-        }
-
-        public int id() {
-            return id;
-        }
-
-        public int nextRecordId() {
-            return nextRecordId(RECORDS);
-        }
-
-        public void save() throws IOException {
-            Gson gson = new GsonBuilder().serializeNulls().serializeSpecialFloatingPointValues().disableHtmlEscaping().create();
-            String name = RECORD_DIR + this.name + ".gsr.json";
-            File file = new File(name);
-            if (file.exists()) {
-                file.delete();
-            }
-            Writer writer = Files2.writer(name);
-            gson.toJson(this, writer);
-            writer.flush();
-            writer.close();
-        }
-
-        @Override
-        public int hashCode() {
-            int hashcode = 43657;
-            final int nameHash = name.hashCode();
-            final int idHash = id;
-            final int statesHash = states.hashCode();
-
-            hashcode = 31 * hashcode + nameHash;
-            hashcode = 31 * hashcode + idHash;
-            hashcode = 31 * hashcode + statesHash;
-
-            return hashcode;
-        }
-
-
-
-        @Override
-        public boolean equals(Object other) {
-            if (other == this) {
-                return true;
-            }
-
-            if (!(other instanceof GamepadRecord)) {
-                return false;
-            }
-
-            GamepadRecord gamepadRecord = (GamepadRecord) other;
-
-            int numOfPasses = 0;
-            numOfPasses += name.equals(gamepadRecord.name) ? 1 : 0;
-            numOfPasses += id == gamepadRecord.id ? 1 : 0;
-            numOfPasses += states.equals(gamepadRecord.states) ? 1 : 0;
-
-            return numOfPasses == 3;
-        }
-
-
-        public GamepadState currentRecord() {
-            return states.get(index);
-        }
     }
 
     public class PlainJoystickScaler implements JoystickScaler {
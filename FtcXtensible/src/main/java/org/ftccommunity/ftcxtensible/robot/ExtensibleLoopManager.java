@@ -24,8 +24,10 @@ import com.google.common.collect.ImmutableMap;
 import org.ftccommunity.ftcxtensible.interfaces.OpModeLoop;
 import org.ftccommunity.ftcxtensible.interfaces.RunAssistant;
 import org.ftccommunity.ftcxtensible.internal.NotDocumentedWell;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +42,11 @@ import static com.google.common.base.Preconditions.checkState;
  * This is the configuration manager for how {@link ExtensibleOpMode} loops. You can use to change
  * how the loops behave, whether to skip loops, set a different recurring loop as a replacement,
  * and so forth
+ * <p>
+ * Registrations are compiled into timing wheels, so finding what needs to run on a loop costs the
+ * same no matter how many registrations there are, and doesn't allocate. The {@code schedule}
+ * methods return a {@link Registration} handle that can be passed to
+ * {@link #unregister(Registration)} to remove it again in constant time.</p>
  *
  * @author David Sargent
  * @since 0.2.0
@@ -47,21 +54,110 @@ import static com.google.common.base.Preconditions.checkState;
 @NotDocumentedWell
 public class ExtensibleLoopManager {
     private static final String TAG = "LOOP_MANAGER";
-    private final LinkedHashMap<Integer, LinkedList<RunAssistant>> beforeXLoop;
-    private final TreeMap<Integer, OpModeLoop> loops;
-    private TreeMap<Integer, LinkedList<RunAssistant>> beforeEveryXLoop;
-    private TreeMap<Integer, LinkedList<RunAssistant>> afterEveryXLoop;
-    private LinkedHashMap<Integer, LinkedList<RunAssistant>> afterXLoop;
+
+    private final TimingWheel preloop;
+    private final TimingWheel postLoop;
+    private final TimingWheel loops;
+    private final ArrayList<RunAssistant> preloopAssistants;
+    private final ArrayList<RunAssistant> postLoopAssistants;
+
+    // Every live registration, in order of registration
+    private Registration first;
+    private Registration last;
+    private int sequence;
 
     /**
      * Creates a new ExtensibleLoopManager
      */
     ExtensibleLoopManager() {
-        loops = new TreeMap<>();
-        beforeXLoop = new LinkedHashMap<>();
-        beforeEveryXLoop = new TreeMap<>();
-        afterEveryXLoop = new TreeMap<>();
-        afterXLoop = new LinkedHashMap<>();
+        preloop = new TimingWheel();
+        postLoop = new TimingWheel();
+        loops = new TimingWheel();
+        preloopAssistants = new ArrayList<>();
+        postLoopAssistants = new ArrayList<>();
+    }
+
+    /**
+     * Schedules a {@link RunAssistant} to run once, before the user loop of the given loop number
+     *
+     * @param loop      the loop number to run on
+     * @param assistant the {@code RunAssistant} to run
+     * @return a handle to the registration
+     */
+    @NotNull
+    public Registration scheduleBeforeX(int loop, @NotNull RunAssistant assistant) {
+        return schedule(new Registration(Kind.BEFORE_X, loop, 0, checkNotNull(assistant), null));
+    }
+
+    /**
+     * Schedules a {@link RunAssistant} to run before the user loop, on every loop number that is a
+     * multiple of <code>period</code>
+     *
+     * @param period    how often, in loops, the assistant runs
+     * @param assistant the {@code RunAssistant} to run
+     * @return a handle to the registration
+     */
+    @NotNull
+    public Registration scheduleBeforeEveryX(int period, @NotNull RunAssistant assistant) {
+        checkArgument(period > 0, "The period must be positive");
+        return schedule(new Registration(Kind.BEFORE_EVERY_X, 0, period, checkNotNull(assistant), null));
+    }
+
+    /**
+     * Schedules a {@link RunAssistant} to run after the user loop, on every loop number that is a
+     * multiple of <code>period</code>
+     *
+     * @param period    how often, in loops, the assistant runs
+     * @param assistant the {@code RunAssistant} to run
+     * @return a handle to the registration
+     */
+    @NotNull
+    public Registration scheduleAfterEveryX(int period, @NotNull RunAssistant assistant) {
+        checkArgument(period > 0, "The period must be positive");
+        return schedule(new Registration(Kind.AFTER_EVERY_X, 0, period, checkNotNull(assistant), null));
+    }
+
+    /**
+     * Schedules a {@link RunAssistant} to run once, after the user loop of the given loop number
+     *
+     * @param loop      the loop number to run on
+     * @param assistant the {@code RunAssistant} to run
+     * @return a handle to the registration
+     */
+    @NotNull
+    public Registration scheduleAfterX(int loop, @NotNull RunAssistant assistant) {
+        return schedule(new Registration(Kind.AFTER_X, loop, 0, checkNotNull(assistant), null));
+    }
+
+    /**
+     * Schedules a loop to run instead of the user loop, on every loop number that is a multiple of
+     * <code>period</code>. If more than one alternate loop is due on the same loop number, the one
+     * with the longest period runs.
+     *
+     * @param period how often, in loops, the alternate loop runs
+     * @param loop   the replacement loop
+     * @return a handle to the registration
+     */
+    @NotNull
+    public Registration scheduleLoopOnEveryX(int period, @NotNull OpModeLoop loop) {
+        checkArgument(period > 0, "The period must be positive");
+        return schedule(new Registration(Kind.LOOP_EVERY_X, 0, period, null, checkNotNull(loop)));
+    }
+
+    /**
+     * Removes a registration, so it no longer runs. Removing a registration that has already been
+     * removed, or a one-time registration that has already run, has no effect.
+     *
+     * @param registration the registration handle to remove
+     */
+    public void unregister(@NotNull Registration registration) {
+        checkArgument(checkNotNull(registration).manager == this,
+                "The registration belongs to a different loop manager");
+        if (registration.wheel != null) {
+            registration.wheel.remove(registration);
+        }
+
+        forget(registration);
     }
 
     /**
@@ -75,12 +171,13 @@ public class ExtensibleLoopManager {
      * @return the current {@code ExtensibleLoopManager}
      */
     protected ExtensibleLoopManager registerNewLoopOnEveryX(int loopX, OpModeLoop loop) {
-        if (loops.containsKey(loopX)) {
+        Registration existing = findLoop(loopX);
+        if (existing != null) {
             Log.w(TAG, "Loop already exists; replacing");
-            loops.remove(loopX);
+            unregister(existing);
         }
 
-        loops.put(loopX, loop);
+        scheduleLoopOnEveryX(loopX, loop);
         return this;
     }
 
@@ -94,8 +191,9 @@ public class ExtensibleLoopManager {
      */
     protected ExtensibleLoopManager unregisterNewLoopOnEveryX(int loopX)
             throws IllegalStateException {
-        checkState(loops.containsKey(loopX), "Loop has not registered replacement for " + loopX);
-        loops.remove(loopX);
+        Registration existing = findLoop(loopX);
+        checkState(existing != null, "Loop has not registered replacement for " + loopX);
+        unregister(existing);
 
         return this;
     }
@@ -108,302 +206,413 @@ public class ExtensibleLoopManager {
      * @return the current {@code ExtensibleLoopManager}
      */
     protected ExtensibleLoopManager registerBeforeXLoop(int loop, RunAssistant assistant) {
-        checkNotNull(assistant);
-
-        if (beforeXLoop.containsKey(loop)) {
-            beforeXLoop.get(loop).add(assistant);
-        } else {
-            createNewRunAssistantKey(loop, assistant, beforeXLoop);
-        }
-
+        scheduleBeforeX(loop, assistant);
         return this;
     }
 
     protected ExtensibleLoopManager unregisterBeforeX(int loopCountber, String name) throws IllegalStateException {
-        List<Integer> candidate = getPossibleCandidatesForBeforeX(loopCountber, name);
-        if (checkRunAssistantRemoval(loopCountber, candidate, false)) {
-            unregisterAfterEveryX(loopCountber, candidate.get(0));
-        }
-
-        return this;
+        return unregisterCandidate(Kind.BEFORE_X, loopCountber, name, false);
     }
 
     protected ExtensibleLoopManager unregisterBeforeX(int loopCount, int pos) {
-        checkElementIndex(pos, beforeXLoop.get(loopCount).size());
-
-        afterEveryXLoop.get(loopCount).remove(pos);
+        unregister(get(Kind.BEFORE_X, loopCount, pos));
         return this;
     }
 
     protected ExtensibleLoopManager unregisterLastBeforeX(int loopCountber, String name) {
-        List<Integer> candidate = getPossibleCandidatesForBeforeX(loopCountber, name);
-        if (checkRunAssistantRemoval(loopCountber, candidate, true)) {
-            unregisterAfterEveryX(loopCountber, candidate.get(candidate.size() - 1));
-        }
-        return this;
+        return unregisterCandidate(Kind.BEFORE_X, loopCountber, name, true);
     }
 
     protected List<Integer> getPossibleCandidatesForBeforeX(int loopCount, String name) {
-        return getCandidates(loopCount, name, beforeXLoop);
-    }
-
-    protected ExtensibleLoopManager registerBeforeEveryX(int loop, RunAssistant assistant) {
-        checkNotNull(assistant);
-
-        if (beforeEveryXLoop.containsKey(loop)) {
-            beforeEveryXLoop.get(loop).add(assistant);
-        } else {
-            createNewRunAssistantKey(loop, assistant, beforeEveryXLoop);
-        }
-
-        return this;
+        return getCandidates(Kind.BEFORE_X, loopCount, name);
     }
 
     protected ExtensibleLoopManager requestChangeOfRegisterBeforeX(Map<Integer, LinkedList<RunAssistant>> map) {
-        checkNotNull(map);
-
-        checkRunAssistantMap(map);
-        afterEveryXLoop = new TreeMap<>(map);
+        replace(Kind.BEFORE_X, map);
         return this;
     }
 
     protected ImmutableMap<Integer, LinkedList<RunAssistant>> getRegisterBeforeX() {
-        return ImmutableMap.copyOf(afterEveryXLoop);
+        return toMap(Kind.BEFORE_X);
     }
 
-    protected ExtensibleLoopManager unregisterBeforeEveryX(int loopCountber, String name) throws IllegalStateException {
-        List<Integer> candidate = getPossibleCandidatesForAfterEveryX(loopCountber, name);
-        if (checkRunAssistantRemoval(loopCountber, candidate, false)) {
-            unregisterAfterEveryX(loopCountber, candidate.get(0));
-        }
-
+    protected ExtensibleLoopManager registerBeforeEveryX(int loop, RunAssistant assistant) {
+        scheduleBeforeEveryX(loop, assistant);
         return this;
     }
 
-    protected ExtensibleLoopManager unregisterBeforeEveryX(int loopCount, int pos) {
-        checkElementIndex(pos, beforeEveryXLoop.get(loopCount).size());
+    protected ExtensibleLoopManager unregisterBeforeEveryX(int loopCountber, String name) throws IllegalStateException {
+        return unregisterCandidate(Kind.BEFORE_EVERY_X, loopCountber, name, false);
+    }
 
-        beforeEveryXLoop.get(loopCount).remove(pos);
+    protected ExtensibleLoopManager unregisterBeforeEveryX(int loopCount, int pos) {
+        unregister(get(Kind.BEFORE_EVERY_X, loopCount, pos));
         return this;
     }
 
     protected ExtensibleLoopManager unregisterLastBeforeEveryX(int loopCountber, String name) {
-        List<Integer> candidate = getPossibleCandidatesForAfterEveryX(loopCountber, name);
-        if (checkRunAssistantRemoval(loopCountber, candidate, true)) {
-            unregisterAfterEveryX(loopCountber, candidate.get(candidate.size() - 1));
-        }
-        return this;
+        return unregisterCandidate(Kind.BEFORE_EVERY_X, loopCountber, name, true);
     }
 
     protected List<Integer> getPossibleCandidatesForBeforeEveryX(int loopCount, String name) {
-        return getCandidates(loopCount, name, beforeEveryXLoop);
+        return getCandidates(Kind.BEFORE_EVERY_X, loopCount, name);
     }
 
     protected ExtensibleLoopManager requestChangeOfRegisterBeforeEveryX(Map<Integer, LinkedList<RunAssistant>> map) {
-        checkNotNull(map);
-
-        checkRunAssistantMap(map);
-        beforeEveryXLoop = new TreeMap<>(map);
+        replace(Kind.BEFORE_EVERY_X, map);
         return this;
     }
 
     protected ImmutableMap<Integer, LinkedList<RunAssistant>> getRegisterBeforeEveryX() {
-        return ImmutableMap.copyOf(beforeEveryXLoop);
+        return toMap(Kind.BEFORE_EVERY_X);
     }
 
     protected ExtensibleLoopManager registerAfterEveryX(int loop, RunAssistant assistant) {
-        checkNotNull(assistant);
-
-        if (afterEveryXLoop.containsKey(loop)) {
-            afterEveryXLoop.get(loop).add(assistant);
-        } else {
-            createNewRunAssistantKey(loop, assistant, afterEveryXLoop);
-        }
-
+        scheduleAfterEveryX(loop, assistant);
         return this;
     }
 
     protected ExtensibleLoopManager unregisterAfterEveryX(int loopCountber, String name) throws IllegalStateException {
-        List<Integer> candidate = getPossibleCandidatesForAfterEveryX(loopCountber, name);
-        if (checkRunAssistantRemoval(loopCountber, candidate, false)) {
-            unregisterAfterX(loopCountber, candidate.get(candidate.size() - 1));
-        }
-
-        return this;
+        return unregisterCandidate(Kind.AFTER_EVERY_X, loopCountber, name, false);
     }
 
     protected ExtensibleLoopManager unregisterAfterEveryX(int loopCount, int pos) {
-        checkElementIndex(pos, afterEveryXLoop.size());
-
-        afterEveryXLoop.get(loopCount).remove(pos);
+        unregister(get(Kind.AFTER_EVERY_X, loopCount, pos));
         return this;
     }
 
     protected ExtensibleLoopManager unregisterLastEveryX(int loopCountber, String name) {
-        List<Integer> candidate = getPossibleCandidatesForAfterEveryX(loopCountber, name);
-        if (checkRunAssistantRemoval(loopCountber, candidate, true)) {
-            unregisterAfterEveryX(loopCountber, candidate.get(candidate.size() - 1));
-        }
-
-        return this;
+        return unregisterCandidate(Kind.AFTER_EVERY_X, loopCountber, name, true);
     }
 
     protected List<Integer> getPossibleCandidatesForAfterEveryX(int loopCount, String name) {
-        return getCandidates(loopCount, name, afterEveryXLoop);
+        return getCandidates(Kind.AFTER_EVERY_X, loopCount, name);
     }
 
     protected ExtensibleLoopManager requestChangeOfRegisterAfterEveryX(Map<Integer, LinkedList<RunAssistant>> map) {
-        checkNotNull(map);
-
-        checkRunAssistantMap(map);
-        afterEveryXLoop = new TreeMap<>(map);
+        replace(Kind.AFTER_EVERY_X, map);
         return this;
     }
 
     protected ImmutableMap<Integer, LinkedList<RunAssistant>> getRegisterAfterEveryX() {
-        return ImmutableMap.copyOf(afterEveryXLoop);
+        return toMap(Kind.AFTER_EVERY_X);
     }
 
     protected ExtensibleLoopManager registerAfterX(int loop, RunAssistant assistant) {
-        if (assistant == null) {
-            throw new NullPointerException();
-        }
-
-        if (afterXLoop.containsKey(loop)) {
-            afterXLoop.get(loop).add(assistant);
-        } else {
-            createNewRunAssistantKey(loop, assistant, afterXLoop);
-        }
-
+        scheduleAfterX(loop, assistant);
         return this;
     }
 
     protected ExtensibleLoopManager unregisterAfterX(int loopCountber, String name) throws IllegalStateException {
-        List<Integer> candidate = getPossibleCandidatesForAfterEveryX(loopCountber, name);
-        if (checkRunAssistantRemoval(loopCountber, candidate, false)) {
-            unregisterAfterX(loopCountber, candidate.get(candidate.size() - 1));
-        }
-
-        return this;
+        return unregisterCandidate(Kind.AFTER_X, loopCountber, name, false);
     }
 
     protected ExtensibleLoopManager unregisterAfterX(int loopCount, int pos) {
-        checkElementIndex(pos, afterXLoop.size());
-
-        afterXLoop.get(loopCount).remove(pos);
+        unregister(get(Kind.AFTER_X, loopCount, pos));
         return this;
     }
 
     protected ExtensibleLoopManager unregisterLastAfterX(int loopCountber, String name) {
-        List<Integer> candidate = getPossibleCandidatesForAfterEveryX(loopCountber, name);
-        if (checkRunAssistantRemoval(loopCountber, candidate, true)) {
-            unregisterAfterX(loopCountber, candidate.get(candidate.size() - 1));
-        }
-
-        return this;
+        return unregisterCandidate(Kind.AFTER_X, loopCountber, name, true);
     }
 
     protected List<Integer> getPossibleCandidatesForAfterX(int loopCount, String name) {
-        return getCandidates(loopCount, name, afterXLoop);
+        return getCandidates(Kind.AFTER_X, loopCount, name);
     }
 
     protected ExtensibleLoopManager requestChangeOfRegisterAfterX(Map<Integer, LinkedList<RunAssistant>> map) {
-        checkNotNull(map);
-        checkRunAssistantMap(map);
-        afterXLoop = new LinkedHashMap<>(map);
+        replace(Kind.AFTER_X, map);
         return this;
     }
 
     protected ImmutableMap<Integer, LinkedList<RunAssistant>> getRegisterAfterX() {
-        return ImmutableMap.copyOf(afterXLoop);
+        return toMap(Kind.AFTER_X);
     }
 
+    /**
+     * Gets the {@link RunAssistant}s to run before the user loop on the given loop number. The
+     * returned list is reused between calls and must not be modified
+     *
+     * @param loopCount the current loop number
+     * @return the assistants to run, in order of registration
+     */
+    public List<RunAssistant> getPreloopAssistants(int loopCount) {
+        return collect(preloop, loopCount, preloopAssistants);
+    }
 
-    private boolean checkRunAssistantRemoval(
-            int loopCounter, List<Integer> candidates, boolean isLast) throws IllegalStateException {
-        checkArgument(candidates.size() > 1, "Cannot remove something, if there is nothing");
+    /**
+     * Gets the {@link RunAssistant}s to run after the user loop on the given loop number. The
+     * returned list is reused between calls and must not be modified
+     *
+     * @param loopCount the current loop number
+     * @return the assistants to run, in order of registration
+     */
+    public List<RunAssistant> getPostLoopAssistants(int loopCount) {
+        return collect(postLoop, loopCount, postLoopAssistants);
+    }
 
-        if (candidates.size() != 1) {
-            Log.w(TAG, "There are multiple removal candidates, removing the " +
-                    (isLast ? "last" : "first") + ".");
-            logRunAssistant(loopCounter, candidates);
+    /**
+     * Gets the alternate loop to run instead of the user loop on the given loop number
+     *
+     * @param loopCount the current loop number
+     * @return the loop to run, or {@code null} if the user loop should run
+     */
+    @Nullable
+    public OpModeLoop getLoop(int loopCount) {
+        List<Registration> due = loops.advance(loopCount);
+        Registration longest = null;
+        for (int i = 0; i < due.size(); i++) {
+            if (longest == null || due.get(i).period >= longest.period) {
+                longest = due.get(i);
+            }
         }
-        return true;
+
+        return longest != null ? longest.opModeLoop : null;
     }
 
-    private boolean checkRunAssistantMap(Map<Integer, LinkedList<RunAssistant>> map) {
-        for (Integer i : map.keySet()) {
-            for (RunAssistant runAssistant : map.get(i)) {
-                if (runAssistant == null) {
-                    throw new NullPointerException();
-                }
-            }
+    private List<RunAssistant> collect(TimingWheel wheel, int loopCount, ArrayList<RunAssistant> out) {
+        if (wheel.cursor() == loopCount) {
+            return out;
+        }
+
+        List<Registration> due = wheel.advance(loopCount);
+        out.clear();
+        for (int i = 0; i < due.size(); i++) {
+            out.add(due.get(i).assistant);
         }
-        return true;
+
+        return out;
     }
 
-    private void createNewRunAssistantKey(
-            int loop, RunAssistant assistant, Map<Integer, LinkedList<RunAssistant>> RunAssistantMap) {
-        LinkedList<RunAssistant> assistants = new LinkedList<>();
-        assistants.add(assistant);
-        RunAssistantMap.put(loop, assistants);
+    private Registration schedule(Registration registration) {
+        registration.manager = this;
+        registration.registered = true;
+        registration.sequence = sequence++;
+        registration.previousRegistration = last;
+        if (last != null) {
+            last.nextRegistration = registration;
+        } else {
+            first = registration;
+        }
+        last = registration;
+
+        if (!wheelFor(registration.kind).add(registration)) {
+            Log.w(TAG, "Loop " + registration.loopNumber + " has already passed; it will never run");
+            forget(registration);
+        }
+
+        return registration;
     }
 
-    private LinkedList<Integer> getCandidates(int loopCount, String name, Map<Integer, LinkedList<RunAssistant>> runAssistantMap) {
-        LinkedList<Integer> list = new LinkedList<>();
+    /**
+     * Drops a registration from the list of live registrations
+     */
+    private void forget(Registration registration) {
+        if (!registration.registered) {
+            return;
+        }
 
-        for (int i = 0; i < runAssistantMap.get(loopCount).size(); i++) {
-            RunAssistant secondItem = runAssistantMap.get(loopCount).get(i);
-            if (secondItem.getClass().getSimpleName().indexOf(name) == 0) {
-                list.add(i);
+        if (registration.previousRegistration != null) {
+            registration.previousRegistration.nextRegistration = registration.nextRegistration;
+        } else {
+            first = registration.nextRegistration;
+        }
+
+        if (registration.nextRegistration != null) {
+            registration.nextRegistration.previousRegistration = registration.previousRegistration;
+        } else {
+            last = registration.previousRegistration;
+        }
+
+        registration.previousRegistration = null;
+        registration.nextRegistration = null;
+        registration.registered = false;
+    }
+
+    private TimingWheel wheelFor(Kind kind) {
+        switch (kind) {
+            case BEFORE_X:
+            case BEFORE_EVERY_X:
+                return preloop;
+            case AFTER_X:
+            case AFTER_EVERY_X:
+                return postLoop;
+            default:
+                return loops;
+        }
+    }
+
+    @Nullable
+    private Registration findLoop(int period) {
+        for (Registration registration = first; registration != null; registration = registration.nextRegistration) {
+            if (registration.kind == Kind.LOOP_EVERY_X && registration.period == period) {
+                return registration;
             }
         }
-        return list;
+
+        return null;
     }
 
-    private void logRunAssistant(int loopCountber, List<Integer> candidate) {
-        for (int i : candidate) {
-            Log.i(TAG, i + " " +
-                    afterEveryXLoop.get(loopCountber).get(i).getClass().getSimpleName());
+    private List<Registration> getRegistrations(Kind kind, int key) {
+        List<Registration> registrations = new ArrayList<>();
+        for (Registration registration = first; registration != null; registration = registration.nextRegistration) {
+            if (registration.kind == kind && registration.key() == key) {
+                registrations.add(registration);
+            }
         }
+
+        return registrations;
     }
 
-    public LinkedList<RunAssistant> getPreloopAssistants(int loopCount) {
-        LinkedList<RunAssistant> assistants = new LinkedList<>();
+    private Registration get(Kind kind, int key, int pos) {
+        List<Registration> registrations = getRegistrations(kind, key);
+        checkElementIndex(pos, registrations.size());
+        return registrations.get(pos);
+    }
 
-        if (beforeXLoop.containsKey(loopCount)) {
-            for (RunAssistant assistant : beforeXLoop.get(loopCount)) {
-                assistants.add(assistant);
+    private LinkedList<Integer> getCandidates(Kind kind, int loopCount, String name) {
+        LinkedList<Integer> list = new LinkedList<>();
+        List<Registration> registrations = getRegistrations(kind, loopCount);
+        for (int i = 0; i < registrations.size(); i++) {
+            if (registrations.get(i).assistant.getClass().getSimpleName().indexOf(name) == 0) {
+                list.add(i);
             }
         }
 
-        if (beforeEveryXLoop.containsKey(loopCount)) {
-            for (RunAssistant assistant : beforeEveryXLoop.get(loopCount)) {
-                assistants.add(assistant);
+        return list;
+    }
+
+    private ExtensibleLoopManager unregisterCandidate(Kind kind, int loopCount, String name, boolean isLast)
+            throws IllegalStateException {
+        List<Integer> candidates = getCandidates(kind, loopCount, name);
+        checkState(!candidates.isEmpty(), "Cannot remove something, if there is nothing");
+
+        if (candidates.size() != 1) {
+            Log.w(TAG, "There are multiple removal candidates, removing the " +
+                    (isLast ? "last" : "first") + ".");
+            List<Registration> registrations = getRegistrations(kind, loopCount);
+            for (int i : candidates) {
+                Log.i(TAG, i + " " + registrations.get(i).assistant.getClass().getSimpleName());
             }
         }
 
-        return assistants;
+        int pos = isLast ? candidates.get(candidates.size() - 1) : candidates.get(0);
+        unregister(get(kind, loopCount, pos));
+        return this;
     }
 
-    public LinkedList<RunAssistant> getPostLoopAssistants(int loopCount) {
-        LinkedList<RunAssistant> assistants = new LinkedList<>();
-        if (afterEveryXLoop.containsKey(loopCount)) {
-            for (RunAssistant assistant : afterEveryXLoop.get(loopCount)) {
-                assistants.add(assistant);
+    private void replace(Kind kind, Map<Integer, LinkedList<RunAssistant>> map) {
+        checkNotNull(map);
+        for (Integer i : map.keySet()) {
+            for (RunAssistant runAssistant : map.get(i)) {
+                checkNotNull(runAssistant);
+            }
+        }
+
+        Registration registration = first;
+        while (registration != null) {
+            Registration next = registration.nextRegistration;
+            if (registration.kind == kind) {
+                unregister(registration);
             }
+            registration = next;
         }
 
-        if (afterXLoop.containsKey(loopCount)) {
-            for (RunAssistant assistant : afterXLoop.get(loopCount)) {
-                assistants.add(assistant);
+        for (Map.Entry<Integer, LinkedList<RunAssistant>> entry : new TreeMap<>(map).entrySet()) {
+            for (RunAssistant assistant : entry.getValue()) {
+                if (kind.isPeriodic()) {
+                    schedule(new Registration(kind, 0, entry.getKey(), assistant, null));
+                } else {
+                    schedule(new Registration(kind, entry.getKey(), 0, assistant, null));
+                }
             }
         }
+    }
 
-        return assistants;
+    private ImmutableMap<Integer, LinkedList<RunAssistant>> toMap(Kind kind) {
+        TreeMap<Integer, LinkedList<RunAssistant>> map = new TreeMap<>();
+        for (Registration registration = first; registration != null; registration = registration.nextRegistration) {
+            if (registration.kind == kind) {
+                if (!map.containsKey(registration.key())) {
+                    map.put(registration.key(), new LinkedList<RunAssistant>());
+                }
+                map.get(registration.key()).add(registration.assistant);
+            }
+        }
+
+        return ImmutableMap.copyOf(map);
+    }
+
+    private enum Kind {
+        BEFORE_X, BEFORE_EVERY_X, AFTER_EVERY_X, AFTER_X, LOOP_EVERY_X;
+
+        boolean isPeriodic() {
+            return this == BEFORE_EVERY_X || this == AFTER_EVERY_X || this == LOOP_EVERY_X;
+        }
     }
-}
 
+    /**
+     * A handle to something registered with an {@link ExtensibleLoopManager}, used to unregister
+     * it later on
+     *
+     * @author David Sargent
+     * @since 0.3.2
+     */
+    public static final class Registration {
+        final Kind kind;
+        final int loopNumber;
+        final int period;
+        final RunAssistant assistant;
+        final OpModeLoop opModeLoop;
+        ExtensibleLoopManager manager;
+        boolean registered;
+        int sequence;
+
+        // Timing wheel state
+        int due;
+        boolean removed;
+        TimingWheel wheel;
+        Registration next;
+        Registration previous;
+
+        // Registration order
+        Registration nextRegistration;
+        Registration previousRegistration;
+
+        private Registration(Kind kind, int loopNumber, int period,
+                             RunAssistant assistant, OpModeLoop opModeLoop) {
+            this.kind = kind;
+            this.loopNumber = loopNumber;
+            this.period = period;
+            this.assistant = assistant;
+            this.opModeLoop = opModeLoop;
+        }
 
+        /**
+         * Checks if this is still registered, a one-time registration stops being registered once
+         * it has run
+         *
+         * @return {@code true} if this will run again, otherwise {@code false}
+         */
+        public boolean isRegistered() {
+            return registered;
+        }
 
+        /**
+         * Gets the key this was registered under, the loop number for one-time registrations and
+         * the period for recurring ones
+         *
+         * @return the loop number or period of this registration
+         */
+        public int key() {
+            return kind.isPeriodic() ? period : loopNumber;
+        }
 
+        /**
+         * Called by the {@link TimingWheel} once a one-time registration has run
+         */
+        void finished() {
+            manager.forget(this);
+        }
+    }
+}
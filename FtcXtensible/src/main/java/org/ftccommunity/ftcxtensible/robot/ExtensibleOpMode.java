@@ -26,7 +26,6 @@ import android.util.Log;
 import android.view.View;
 
 import com.google.common.base.Throwables;
-import com.google.common.collect.EvictingQueue;
 import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -38,9 +37,12 @@ import com.qualcomm.robotcore.robocol.Telemetry;
 import com.qualcomm.robotcore.util.RobotLog;
 
 import org.ftccommunity.bindings.DataBinder;
+import org.ftccommunity.ftcxtensible.core.trace.EventTracer;
 import org.ftccommunity.ftcxtensible.hardware.camera.ExtensibleCameraManager;
 import org.ftccommunity.ftcxtensible.interfaces.AbstractRobotContext;
 import org.ftccommunity.ftcxtensible.interfaces.FullOpMode;
+import org.ftccommunity.ftcxtensible.interfaces.IndependentRunAssistant;
+import org.ftccommunity.ftcxtensible.interfaces.OpModeLoop;
 import org.ftccommunity.ftcxtensible.interfaces.RunAssistant;
 import org.ftccommunity.ftcxtensible.internal.NotDocumentedWell;
 import org.ftccommunity.ftcxtensible.networking.ServerSettings;
@@ -51,10 +53,12 @@ import org.jetbrains.annotations.NotNull;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import io.netty.handler.codec.http.multipart.InterfaceHttpData;
 
@@ -80,8 +84,16 @@ public abstract class ExtensibleOpMode extends OpMode implements FullOpMode, Abs
     private int loopCount;
     private volatile int skipNextLoop;
 
+    // Reused every loop cycle, so the hot path doesn't create garbage
+    private final LinkedList<Object> loopOutput;
+    private final LinkedList<Object> assistantOutput;
+
     private boolean logTimes;
-    private EvictingQueue<Integer> loopTimes;
+    private final LoopProfiler profiler;
+    private final PerformanceTuner tuner;
+    private final DeadlinePacer pacer;
+    private ParallelAssistantRunner parallelRunner;
+    private final RestartSupervisor supervisor;
     private VariableTracer tracer;
 
     private boolean isStopped = false;
@@ -110,7 +122,12 @@ public abstract class ExtensibleOpMode extends OpMode implements FullOpMode, Abs
         }
 
         loopManager = new ExtensibleLoopManager();
-        loopTimes = EvictingQueue.create(50);
+        loopOutput = new LinkedList<>();
+        assistantOutput = new LinkedList<>();
+        profiler = new LoopProfiler();
+        tuner = new PerformanceTuner();
+        pacer = new DeadlinePacer();
+        supervisor = new RestartSupervisor();
 
         Log.i(TAG, "OpMode: " + this.getClass().getSimpleName());
     }
@@ -164,7 +181,8 @@ public abstract class ExtensibleOpMode extends OpMode implements FullOpMode, Abs
             handleException(list, e);
         }
 
-        postProcess(list, RobotStatus.MainStates.START);
+        processResults(list, RobotStatus.MainStates.START);
+        telemetry().flush();
     }
 
 
@@ -191,7 +209,7 @@ public abstract class ExtensibleOpMode extends OpMode implements FullOpMode, Abs
             }
         }
 
-        telemetry().sendData();
+        telemetry().flush();
     }
 
 
@@ -200,64 +218,109 @@ public abstract class ExtensibleOpMode extends OpMode implements FullOpMode, Abs
      */
     @Override
     public final void loop() {
-        loopCount++;
-        if (skipNextLoop > 0) {
-            skipNextLoop--;
-            Log.i(TAG, "Skipping Loop #" + getLoopCount());
+        // A @RobotsDontQuit OpMode that threw is restarted here, on the loop thread
+        if (supervisor.isWaiting() && !restart()) {
             return;
         }
 
-        //  determine if the following line is needed;  I think not
-        // bindHardwareMap(super.hardwareMap);
-        if (robotContext.status().getMainRobotState() == RobotStatus.MainStates.EXCEPTION &&
-                (robotContext.status().getCurrentStateType() == RobotStatus.Type.FAILURE ||
-                        robotContext.status().getCurrentStateType() == RobotStatus.Type.IDK)) {
-            throw new IllegalStateException("Robot cannot continue to execute, due to an exception");
+        // In fixed rate mode, calls that come before the next release are turned away
+        if (!pacer.begin(System.nanoTime())) {
+            return;
         }
 
-        // Good to continue
-        long startTime = System.nanoTime();
+        // The release time has to advance however the cycle ends, or the next one is turned away
+        long startTime = 0;
+        long endTime = 0;
+        boolean completed = false;
+        try {
+            loopCount++;
+            if (skipNextLoop > 0) {
+                skipNextLoop--;
+                Log.i(TAG, "Skipping Loop #" + getLoopCount());
+                return;
+            }
 
-        // Update the gamepads
-        gamepad1().updateGamepad(robotContext, super.gamepad1);
-        gamepad2().updateGamepad(robotContext, super.gamepad2);
+            //  determine if the following line is needed;  I think not
+            // bindHardwareMap(super.hardwareMap);
+            if (robotContext.status().getMainRobotState() == RobotStatus.MainStates.EXCEPTION &&
+                    (robotContext.status().getCurrentStateType() == RobotStatus.Type.FAILURE ||
+                            robotContext.status().getCurrentStateType() == RobotStatus.Type.IDK)) {
+                throw new IllegalStateException("Robot cannot continue to execute, due to an exception");
+            }
 
-        // Pre loop init
-        robotContext.status().setMainState(RobotStatus.MainStates.EXEC);
-        LinkedList<Object> list = new LinkedList<>();
+            // Good to continue
+            startTime = System.nanoTime();
+            long phaseTime = startTime;
 
-        // Start loop checks
-        for (RunAssistant assistant : loopManager.getPreloopAssistants(getLoopCount())) {
-            runAssistant(assistant);
-        }
+            // Update the gamepads
+            gamepad1().updateGamepad(robotContext, super.gamepad1);
+            gamepad2().updateGamepad(robotContext, super.gamepad2);
+            phaseTime = profiler.record(LoopProfiler.Phase.GAMEPAD, phaseTime);
 
-        // Main loop
-        try {
-            loop(robotContext, list);
-        } catch (InterruptedException ex) {
-            return;
-        } catch (Exception e) {
-            handleException(list, e);
-        }
+            // Pre loop init
+            robotContext.status().setMainState(RobotStatus.MainStates.EXEC);
+            LinkedList<Object> list = loopOutput;
+            list.clear();
 
-        // Post loop processing
-        for (RunAssistant assistant : loopManager.getPostLoopAssistants(getLoopCount())) {
-            runAssistant(assistant);
-        }
+            // Start loop checks
+            boolean runAssistants = pacer.shouldRunAssistants();
+            if (runAssistants) {
+                runAssistants(loopManager.getPreloopAssistants(getLoopCount()));
+            }
+            phaseTime = profiler.record(LoopProfiler.Phase.PRE_LOOP, phaseTime);
+
+            // Main loop, unless an alternate loop is registered for this loop number
+            OpModeLoop alternate = loopManager.getLoop(getLoopCount());
+            try {
+                if (alternate != null) {
+                    alternate.loop(robotContext, list);
+                } else {
+                    loop(robotContext, list);
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (Exception e) {
+                handleException(list, e);
+            }
+            processResults(list, robotContext.status().getMainRobotState());
+            phaseTime = profiler.record(LoopProfiler.Phase.USER_LOOP, phaseTime);
 
-        postProcess(list, robotContext.status().getMainRobotState());
+            // Post loop processing
+            if (runAssistants) {
+                runAssistants(loopManager.getPostLoopAssistants(getLoopCount()));
+            }
+            phaseTime = profiler.record(LoopProfiler.Phase.POST_LOOP, phaseTime);
+
+            // All of the telemetry of this cycle goes out in one send
+            if (pacer.shouldSendTelemetry()) {
+                telemetry().flush();
+            }
+            profiler.record(LoopProfiler.Phase.TELEMETRY, phaseTime);
 
-        // Get the delta time and check if it was longer than 50ms
-        long endTime = System.nanoTime();
-        long timeTaken = (endTime - startTime);
+            // Get the delta time and check if it was longer than 50ms
+            endTime = profiler.record(LoopProfiler.Phase.TOTAL, startTime);
+            completed = true;
+        } finally {
+            pacer.end(completed ? endTime : System.nanoTime());
+        }
+
+        long recoveryTime = supervisor.loopFinished(endTime);
+        if (recoveryTime >= 0) {
+            Log.i(TAG, "Recovered from the last exception in " +
+                    TimeUnit.NANOSECONDS.toMillis(recoveryTime) + "ms");
+        }
+        long timeTaken = endTime - startTime;
         if (timeTaken - (1000000 * 50) > 0) {
             Log.w(TAG, "User code took long than " + 50 + "ms. Time: " +
-                    timeTaken + "ms");
+                    TimeUnit.NANOSECONDS.toMillis(timeTaken) + "ms");
         }
 
         if (logTimes) {
-            loopTimes.add((int) timeTaken);
-            tracer.log();
+            if (tuner.record(timeTaken)) {
+                Log.w(TAG, "Loop " + getLoopCount() + " is an outlier, it took " +
+                        TimeUnit.NANOSECONDS.toMillis(timeTaken) + "ms (z = " + tuner.getLastZIndex() + ")");
+            }
+            tracer.log(getLoopCount(), endTime);
         }
     }
 
@@ -276,42 +339,99 @@ public abstract class ExtensibleOpMode extends OpMode implements FullOpMode, Abs
                 handleException(list, e);
             }
 
-            postProcess(list, RobotStatus.MainStates.STOP);
+            processResults(list, RobotStatus.MainStates.STOP);
+            telemetry().flush();
+
+            if (pacer.isEnabled()) {
+                Log.i(TAG, "Fixed rate: " + pacer.getCycles() + " cycles, " + pacer.getMissedDeadlines() +
+                        " missed deadlines, " + pacer.getSkippedCycles() + " skipped cycles");
+            }
 
             if (logTimes) {
+                Log.i(TAG, "Loop phase latencies:\n" + profiler);
                 File perfFile = new File(Environment.getExternalStorageDirectory() + "/perf_" + System.currentTimeMillis() + ".json");
                 Log.i(TAG, "Saving Loop Performance File at " + perfFile);
                 Gson gson = new GsonBuilder().setPrettyPrinting().create();
                 try {
                     FileWriter outputStream = new FileWriter(perfFile);
-                    outputStream.write(gson.toJson(new PerformanceTuner((Integer[]) loopTimes.toArray())));
+                    try {
+                        outputStream.write(gson.toJson(getPerformanceReport()));
+                    } finally {
+                        outputStream.close();
+                    }
+                } catch (IOException ex) {
+                    Log.e(TAG, ex.getMessage(), ex);
+                }
+
+                File traceFile = new File(Environment.getExternalStorageDirectory() + "/trace_" + System.currentTimeMillis() + ".bin");
+                Log.i(TAG, "Saving " + tracer.size() + " traced loops at " + traceFile);
+                try {
+                    tracer.dump(traceFile);
+                } catch (IOException ex) {
+                    Log.e(TAG, ex.getMessage(), ex);
+                }
+            }
+
+            if (EventTracer.isEnabled()) {
+                EventTracer.disable();
+                File eventFile = new File(Environment.getExternalStorageDirectory() + "/events_" + System.currentTimeMillis() + ".json");
+                Log.i(TAG, "Saving Trace Events at " + eventFile);
+                try {
+                    EventTracer.write(eventFile);
                 } catch (IOException ex) {
                     Log.e(TAG, ex.getMessage(), ex);
                 }
             }
 
+            // The log of the match is on storage before the app can be killed
+            RobotLogger.syncPersistentLog(1, TimeUnit.SECONDS);
+
+            disableParallelAssistants();
             parent = null;
             release();
             isStopped = true;
         }
     }
 
+    private Map<String, Object> getPerformanceReport() {
+        Map<String, Object> loop = new LinkedHashMap<>();
+        loop.put("count", tuner.getCount());
+        loop.put("average", tuner.getAverage());
+        loop.put("stdDev", tuner.getStdDev());
+        loop.put("outliers", tuner.getOutliers());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("loop", loop);
+        if (pacer.isEnabled()) {
+            Map<String, Object> fixedRate = new LinkedHashMap<>();
+            fixedRate.put("period", pacer.getPeriod());
+            fixedRate.put("policy", pacer.getPolicy());
+            fixedRate.put("cycles", pacer.getCycles());
+            fixedRate.put("lateCycles", pacer.getLateCycles());
+            fixedRate.put("missedDeadlines", pacer.getMissedDeadlines());
+            fixedRate.put("skippedCycles", pacer.getSkippedCycles());
+            fixedRate.put("maxOverrun", pacer.getMaxOverrun());
+            report.put("fixedRate", fixedRate);
+        }
+        report.put("phases", profiler.summarize());
+        return report;
+    }
+
     /**
-     * Post process the given details of the user code segment
+     * Hands each result of a user code segment to {@link #onSuccess(RobotContext, Object, Object)},
+     * emptying the list in the process
      *
      * @param list  the list as generated by the user code
      * @param state the {@link RobotStatus} reflecting the status of the current robot
      */
-    private void postProcess(LinkedList<Object> list, RobotStatus.MainStates state) {
+    private void processResults(LinkedList<Object> list, RobotStatus.MainStates state) {
         if (list.isEmpty()) {
             onSuccess(robotContext, state, null);
         } else {
-            for (Object o : list) {
-                onSuccess(robotContext, state, o);
+            while (!list.isEmpty()) {
+                onSuccess(robotContext, state, list.removeFirst());
             }
         }
-
-        telemetry().sendData();
     }
 
     /**
@@ -332,13 +452,16 @@ public abstract class ExtensibleOpMode extends OpMode implements FullOpMode, Abs
     }
 
     /**
-     * Enables the current OpMode that devires this to be recorded for debugging reasons
+     * Enables the current OpMode that devires this to be recorded for debugging reasons. This
+     * records how long each phase of the loop takes, see {@link #loopProfiler()}, and traces the
+     * primitive fields of the child over the last few thousand loops. Both are saved on stop.
      *
      * @param child the OpMode that needs to be monitored
      * @param <T>   the type of the monitored child
      */
     protected final <T> void enableLoopPerformanceCapture(@NotNull T child) {
-        this.tracer = new VariableTracer<>(child);
+        this.tracer = new VariableTracer(child);
+        profiler.setEnabled(true);
         logTimes = true;
     }
 
@@ -346,9 +469,117 @@ public abstract class ExtensibleOpMode extends OpMode implements FullOpMode, Abs
      * Disables loop capture
      */
     protected final void disableLoopPerformanceCapture() {
+        profiler.setEnabled(false);
         logTimes = false;
     }
 
+    /**
+     * Traces the loop phases, the I<sup>2</sup>C callbacks, the telemetry sends and the camera
+     * frames on every thread, the trace is saved as Chrome {@code trace_event} JSON on stop
+     *
+     * @see EventTracer
+     */
+    protected final void enableEventTracing() {
+        EventTracer.enable();
+    }
+
+    /**
+     * Stops tracing events, nothing will be saved on stop
+     */
+    protected final void disableEventTracing() {
+        EventTracer.disable();
+    }
+
+    /**
+     * Runs the loop at a fixed rate instead of every time the event loop calls it. Each cycle has
+     * until the start of the next period to finish, if a cycle starts after that the given
+     * {@link DeadlinePacer.OverrunPolicy} is used to catch back up.
+     *
+     * @param period the target period of a loop cycle
+     * @param unit   the unit of the period
+     * @param policy what to do when the loop falls behind
+     * @see #fixedRatePacer()
+     */
+    protected final void enableFixedRate(long period, @NotNull TimeUnit unit,
+                                         @NotNull DeadlinePacer.OverrunPolicy policy) {
+        pacer.enable(period, unit, policy);
+    }
+
+    /**
+     * Runs the loop every time the event loop calls it, this is the default
+     */
+    protected final void disableFixedRate() {
+        pacer.disable();
+    }
+
+    /**
+     * Gets the pacer of the fixed rate mode, this has the delta time of the current cycle and
+     * the missed deadline counters
+     *
+     * @return the {@link DeadlinePacer} of this OpMode
+     */
+    @NotNull
+    protected final DeadlinePacer fixedRatePacer() {
+        return pacer;
+    }
+
+    /**
+     * Runs the {@link IndependentRunAssistant}s of each loop cycle in parallel, on one less
+     * thread than there are processors (at least one and at most three)
+     *
+     * @see #enableParallelAssistants(int)
+     */
+    protected final void enableParallelAssistants() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        enableParallelAssistants(Math.max(1, Math.min(3, processors - 1)));
+    }
+
+    /**
+     * Runs the {@link IndependentRunAssistant}s of each loop cycle in parallel, on a fixed number
+     * of worker threads. The other assistants still run on the loop thread, and every assistant
+     * finishes before the user loop starts. Outputs and exceptions are processed on the loop
+     * thread: those of the other assistants as they run, then those of the independent ones in
+     * registration order.
+     *
+     * @param threads the number of worker threads to use
+     */
+    protected final void enableParallelAssistants(int threads) {
+        disableParallelAssistants();
+        parallelRunner = new ParallelAssistantRunner(threads);
+    }
+
+    /**
+     * Runs every assistant on the loop thread, one after another, this is the default
+     */
+    protected final void disableParallelAssistants() {
+        if (parallelRunner != null) {
+            parallelRunner.shutdown();
+            parallelRunner = null;
+        }
+    }
+
+    /**
+     * Gets the running statistics of the whole loop time, these are only recorded while loop
+     * performance capture is enabled
+     *
+     * @return the {@link PerformanceTuner} of this OpMode
+     */
+    @NotNull
+    protected final PerformanceTuner performanceTuner() {
+        return tuner;
+    }
+
+    /**
+     * Gets the per-phase loop latencies, these are only recorded while loop performance capture
+     * is enabled
+     *
+     * @return the {@link LoopProfiler} of this OpMode
+     */
+    @NotNull
+    protected final LoopProfiler loopProfiler() {
+        return profiler;
+    }
+
     /**
      * Handles an user code exception
      *
@@ -381,59 +612,9 @@ public abstract class ExtensibleOpMode extends OpMode implements FullOpMode, Abs
             }
         } else {
             if (this.getClass().isAnnotationPresent(RobotsDontQuit.class)) {
-                final Exception ex = e;
-                Thread codeRestarter = new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        skipNextLoop = Integer.MAX_VALUE;
-                        final Gamepad gamepad1 = ExtensibleOpMode.super.gamepad1;
-                        final Gamepad gamepad2 = ExtensibleOpMode.super.gamepad2;
-                        RobotLog.setGlobalErrorMsg(ex.toString() + "\n Robot Code will restart automatically in 5 seconds");
-                        final OpModeManager mgr = robotContext.opModeManager();
-                        final String currentName = mgr.getActiveOpModeName();
-                        mgr.stopActiveOpMode();
-                        try {
-                            for (int i = 5; i >= 0; i--) {
-                                RobotLog.clearGlobalErrorMsg();
-                                RobotLog.setGlobalErrorMsg(ex.toString() + "\n Robot Code will restart automatically in " + i + " seconds");
-                                Thread.sleep(1000);
-                            }
-                        } catch (InterruptedException e1) {
-                            e1.printStackTrace();
-                        }
-                        RobotLog.clearGlobalErrorMsg();
-                        try {
-                            Thread.sleep(20);
-                        } catch (InterruptedException e1) {
-                            e1.printStackTrace();
-                        }
-                        final RobotContext context = robotContext;
-//                        try {
-//                            Method robotRestart = context.appContext().getClass().getMethod("requestRobotRestart");
-//                            robotRestart.setAccessible(true);
-//                            robotRestart.invoke(context.appContext());
-//                            Thread.sleep(10000);
-//                        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | InterruptedException e1) {
-//                            e1.printStackTrace();
-//                        }
-                        try {
-                            do {
-                                Log.i(TAG, "Attempted to start " + currentName);
-                                RobotLog.setGlobalErrorMsg("Attempting to start " + currentName);
-                                Thread.sleep(20);
-                                RobotLog.clearGlobalErrorMsg();
-                                Thread.sleep(20);
-                                mgr.initActiveOpMode(currentName);
-                                mgr.startActiveOpMode();
-                                mgr.runActiveOpMode(new Gamepad[]{gamepad1, gamepad2});
-                            } while (!mgr.getActiveOpModeName().equals(currentName));
-                        } catch (InterruptedException e1) {
-                            e1.printStackTrace();
-                        }
-                    }
-                });
-                codeRestarter.setName(robotContext.opModeManager().getActiveOpModeName() + " Restarter");
-                codeRestarter.start();
+                long delay = supervisor.failed(System.nanoTime());
+                RobotLog.setGlobalErrorMsg(e.toString() + "\n Robot Code will restart automatically in " +
+                        TimeUnit.NANOSECONDS.toMillis(delay) + "ms");
             } else {
                 robotContext.status().setCurrentStateType(RobotStatus.Type.FAILURE);
                 RobotLog.setGlobalErrorMsg(e.toString());
@@ -442,6 +623,53 @@ public abstract class ExtensibleOpMode extends OpMode implements FullOpMode, Abs
         }
     }
 
+    /**
+     * Restarts the OpMode in place once the {@link RestartSupervisor} says it is time, by running
+     * the user init and start again. The robot context and the hardware are kept as they are.
+     *
+     * @return {@code true} if the OpMode was restarted and the loop can go on
+     */
+    private boolean restart() {
+        if (!supervisor.beginRestart(System.nanoTime())) {
+            return false;
+        }
+
+        Log.i(TAG, "Restarting " + getClass().getSimpleName() + ", restart #" + supervisor.getRestarts());
+        RobotLog.clearGlobalErrorMsg();
+        robotContext.status().setCurrentStateType(RobotStatus.Type.SUCCESS);
+        robotContext.status().setMainState(RobotStatus.MainStates.START);
+
+        LinkedList<Object> list = loopOutput;
+        list.clear();
+        try {
+            init(robotContext, list);
+            start(robotContext, list);
+        } catch (InterruptedException ex) {
+            // The OpMode is being stopped, leave the flag for the caller like the other paths. It
+            // was only half initialized, so it goes back to waiting instead of recovering.
+            Thread.currentThread().interrupt();
+            supervisor.failed(System.nanoTime());
+            return false;
+        } catch (Exception e) {
+            handleException(list, e);
+        }
+        processResults(list, RobotStatus.MainStates.START);
+
+        supervisor.endRestart();
+        return !supervisor.isWaiting();
+    }
+
+    /**
+     * Gets the supervisor that restarts this OpMode when it is annotated with
+     * {@link RobotsDontQuit}, it reports how long it took to recover
+     *
+     * @return the {@link RestartSupervisor} of this OpMode
+     */
+    @NotNull
+    protected final RestartSupervisor restartSupervisor() {
+        return supervisor;
+    }
+
     private String getCallerClassName(Exception e) {
         StackTraceElement[] stElements = e.getStackTrace();
         for (StackTraceElement ste : stElements) {
@@ -610,63 +838,70 @@ public abstract class ExtensibleOpMode extends OpMode implements FullOpMode, Abs
         return robotContext.opModeManager();
     }
 
-    private void runAssistant(RunAssistant assistant) {
-        LinkedList<Object> list = new LinkedList<>();
-        try {
-            assistant.onExecute(robotContext, list);
-        } catch (InterruptedException ex) {
-            handleInterrupt(ex);
+    /**
+     * Runs every given assistant. If parallel assistants are enabled, the
+     * {@link IndependentRunAssistant}s run on the worker threads while the rest run here, and
+     * this waits for all of them before returning. The results of the assistants run here are
+     * processed first, then those of the independent ones.
+     *
+     * @param assistants the assistants to run, in registration order
+     */
+    private void runAssistants(List<RunAssistant> assistants) {
+        ParallelAssistantRunner runner = parallelRunner;
+        if (runner == null) {
+            for (int i = 0; i < assistants.size(); i++) {
+                runAssistant(assistants.get(i));
+            }
             return;
-        } catch (Exception e) {
-            handleException(list, e);
         }
 
-        postProcess(list, robotContext.status().getMainRobotState());
-    }
-
-    private void handleInterrupt(InterruptedException ex) {
-        if (!Thread.currentThread().isInterrupted()) {
-            Thread.currentThread().interrupt();
+        runner.start(robotContext, assistants);
+        try {
+            for (int i = 0; i < assistants.size(); i++) {
+                RunAssistant assistant = assistants.get(i);
+                if (!(assistant instanceof IndependentRunAssistant)) {
+                    runAssistant(assistant);
+                }
+            }
+        } finally {
+            // The workers must be done with the batch before anything can tear it down
+            runner.await();
         }
-        Throwables.propagate(ex);
-    }
-
-    private class VariableTrace {
-        private String name;
-        private Object value;
 
-        public VariableTrace(String name, Object value) {
-            this.name = name;
-            this.value = value;
+        // Results and exceptions are always handled on the loop thread
+        for (int i = 0; i < runner.size(); i++) {
+            processAssistant(runner.getOutput(i), runner.getFailure(i));
         }
     }
 
-    class VariableTracer<T> {
-        private transient T current;
-        private LinkedList<VariableTrace> traces;
-
-        public VariableTracer(T o) {
-            current = o;
-            traces = new LinkedList<>();
+    private void runAssistant(RunAssistant assistant) {
+        LinkedList<Object> list = assistantOutput;
+        list.clear();
+        Exception failure = null;
+        try {
+            assistant.onExecute(robotContext, list);
+        } catch (Exception e) {
+            failure = e;
         }
 
-        public void log() {
-            LinkedList<VariableTrace> fields = new LinkedList<>();
-            for (Field field : current.getClass().getDeclaredFields()) {
-                if (!Modifier.isTransient(field.getModifiers())) {
-                    try {
-                        fields.add(new VariableTrace(field.getName(), field.get(current)));
-                    } catch (IllegalAccessException | ClassCastException e) {
-                        Log.e(TAG, e.getLocalizedMessage(), e);
-                    }
-                }
-            }
+        processAssistant(list, failure);
+    }
 
-            traces.addAll(fields);
+    private void processAssistant(LinkedList<Object> list, Exception failure) {
+        if (failure instanceof InterruptedException) {
+            handleInterrupt((InterruptedException) failure);
+            return;
+        } else if (failure != null) {
+            handleException(list, failure);
         }
 
-        public VariableTrace[] get() {
-            return (VariableTrace[]) traces.toArray();
+        processResults(list, robotContext.status().getMainRobotState());
+    }
+
+    private void handleInterrupt(InterruptedException ex) {
+        if (!Thread.currentThread().isInterrupted()) {
+            Thread.currentThread().interrupt();
         }
+        Throwables.propagate(ex);
     }
 }
@@ -20,219 +20,451 @@ package org.ftccommunity.ftcxtensible.robot;
 import android.util.Log;
 
 import com.google.common.base.Strings;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.EvictingQueue;
 import com.google.common.collect.LinkedHashMultimap;
-import com.google.common.collect.Multiset;
 import com.qualcomm.robotcore.robocol.Telemetry;
 
+import org.ftccommunity.ftcxtensible.core.trace.EventTracer;
+import org.ftccommunity.ftcxtensible.interfaces.TelemetryListener;
 import org.ftccommunity.ftcxtensible.internal.Alpha;
 import org.ftccommunity.ftcxtensible.internal.NotDocumentedWell;
+import org.ftccommunity.ftcxtensible.math.FixedPointFormat;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 @Alpha
 @NotDocumentedWell
 public class ExtensibleTelemetry {
     public static final int DEFAULT_DATA_MAX = 192;
     public static final int MAX_DATA_MAX = 255;
+    /**
+     * How many decimal places a number is sent with, unless the key was registered with another
+     */
+    public static final int DEFAULT_DECIMALS = 3;
+    private static final long SEND_PERIOD = TimeUnit.MILLISECONDS.toNanos(250);
     private static final String EMPTY = "";
     private static final String SPACE = " ";
     private static final String TAG = "XTENSILBLE_TELEMETRY::";
+    private static final String SEND_EVENT = "Telemetry.sendData";
     private final Telemetry parent;
     private final int dataPointsToSend;
 
+    // Written without locks, see TelemetryBuffer
+    private final TelemetryBuffer buffer;
+    private final String[] keys;
+    private final int[] decimals;
+    private final HashMap<String, Integer> keyHandles;
+    private volatile int keyCount;
+
+    // Only touched by the sender
+    private final TelemetryBuffer.Frame pending;
     private final EvictingQueue<String> dataCache;
     private final LinkedHashMultimap<String, String> data;
-    private final Cache<String, String> cache;
-    private final Queue<String> log;
-
-    private Process logcat;
-    private BufferedReader reader;
+    private final String[] sentValues;
+    private final StringBuilder number;
+    private final LogRing log;
+    private final ArrayList<LogRing.Entry> logEntries;
+    private long logCursor;
+    private final CopyOnWriteArrayList<TelemetryListener> listeners;
+    private TelemetryRecorder recorder;
 
-    private long lastModificationTime;
+    private volatile boolean dirty;
 
-    private ScheduledExecutorService executorService;
+    private final Thread sender;
+    private volatile boolean running;
 
     public ExtensibleTelemetry(@NotNull Telemetry telemetry) {
         this(DEFAULT_DATA_MAX, telemetry);
     }
 
     public ExtensibleTelemetry(int dataPointsToSend, @NotNull Telemetry telemetry) {
+        this(dataPointsToSend, telemetry, null);
+    }
+
+    /**
+     * Creates telemetry that also sends the newest entries of a log, as room allows
+     *
+     * @param dataPointsToSend the most data points to send at once
+     * @param telemetry        the telemetry to send to
+     * @param log              the log to send entries of, or {@code null} to not send a log
+     */
+    public ExtensibleTelemetry(int dataPointsToSend, @NotNull Telemetry telemetry, @Nullable LogRing log) {
         checkArgument(dataPointsToSend < MAX_DATA_MAX);
 
         this.parent = telemetry;
 
         this.dataPointsToSend = dataPointsToSend;
-        cache = CacheBuilder.newBuilder().
-                concurrencyLevel(4).
-                expireAfterAccess(250, TimeUnit.MILLISECONDS).
-                maximumSize(dataPointsToSend).build();
-
-        dataCache = EvictingQueue.create((int) (dataPointsToSend * .75));
+        int lines = (int) (dataPointsToSend * .75);
+        buffer = new TelemetryBuffer(lines, dataPointsToSend);
+        pending = buffer.newFrame();
+        keys = new String[dataPointsToSend];
+        decimals = new int[dataPointsToSend];
+        keyHandles = new HashMap<>();
+        sentValues = new String[dataPointsToSend];
+        number = new StringBuilder();
+        dataCache = EvictingQueue.create(lines);
         data = LinkedHashMultimap.create();
-        log = new LinkedList<>();
-
-        try {
-            logcat = Runtime.getRuntime().exec(new String[] {"logcat", "*:I"});
-            reader = new BufferedReader(new InputStreamReader(logcat.getInputStream()));
-        } catch (IOException e) {
-            Log.e(TAG, "Cannot start logcat monitor", e);
-        }
-
-        executorService = Executors.newSingleThreadScheduledExecutor();
-        executorService.scheduleAtFixedRate(new SendDataRunnable(), 250, 250, TimeUnit.MILLISECONDS);
+        this.log = log;
+        logEntries = new ArrayList<>();
+        listeners = new CopyOnWriteArrayList<>();
+        // Only entries logged from now on are sent
+        logCursor = log != null ? log.lastSequence() : 0;
+
+        running = true;
+        sender = new Thread(new SendDataRunnable(), "Xtensible Telemetry Sender");
+        sender.setDaemon(true);
+        sender.start();
     }
 
-    public synchronized void data(String tag, String message) {
+    public void data(String tag, String message) {
         checkArgument(!Strings.isNullOrEmpty(message), "Your message shouldn't be empty.");
         tag = Strings.nullToEmpty(tag);
 
-        synchronized (dataCache) {
-            lastModificationTime = System.nanoTime();
-            dataCache.add((!tag.equals(EMPTY) ? tag.toUpperCase(Locale.US) + SPACE : EMPTY) + message);
-        }
+        buffer.line((!tag.equals(EMPTY) ? tag.toUpperCase(Locale.US) + SPACE : EMPTY) + message);
+        markDirty();
     }
 
-    public synchronized void addPersistentData(String tag, String mess) {
-        synchronized (data) {
-            lastModificationTime = System.nanoTime();
-            data.put(tag, mess);
-        }
+    public void addPersistentData(String tag, String mess) {
+        buffer.persistent(Strings.nullToEmpty(tag), mess);
+        markDirty();
     }
 
-    public synchronized void data(String tag, double message) {
+    public void data(String tag, double message) {
         data(tag, Double.toString(message));
     }
 
-    void updateLog() {
-        //String temp = null;
-           /* StringBuilder buf = new StringBuilder();
-            try {
-                int temp = reader.read();
-                while (temp >= 0) {
-                    buf.append((char) temp);
-                    temp = reader.read();
-                }
-            } catch (IOException e) {
-                Log.e(TAG, "An error occurred while reading the log.", e);
-            }
-            log.add(buf.toString());*/
+    /**
+     * Registers a key to send data under. Registering is done once, ahead of time; after that,
+     * setting the key's data with {@link #data(int, String)} is a plain array write. The key is
+     * sent with its last data every time, but listeners only hear about it when its data changes.
+     *
+     * @param key the key, registering the same key again gives back the same handle
+     * @return the handle of the key
+     * @throws IllegalStateException if every key has been used up
+     */
+    public int register(@NotNull String key) {
+        return register(key, DEFAULT_DECIMALS);
     }
 
-    synchronized void close() throws IOException {
-        executorService.shutdown();
-        reader.close();
-        logcat.destroy();
-        synchronized (parent) {
-            parent.clearData();
-        }
-        synchronized (log) {
-            log.clear();
+    /**
+     * Registers a key to send data under, see {@link #register(String)}, with the number of
+     * decimal places numbers given with {@link #data(int, double)} are sent with
+     *
+     * @param key      the key, registering the same key again gives back the same handle and
+     *                 changes its decimal places
+     * @param decimals how many decimal places to send, between 0 and
+     *                 {@value FixedPointFormat#MAX_DECIMALS}
+     * @return the handle of the key
+     * @throws IllegalStateException if every key has been used up
+     */
+    public synchronized int register(@NotNull String key, int decimals) {
+        checkArgument(!Strings.isNullOrEmpty(key), "The key shouldn't be empty.");
+        checkArgument(decimals >= 0 && decimals <= FixedPointFormat.MAX_DECIMALS,
+                "Between 0 and %s decimals are supported", FixedPointFormat.MAX_DECIMALS);
+        String name = key.toUpperCase(Locale.US);
+        Integer handle = keyHandles.get(name);
+        if (handle != null) {
+            this.decimals[handle] = decimals;
+            return handle;
         }
-        synchronized (dataCache) {
-            dataCache.clear();
+
+        checkState(keyCount < keys.length, "Only %s keys can be registered", keys.length);
+        keys[keyCount] = name;
+        this.decimals[keyCount] = decimals;
+        keyHandles.put(name, keyCount);
+        return keyCount++;
+    }
+
+    /**
+     * Sets the data of a registered key, see {@link #register(String)}
+     *
+     * @param key     the handle of the key
+     * @param message the data to send, listeners only get it if it is different from what was
+     *                last sent for this key
+     */
+    public void data(int key, @NotNull String message) {
+        checkElementIndex(key, keyCount, "key");
+        buffer.set(key, checkNotNull(message));
+        markDirty();
+    }
+
+    /**
+     * Records a number for a registered key. The number is kept as is until the sender runs; if
+     * more than one number is recorded for the key before then, their minimum, maximum and mean
+     * are sent along with the last one.
+     *
+     * @param key   the handle of the key
+     * @param value the number
+     */
+    public void data(int key, double value) {
+        checkElementIndex(key, keyCount, "key");
+        buffer.record(key, value);
+        markDirty();
+    }
+
+    /**
+     * Records a whole number for a registered key, see {@link #data(int, double)}
+     *
+     * @param key   the handle of the key
+     * @param value the number
+     */
+    public void data(int key, long value) {
+        checkElementIndex(key, keyCount, "key");
+        buffer.record(key, value);
+        markDirty();
+    }
+
+    /**
+     * Adds a listener that gets every new or changed value as it is sent, for example to push
+     * telemetry somewhere other than the driver station
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(@NotNull TelemetryListener listener) {
+        listeners.addIfAbsent(checkNotNull(listener));
+    }
+
+    /**
+     * Removes a listener added with {@link #addListener(TelemetryListener)}
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(@NotNull TelemetryListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners(String key, String value) {
+        for (TelemetryListener listener : listeners) {
+            try {
+                listener.onData(key, value);
+            } catch (RuntimeException ex) {
+                Log.w(TAG, "A telemetry listener threw an exception", ex);
+            }
         }
-        synchronized (data) {
-            data.clear();
+    }
+
+    /**
+     * Starts recording every value published by the owner of this telemetry, with the time it
+     * was published, into a compact binary file; see {@link TelemetryRecording} for the format and
+     * how to convert it to CSV. Recording only copies the published values on the loop thread,
+     * they are encoded and written by a background thread. Values written by other threads are
+     * recorded when the sender picks them up.
+     *
+     * @param file where to record to, it is overwritten
+     * @throws IOException if the file can't be created
+     */
+    public synchronized void startRecording(@NotNull File file) throws IOException {
+        stopRecording();
+        recorder = new TelemetryRecorder(file, keys, TelemetryRecorder.DEFAULT_CAPACITY);
+        buffer.setRecorder(recorder);
+    }
+
+    /**
+     * Stops recording, once everything recorded so far is written
+     *
+     * @throws IOException if the recording couldn't be written
+     */
+    public synchronized void stopRecording() throws IOException {
+        if (recorder != null) {
+            buffer.setRecorder(null);
+            TelemetryRecorder old = recorder;
+            recorder = null;
+            old.close();
+            if (old.getDropped() > 0) {
+                Log.w(TAG, "The telemetry recording dropped " + old.getDropped() + " values");
+            }
         }
-        synchronized (cache) {
-            cache.invalidateAll();
+    }
+
+    private void markDirty() {
+        // Only write the volatile when it changes, this is called for every piece of data
+        if (!dirty) {
+            dirty = true;
         }
     }
 
-    void updateCache() {
-        int cacheSize = (int) cache.size();
-        if (lastModificationTime > 0) {
-            forceUpdateCache();
-        } else {
-            cache.cleanUp();
-            if (cacheSize > cache.size()) {
-                forceUpdateCache();
-            }
+    /**
+     * Publishes the data written since the last flush and asks the sender to send it. This never
+     * blocks, the data is sent on the sender thread and flushes that come before it gets to run
+     * are coalesced into one send. If nothing changed, this does nothing.
+     * <p>
+     * The first thread to flush becomes the owner of the telemetry, normally the loop thread.
+     * Writes from the owner go into a private buffer that is swapped to the sender here.</p>
+     */
+    public void flush() {
+        buffer.claim();
+        if (buffer.publish() || dirty) {
+            dirty = true;
+            LockSupport.unpark(sender);
         }
     }
 
-    synchronized void forceUpdateCache() {
-        updateLog();
+    /**
+     * Checks if data has changed since it was last sent
+     *
+     * @return {@code true} if there is data waiting to be sent
+     */
+    public boolean isDirty() {
+        return dirty || hasNewLogEntries();
+    }
 
-        int numberOfElements;
-        synchronized (cache) {
-            cache.invalidateAll();
+    private boolean hasNewLogEntries() {
+        return log != null && log.lastSequence() != logCursor;
+    }
 
-            synchronized (dataCache) {
-                int numberOfElementsAdded = 0;
-                int min = Math.min(dataCache.size(), (int) (dataPointsToSend * .75));
-                int stringLength = String.valueOf(min).length();
-                for (; numberOfElementsAdded < min; numberOfElementsAdded++) {
-                    cache.put(cancelOut(stringLength, String.valueOf(numberOfElementsAdded)), dataCache.poll());
-                }
-                numberOfElements = numberOfElementsAdded;
+    synchronized void close() throws IOException {
+        stopRecording();
+        running = false;
+        LockSupport.unpark(sender);
+        synchronized (parent) {
+            parent.clearData();
+        }
+        logEntries.clear();
+        listeners.clear();
+        Arrays.fill(sentValues, null);
+        dataCache.clear();
+        data.clear();
+        pending.clear();
+    }
+
+    /**
+     * Sends everything published so far to the parent {@link Telemetry}, this is only called by
+     * the sender
+     */
+    synchronized void sendData() {
+        dirty = false;
+        buffer.drainTo(pending);
+
+        String line;
+        boolean notify = !listeners.isEmpty();
+        while ((line = pending.pollLine()) != null) {
+            dataCache.add(line);
+            if (notify) {
+                notifyListeners(null, line);
+            }
+        }
+        for (int i = 0; i < pending.persistentSize(); i++) {
+            data.put(pending.persistentTag(i), pending.persistentMessage(i));
+            if (notify) {
+                notifyListeners(pending.persistentTag(i), pending.persistentMessage(i));
             }
+        }
 
-            synchronized (data) {
-                int numberOfElementsAdded = 0;
-                HashMap<String, String> entries = new HashMap<>();
+        // Only the registered keys that changed go to the listeners
+        for (int i = 0; i < pending.changedSize(); i++) {
+            int key = pending.changedKey(i);
+            String message;
+            if (pending.kind(key) == TelemetryBuffer.TEXT) {
+                message = pending.value(key);
+                if (message.equals(sentValues[key])) {
+                    continue;
+                }
+            } else {
+                formatNumber(key);
+                if (sentValues[key] != null && sentValues[key].contentEquals(number)) {
+                    continue;
+                }
+                message = number.toString();
+            }
 
-                LinkedList<Multiset.Entry<String>> keys = new LinkedList<>(data.keys().entrySet());
-                for (Multiset.Entry<String> key : keys) {
-                    LinkedList<String> dataElements = new LinkedList<>(data.get(key.getElement()));
+            sentValues[key] = message;
+            if (notify) {
+                notifyListeners(keys[key], message);
+            }
+        }
+        pending.clear();
+
+        // The parent is cleared after every packet, so registered keys go first with their last
+        // value every time; there are never more keys than data points
+        int numberOfElements = 0;
+        int registered = keyCount;
+        for (int key = 0; key < registered; key++) {
+            if (sentValues[key] != null) {
+                parent.addData(keys[key], sentValues[key]);
+                numberOfElements++;
+            }
+        }
 
-                    int size = dataElements.size();
+        // Each line is sent once, numbered in order
+        int lines = Math.min(dataCache.size(), dataPointsToSend - numberOfElements);
+        int stringLength = String.valueOf(lines).length();
+        for (int index = 0; index < lines; index++, numberOfElements++) {
+            parent.addData(cancelOut(stringLength, String.valueOf(index)), dataCache.poll());
+        }
 
-                    for (int index = 0; numberOfElementsAdded < size; numberOfElementsAdded++) {
-                        entries.put(cancelOut(1, key.getElement() + Integer.toString(index)), dataElements.get(index));
-                    }
+        // Persistent data is sent every time, as long as there is room
+        for (String tag : data.keySet()) {
+            int index = 0;
+            for (String message : data.get(tag)) {
+                if (numberOfElements >= dataPointsToSend) {
+                    break;
                 }
 
-                try {
-                    LinkedList<Map.Entry<String, String>> entriesToSend = new LinkedList<>(entries.entrySet());
-                    for (; numberOfElementsAdded < Math.min(entriesToSend.size(), dataPointsToSend - numberOfElements);
-                         numberOfElementsAdded++) {
-                        Map.Entry<String, String> entry = entriesToSend.get(numberOfElementsAdded - 1);
-                        cache.put(entry.getKey(), entry.getValue());
-                    }
-                } catch (IndexOutOfBoundsException ex) {
-                    Log.d(TAG, "An index is out of bounds.", ex);
+                parent.addData(cancelOut(1, tag + Integer.toString(index++)), message);
+                numberOfElements++;
+            }
+        }
+
+        // Log entries use whatever room is left, the newest ones win
+        if (log != null) {
+            long last = log.lastSequence();
+            int room = dataPointsToSend - numberOfElements;
+            if (room > 0 && last != logCursor) {
+                log.read(Math.max(logCursor, last - room), logEntries, room);
+                for (int index = 0; index < logEntries.size(); index++) {
+                    parent.addData("xLog" + String.valueOf(index), logEntries.get(index).toString());
                 }
+                logEntries.clear();
             }
+            logCursor = last;
         }
     }
 
-    synchronized void sendData() {
-        updateCache();
-
-        LinkedList<Map.Entry<String, String>> data;
-        synchronized (cache) {
-            data = new LinkedList<>(cache.asMap().entrySet());
-        }
-        for (Map.Entry<String, String> entry : data) {
-            parent.addData(entry.getKey(), entry.getValue());
+    /**
+     * Formats the numbers pending for a key into {@link #number}, as the last value followed by
+     * the minimum, maximum and mean when there was more than one
+     *
+     * @param key the handle of the key
+     */
+    private void formatNumber(int key) {
+        number.setLength(0);
+        int places = decimals[key];
+        boolean isDouble = pending.kind(key) == TelemetryBuffer.DOUBLE;
+        if (isDouble) {
+            FixedPointFormat.append(number, pending.doubleValue(key), places);
+        } else {
+            number.append(pending.longValue(key));
         }
 
-        synchronized (log) {
-            if (log.size() < dataPointsToSend) {
-                int numberOfElementsAdded = 0;
-                int min = Math.min(dataPointsToSend - log.size(), log.size());
-                for (; numberOfElementsAdded < min; numberOfElementsAdded++) {
-                    parent.addData("xLog" + String.valueOf(numberOfElementsAdded), log.poll());
-                }
+        if (pending.samples(key) > 1) {
+            number.append(" (min ");
+            if (isDouble) {
+                FixedPointFormat.append(number, pending.doubleMin(key), places);
+                number.append(", max ");
+                FixedPointFormat.append(number, pending.doubleMax(key), places);
+            } else {
+                number.append(pending.longMin(key));
+                number.append(", max ");
+                number.append(pending.longMax(key));
             }
+            number.append(", mean ");
+            FixedPointFormat.append(number, pending.mean(key), places);
+            number.append(')');
         }
     }
 
@@ -247,6 +479,10 @@ public class ExtensibleTelemetry {
         return  Strings.padStart(checkNotNull(string), length, '0');
     }
 
+    /**
+     * Sends the telemetry data when a flush is requested, or every {@link #SEND_PERIOD}, whichever
+     * comes first; data is only sent if it changed since the last send
+     */
     private class SendDataRunnable implements Runnable {
         /**
          * Starts executing the active part of the class' code. This method is called when a thread is
@@ -254,10 +490,20 @@ public class ExtensibleTelemetry {
          */
         @Override
         public void run() {
-            try {
-                sendData();
-            } catch (Exception ex) {
-                Log.w(TAG, "Telemetry Sender threw an exception while executing.", ex);
+            while (running) {
+                LockSupport.parkNanos(this, SEND_PERIOD);
+                if (!running || !isDirty()) {
+                    continue;
+                }
+
+                EventTracer.begin(SEND_EVENT);
+                try {
+                    sendData();
+                } catch (Exception ex) {
+                    Log.w(TAG, "Telemetry Sender threw an exception while executing.", ex);
+                } finally {
+                    EventTracer.end(SEND_EVENT);
+                }
             }
         }
     }
@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One sample of the raw input of a gamepad, before any {@link
+ * org.ftccommunity.ftcxtensible.interfaces.JoystickScaler} is applied. On disk a frame is always
+ * {@link #SIZE} bytes, big-endian:
+ * <pre>
+ * int    time          milliseconds since the recording started
+ * short  buttons       the ExtensibleGamepad BUTTON_* bits
+ * short  left x, left y, right x, right y     the axes times 32767, clamped to -1..1
+ * byte   left trigger, right trigger          the triggers times 255, clamped to 0..1
+ * </pre>
+ * Frames are mutable and meant to be reused, so reading or writing a recording allocates nothing
+ * per sample.
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+final class GamepadFrame {
+    static final int SIZE = 16;
+    private static final float AXIS_SCALE = Short.MAX_VALUE;
+    private static final float TRIGGER_SCALE = 255;
+
+    int time;
+    int buttons;
+    float leftX;
+    float leftY;
+    float rightX;
+    float rightY;
+    float leftTrigger;
+    float rightTrigger;
+
+    private static short quantizeAxis(float value) {
+        if (value != value) {
+            return 0;
+        }
+        return (short) Math.round(Math.max(-1f, Math.min(1f, value)) * AXIS_SCALE);
+    }
+
+    private static byte quantizeTrigger(float value) {
+        if (value != value) {
+            return 0;
+        }
+        return (byte) Math.round(Math.max(0f, Math.min(1f, value)) * TRIGGER_SCALE);
+    }
+
+    void set(@NotNull GamepadFrame other) {
+        time = other.time;
+        buttons = other.buttons;
+        leftX = other.leftX;
+        leftY = other.leftY;
+        rightX = other.rightX;
+        rightY = other.rightY;
+        leftTrigger = other.leftTrigger;
+        rightTrigger = other.rightTrigger;
+    }
+
+    /**
+     * Sets this to a point between two samples; the buttons are taken from {@code from}, as
+     * there is nothing in between pressed and not pressed
+     *
+     * @param from     the earlier sample
+     * @param to       the later sample
+     * @param fraction how far to go from {@code from} to {@code to}, between 0 and 1
+     */
+    void interpolate(@NotNull GamepadFrame from, @NotNull GamepadFrame to, float fraction) {
+        time = from.time + Math.round((to.time - from.time) * fraction);
+        buttons = from.buttons;
+        leftX = from.leftX + (to.leftX - from.leftX) * fraction;
+        leftY = from.leftY + (to.leftY - from.leftY) * fraction;
+        rightX = from.rightX + (to.rightX - from.rightX) * fraction;
+        rightY = from.rightY + (to.rightY - from.rightY) * fraction;
+        leftTrigger = from.leftTrigger + (to.leftTrigger - from.leftTrigger) * fraction;
+        rightTrigger = from.rightTrigger + (to.rightTrigger - from.rightTrigger) * fraction;
+    }
+
+    void write(@NotNull ByteBuffer buffer) {
+        buffer.putInt(time);
+        buffer.putShort((short) buttons);
+        buffer.putShort(quantizeAxis(leftX));
+        buffer.putShort(quantizeAxis(leftY));
+        buffer.putShort(quantizeAxis(rightX));
+        buffer.putShort(quantizeAxis(rightY));
+        buffer.put(quantizeTrigger(leftTrigger));
+        buffer.put(quantizeTrigger(rightTrigger));
+    }
+
+    void read(@NotNull ByteBuffer buffer) {
+        time = buffer.getInt();
+        buttons = buffer.getShort() & 0xffff;
+        leftX = buffer.getShort() / AXIS_SCALE;
+        leftY = buffer.getShort() / AXIS_SCALE;
+        rightX = buffer.getShort() / AXIS_SCALE;
+        rightY = buffer.getShort() / AXIS_SCALE;
+        leftTrigger = (buffer.get() & 0xff) / TRIGGER_SCALE;
+        rightTrigger = (buffer.get() & 0xff) / TRIGGER_SCALE;
+    }
+}
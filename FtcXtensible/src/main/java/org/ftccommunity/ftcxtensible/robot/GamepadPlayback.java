@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Plays back a gamepad recording by time instead of by loop. Every call to {@link #seek} finds
+ * the sample that was live at the given time since the start of the recording, so playback
+ * keeps to the recorded timing no matter how fast or slow the loop runs. The recording is
+ * streamed forward with a cursor of two frames, the one being played and the one after it;
+ * seeking backwards is not supported.
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+final class GamepadPlayback implements Closeable {
+    private final GamepadRecordReader reader;
+    private final GamepadFrame current = new GamepadFrame();
+    private final GamepadFrame next = new GamepadFrame();
+    private boolean hasCurrent;
+    private boolean hasNext;
+    private boolean finished;
+    private long lastElapsed;
+
+    GamepadPlayback(@NotNull GamepadRecordReader reader) throws IOException {
+        this.reader = checkNotNull(reader);
+        hasCurrent = reader.next(current);
+        hasNext = hasCurrent && reader.next(next);
+    }
+
+    /**
+     * Finds the sample for a point in the recording. Once the last sample has been returned, the
+     * next seek past it ends the playback.
+     *
+     * @param elapsed     the time since the start of the recording, in milliseconds; this cannot
+     *                    go backwards
+     * @param into        the frame to copy the sample into
+     * @param interpolate if the axes and triggers should be interpolated between the recorded
+     *                    samples, rather than holding each sample until the next one
+     * @return {@code true} if a sample was found, or {@code false} if the recording is over
+     * @throws IOException if the recording could not be read
+     */
+    boolean seek(long elapsed, @NotNull GamepadFrame into, boolean interpolate) throws IOException {
+        checkArgument(elapsed >= lastElapsed, "Playback cannot go backwards, from %s to %s", lastElapsed, elapsed);
+        lastElapsed = elapsed;
+        if (!hasCurrent || finished) {
+            return false;
+        }
+
+        while (hasNext && next.time <= elapsed) {
+            current.set(next);
+            hasNext = reader.next(next);
+        }
+
+        if (!hasNext) {
+            finished = elapsed >= current.time;
+            into.set(current);
+        } else if (interpolate && elapsed > current.time) {
+            into.interpolate(current, next, (float) (elapsed - current.time) / (next.time - current.time));
+        } else {
+            into.set(current);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import android.util.Log;
+
+import com.google.common.base.Charsets;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A catalog of the gamepad recordings in a directory, so finding a record does not mean reading
+ * every recording. The index is a small file next to the recordings:
+ * <pre>
+ * int    magic         {@code XGI1}
+ * short  version       {@link #VERSION}
+ * int    count         the number of entries
+ * entries, each:
+ *   int  id, int samples, int duration in milliseconds, int offset of the first frame
+ *   short name length, followed by that many bytes of UTF-8
+ * </pre>
+ * Lookups memory map the index and compare the encoded names in place. Updates write a new
+ * index next to the old one and rename it over the top, so a reader never sees half an index.
+ * If the index is missing or unreadable, it is rebuilt from the headers of the recordings.
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+final class GamepadRecordIndex {
+    static final String FILE_NAME = "records.idx";
+    static final int MAGIC = 0x58474931;
+    static final short VERSION = 1;
+    private static final int HEADER_SIZE = 10;
+    private static final String TAG = "GAMEPAD_RECORDS";
+
+    private final File directory;
+    private final File file;
+    private ByteBuffer mapped;
+    private long mappedModified;
+    private long mappedLength;
+
+    GamepadRecordIndex(@NotNull File directory) {
+        this.directory = checkNotNull(directory);
+        this.file = new File(directory, FILE_NAME);
+    }
+
+    /**
+     * Finds the entry of a record
+     *
+     * @param name the name of the record
+     * @return the entry, or {@code null} if there is no record with that name
+     * @throws IOException if the index could not be read or rebuilt
+     */
+    @Nullable
+    synchronized Entry find(@NotNull String name) throws IOException {
+        byte[] encodedName = checkNotNull(name).getBytes(Charsets.UTF_8);
+        ByteBuffer index = map();
+        int count = index.getInt(HEADER_SIZE - 4);
+        int position = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            int nameLength = index.getShort(position + 16) & 0xffff;
+            if (nameLength == encodedName.length && matches(index, position + 18, encodedName)) {
+                return new Entry(name, index.getInt(position), index.getInt(position + 4),
+                        index.getInt(position + 8), index.getInt(position + 12));
+            }
+            position += 18 + nameLength;
+        }
+        return null;
+    }
+
+    /**
+     * Gets every entry in the index
+     *
+     * @return the entries, in the order they were added
+     * @throws IOException if the index could not be read or rebuilt
+     */
+    @NotNull
+    synchronized List<Entry> entries() throws IOException {
+        return decode(map());
+    }
+
+    /**
+     * Finds the lowest id that no record uses
+     *
+     * @return the id for a new record
+     * @throws IOException if the index could not be read or rebuilt
+     */
+    synchronized int nextId() throws IOException {
+        ByteBuffer index = map();
+        int count = index.getInt(HEADER_SIZE - 4);
+        Set<Integer> ids = new HashSet<>();
+        int position = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            ids.add(index.getInt(position));
+            position += 18 + (index.getShort(position + 16) & 0xffff);
+        }
+
+        for (int id = 0; id < Integer.MAX_VALUE; id++) {
+            if (!ids.contains(id)) {
+                return id;
+            }
+        }
+        throw new IllegalStateException("The list of gamepad records doesn't have an available slot left between 0-" + Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds an entry to the index, replacing any entry with the same name
+     *
+     * @param entry the entry of the record that was saved
+     * @throws IOException if the index could not be updated
+     */
+    synchronized void put(@NotNull Entry entry) throws IOException {
+        LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+        for (Entry existing : decode(map())) {
+            entries.put(existing.getName(), existing);
+        }
+        entries.put(checkNotNull(entry).getName(), entry);
+        write(new ArrayList<>(entries.values()));
+    }
+
+    /**
+     * Rebuilds the index from the headers of the recordings in the directory
+     *
+     * @throws IOException if the index could not be written
+     */
+    synchronized void rebuild() throws IOException {
+        File[] records = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File pathname) {
+                return pathname.getName().endsWith(GamepadRecordWriter.EXTENSION);
+            }
+        });
+
+        LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+        if (records != null) {
+            Arrays.sort(records);
+            for (File record : records) {
+                try {
+                    Entry entry = scan(record);
+                    entries.put(entry.getName(), entry);
+                } catch (IOException ex) {
+                    Log.e(TAG, "The file \"" + record.getPath() + "\" cannot be read as a gamepad record", ex);
+                }
+            }
+        }
+        write(new ArrayList<>(entries.values()));
+    }
+
+    private static Entry scan(File record) throws IOException {
+        String name;
+        int id;
+        int offset;
+        GamepadRecordReader reader = new GamepadRecordReader(record);
+        try {
+            name = reader.getName();
+            id = reader.getId();
+            offset = reader.getFrameOffset();
+        } finally {
+            reader.close();
+        }
+
+        RandomAccessFile file = new RandomAccessFile(record, "r");
+        try {
+            int samples = (int) ((file.length() - offset) / GamepadFrame.SIZE);
+            int duration = 0;
+            if (samples > 0) {
+                file.seek(offset + (long) (samples - 1) * GamepadFrame.SIZE);
+                duration = file.readInt();
+            }
+            return new Entry(name, id, samples, duration, offset);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static boolean matches(ByteBuffer index, int position, byte[] encodedName) {
+        for (int i = 0; i < encodedName.length; i++) {
+            if (index.get(position + i) != encodedName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Entry> decode(ByteBuffer mapped) {
+        ByteBuffer index = mapped.duplicate();
+        index.position(HEADER_SIZE - 4);
+        int count = index.getInt();
+        if (count < 0 || count > index.remaining() / 18) {
+            throw new BufferUnderflowException();
+        }
+        ArrayList<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = index.getInt();
+            int samples = index.getInt();
+            int duration = index.getInt();
+            int offset = index.getInt();
+            byte[] encodedName = new byte[index.getShort() & 0xffff];
+            index.get(encodedName);
+            entries.add(new Entry(new String(encodedName, Charsets.UTF_8), id, samples, duration, offset));
+        }
+        return entries;
+    }
+
+    private ByteBuffer map() throws IOException {
+        if (mapped != null && file.lastModified() == mappedModified && file.length() == mappedLength) {
+            return mapped;
+        }
+
+        mapped = null;
+        if (file.isFile()) {
+            try {
+                ByteBuffer index = open();
+                decode(index);
+                mapped = index;
+            } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException ex) {
+                Log.w(TAG, "The gamepad record index is unreadable, rebuilding it", ex);
+            }
+        }
+
+        if (mapped == null) {
+            rebuild();
+            mapped = open();
+        }
+        return mapped;
+    }
+
+    private ByteBuffer open() throws IOException {
+        RandomAccessFile index = new RandomAccessFile(file, "r");
+        try {
+            long modified = file.lastModified();
+            long length = index.length();
+            MappedByteBuffer buffer = index.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (length < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+                throw new IOException(file + " is not a gamepad record index");
+            }
+            mappedModified = modified;
+            mappedLength = length;
+            return buffer;
+        } finally {
+            index.close();
+        }
+    }
+
+    private void write(List<Entry> entries) throws IOException {
+        int size = HEADER_SIZE;
+        byte[][] names = new byte[entries.size()][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = entries.get(i).getName().getBytes(Charsets.UTF_8);
+            size += 18 + names[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putInt(entries.size());
+        for (int i = 0; i < names.length; i++) {
+            Entry entry = entries.get(i);
+            buffer.putInt(entry.getId());
+            buffer.putInt(entry.getSamples());
+            buffer.putInt(entry.getDuration());
+            buffer.putInt(entry.getOffset());
+            buffer.putShort((short) names[i].length);
+            buffer.put(names[i]);
+        }
+        buffer.flip();
+
+        File temp = new File(directory, FILE_NAME + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            FileChannel channel = stream.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file + " with " + temp);
+        }
+        mapped = null;
+    }
+
+    /**
+     * What the index knows about a single record
+     */
+    static final class Entry {
+        private final String name;
+        private final int id;
+        private final int samples;
+        private final int duration;
+        private final int offset;
+
+        Entry(@NotNull String name, int id, int samples, int duration, int offset) {
+            this.name = checkNotNull(name);
+            this.id = id;
+            this.samples = samples;
+            this.duration = duration;
+            this.offset = offset;
+        }
+
+        @NotNull
+        String getName() {
+            return name;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        int getSamples() {
+            return samples;
+        }
+
+        /**
+         * Gets the time of the last sample
+         *
+         * @return the length of the recording in milliseconds
+         */
+        int getDuration() {
+            return duration;
+        }
+
+        /**
+         * Gets the offset into the recording of the first frame
+         *
+         * @return the size of the header of the recording in bytes
+         */
+        int getOffset() {
+            return offset;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + id + ")";
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import com.google.common.base.Charsets;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads a gamepad recording written by {@link GamepadRecordWriter} one frame at a time, so only a
+ * small buffer of the file is ever in memory. Opening a reader only reads the header, which
+ * makes it cheap to find out the name and id of a recording.
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+final class GamepadRecordReader implements Closeable {
+    private static final int BUFFER_SIZE = 4096;
+    private static final int FIXED_HEADER_SIZE = 22;
+
+    private final FileInputStream stream;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final String name;
+    private final int id;
+    private final long created;
+    private final int frameOffset;
+    private int samples;
+
+    /**
+     * Opens a recording and reads its header
+     *
+     * @param file the recording
+     * @throws IOException if the file cannot be read, or is not a recording this can read
+     */
+    GamepadRecordReader(@NotNull File file) throws IOException {
+        stream = new FileInputStream(checkNotNull(file));
+        channel = stream.getChannel();
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.flip();
+        try {
+            if (!fill(FIXED_HEADER_SIZE) || buffer.getInt() != GamepadRecordWriter.MAGIC) {
+                throw new IOException(file + " is not a gamepad recording");
+            }
+            short version = buffer.getShort();
+            if (version != GamepadRecordWriter.VERSION) {
+                throw new IOException(file + " is version " + version + " of the gamepad recording format, which is unsupported");
+            }
+            short frameSize = buffer.getShort();
+            if (frameSize != GamepadFrame.SIZE) {
+                throw new IOException(file + " has " + frameSize + " byte frames, expected " + GamepadFrame.SIZE);
+            }
+            id = buffer.getInt();
+            created = buffer.getLong();
+            int nameLength = buffer.getShort() & 0xffff;
+            if (!fill(nameLength)) {
+                throw new IOException(file + " ends in the middle of its header");
+            }
+            byte[] encodedName = new byte[nameLength];
+            buffer.get(encodedName);
+            name = new String(encodedName, Charsets.UTF_8);
+            frameOffset = FIXED_HEADER_SIZE + nameLength;
+        } catch (IOException ex) {
+            stream.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads the next sample of the recording
+     *
+     * @param into the frame to read the sample into
+     * @return {@code true} if a sample was read, or {@code false} at the end of the recording
+     * @throws IOException if the file could not be read
+     */
+    boolean next(@NotNull GamepadFrame into) throws IOException {
+        if (!fill(GamepadFrame.SIZE)) {
+            return false;
+        }
+
+        into.read(buffer);
+        samples++;
+        return true;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    long getCreated() {
+        return created;
+    }
+
+    /**
+     * Gets the offset into the file of the first frame
+     *
+     * @return the size of the header in bytes
+     */
+    int getFrameOffset() {
+        return frameOffset;
+    }
+
+    /**
+     * Gets the number of samples read so far
+     *
+     * @return the number of samples
+     */
+    int getSamples() {
+        return samples;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    private boolean fill(int needed) throws IOException {
+        while (buffer.remaining() < needed) {
+            buffer.compact();
+            int read = channel.read(buffer);
+            buffer.flip();
+            if (read < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import com.google.common.base.Charsets;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Writes a gamepad recording as it is made. A recording is a header followed by fixed-width
+ * {@link GamepadFrame frames}, one per sample, until the end of the file:
+ * <pre>
+ * int    magic         {@code XGR1}
+ * short  version       {@link #VERSION}
+ * short  frame size    {@link GamepadFrame#SIZE}
+ * int    id            the id of the record
+ * long   created       the wall clock time the recording started, in milliseconds since the epoch
+ * short  name length, followed by that many bytes of UTF-8
+ * </pre>
+ * There is no sample count in the header; a recording that was cut off just loses its last,
+ * partial frame. Frames are collected in a small buffer and written out whenever it fills up,
+ * so a long recording never has to be held in memory or saved all at once.
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+final class GamepadRecordWriter implements Closeable {
+    static final int MAGIC = 0x58475231;
+    static final short VERSION = 1;
+    static final int MAX_NAME_LENGTH = 255;
+    static final String EXTENSION = ".gsr";
+    private static final int BUFFER_SIZE = 4096;
+
+    private final FileOutputStream stream;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final String name;
+    private final int id;
+    private final int frameOffset;
+    private int samples;
+    private int duration;
+    private boolean closed;
+
+    /**
+     * Creates or replaces a recording and writes its header
+     *
+     * @param file    where to write the recording to
+     * @param name    the name of the record
+     * @param id      the id of the record
+     * @param created when the recording started, in milliseconds since the epoch
+     * @throws IOException if the file cannot be written
+     */
+    GamepadRecordWriter(@NotNull File file, @NotNull String name, int id, long created) throws IOException {
+        byte[] encodedName = checkNotNull(name).getBytes(Charsets.UTF_8);
+        checkArgument(encodedName.length <= MAX_NAME_LENGTH, "The record name is too long: %s", name);
+        this.name = name;
+        this.id = id;
+
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) GamepadFrame.SIZE);
+        buffer.putInt(id);
+        buffer.putLong(created);
+        buffer.putShort((short) encodedName.length);
+        buffer.put(encodedName);
+        frameOffset = buffer.position();
+
+        stream = new FileOutputStream(checkNotNull(file));
+        channel = stream.getChannel();
+        drain();
+    }
+
+    /**
+     * Appends a sample to the recording; this only touches the disk once every few hundred samples
+     *
+     * @param frame the sample
+     * @throws IOException if the buffered samples could not be written
+     */
+    void write(@NotNull GamepadFrame frame) throws IOException {
+        checkState(!closed, "The recording has been closed");
+        if (buffer.remaining() < GamepadFrame.SIZE) {
+            drain();
+        }
+        frame.write(buffer);
+        samples++;
+        duration = frame.time;
+    }
+
+    /**
+     * Writes out any buffered samples
+     *
+     * @throws IOException if the samples could not be written
+     */
+    void flush() throws IOException {
+        checkState(!closed, "The recording has been closed");
+        drain();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the offset into the file of the first frame
+     *
+     * @return the size of the header in bytes
+     */
+    int getFrameOffset() {
+        return frameOffset;
+    }
+
+    /**
+     * Gets the number of samples written so far
+     *
+     * @return the number of samples
+     */
+    int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Gets the time of the last sample written
+     *
+     * @return the length of the recording so far in milliseconds
+     */
+    int getDuration() {
+        return duration;
+    }
+
+    /**
+     * Writes out any buffered samples and closes the file; only the first call has any effect
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        try {
+            drain();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
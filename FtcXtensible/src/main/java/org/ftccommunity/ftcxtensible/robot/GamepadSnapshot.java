@@ -0,0 +1,243 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The state of an {@link ExtensibleGamepad} after one update. Every update fills in a snapshot
+ * and then publishes it with a single volatile write, so a snapshot is always complete when it
+ * is handed out.
+ * <p>
+ * Snapshots are preallocated and recycled by the gamepad. A snapshot from {@link
+ * ExtensibleGamepad#snapshot()} is only left alone for the next {@link #REUSE_DISTANCE} - 1
+ * updates, which suits the thread that updates the gamepad, normally the loop thread. Other
+ * threads, and code that keeps a snapshot for longer, should use {@link
+ * ExtensibleGamepad#acquireSnapshot()}: an acquired snapshot, along with its joysticks, D-pad
+ * and events, does not change until it is {@linkplain #release() released}. The gamepad
+ * allocates a new snapshot in place of one that is still held when its turn comes around.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+public final class GamepadSnapshot {
+    /**
+     * The number of updates before a snapshot is reused
+     */
+    public static final int REUSE_DISTANCE = 8;
+
+    final ExtensibleGamepad.Joystick leftJoystick = new ExtensibleGamepad.Joystick(0, 0, false);
+    final ExtensibleGamepad.Joystick rightJoystick = new ExtensibleGamepad.Joystick(0, 0, false);
+    final ExtensibleGamepad.Dpad dpad = new ExtensibleGamepad.Dpad(false, false, false, false);
+    final long[] changedAt = new long[ExtensibleGamepad.BUTTON_COUNT];
+    private final ExtensibleGamepad.ButtonEvent[] eventPool = new ExtensibleGamepad.ButtonEvent[ExtensibleGamepad.BUTTON_COUNT];
+    private final ArrayList<ExtensibleGamepad.ButtonEvent> events = new ArrayList<>(ExtensibleGamepad.BUTTON_COUNT);
+    private final List<ExtensibleGamepad.ButtonEvent> eventsView = Collections.unmodifiableList(events);
+    // How many readers hold this snapshot, the gamepad doesn't refill it while any do
+    final AtomicInteger holders = new AtomicInteger();
+    volatile long sequence;
+    int buttons;
+    int pressedButtons;
+    int releasedButtons;
+    float leftTrigger;
+    float rightTrigger;
+    int userDefinedLeft;
+    int userDefinedRight;
+    long timestamp;
+    long updateTime;
+
+    GamepadSnapshot() {
+        for (int i = 0; i < eventPool.length; i++) {
+            eventPool[i] = new ExtensibleGamepad.ButtonEvent(1 << i);
+        }
+    }
+
+    void clearEvents() {
+        events.clear();
+    }
+
+    void addEvent(int bit, boolean pressed, long holdTime) {
+        ExtensibleGamepad.ButtonEvent event = eventPool[bit];
+        event.pressed = pressed;
+        event.holdTime = holdTime;
+        events.add(event);
+    }
+
+    /**
+     * Lets the gamepad reuse this snapshot, this is called once for every time it was acquired
+     * with {@link ExtensibleGamepad#acquireSnapshot()}
+     *
+     * @throws IllegalStateException if the snapshot isn't held
+     */
+    public void release() {
+        if (holders.decrementAndGet() < 0) {
+            holders.incrementAndGet();
+            throw new IllegalStateException("The snapshot is not held");
+        }
+    }
+
+    /**
+     * Gets the number of the update this snapshot was made by; this changes when the snapshot is
+     * reused
+     *
+     * @return the sequence number of the snapshot, counting up from 1
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets every button that is pressed
+     *
+     * @return the {@code BUTTON_*} bits of {@link ExtensibleGamepad} of the pressed buttons
+     */
+    public int getButtons() {
+        return buttons;
+    }
+
+    /**
+     * Gets the buttons that went down in this update
+     *
+     * @return the {@code BUTTON_*} bits of the buttons that were just pressed
+     */
+    public int getPressedButtons() {
+        return pressedButtons;
+    }
+
+    /**
+     * Gets the buttons that came up in this update
+     *
+     * @return the {@code BUTTON_*} bits of the buttons that were just released
+     */
+    public int getReleasedButtons() {
+        return releasedButtons;
+    }
+
+    /**
+     * Checks if any of the given buttons is pressed
+     *
+     * @param buttons one or more {@code BUTTON_*} bits of {@link ExtensibleGamepad}
+     * @return {@code true} if any of them are pressed, otherwise {@code false}
+     */
+    public boolean isPressed(int buttons) {
+        return (this.buttons & buttons) != 0;
+    }
+
+    /**
+     * Checks if any of the given buttons went down in this update
+     *
+     * @param buttons one or more {@code BUTTON_*} bits of {@link ExtensibleGamepad}
+     * @return {@code true} if any of them were just pressed, otherwise {@code false}
+     */
+    public boolean wasPressed(int buttons) {
+        return (pressedButtons & buttons) != 0;
+    }
+
+    /**
+     * Checks if any of the given buttons came up in this update
+     *
+     * @param buttons one or more {@code BUTTON_*} bits of {@link ExtensibleGamepad}
+     * @return {@code true} if any of them were just released, otherwise {@code false}
+     */
+    public boolean wasReleased(int buttons) {
+        return (releasedButtons & buttons) != 0;
+    }
+
+    /**
+     * Gets how long a button has been held down, as of this update
+     *
+     * @param button a single {@code BUTTON_*} bit of {@link ExtensibleGamepad}
+     * @param unit   the unit to return the time in
+     * @return how long the button has been held, or 0 if it is not pressed
+     */
+    public long getHoldTime(int button, @NotNull TimeUnit unit) {
+        checkArgument(Integer.bitCount(button) == 1 && button < 1 << ExtensibleGamepad.BUTTON_COUNT,
+                "Not a single button: %s", button);
+        if ((buttons & button) == 0) {
+            return 0;
+        }
+        return unit.convert(updateTime - changedAt[Integer.numberOfTrailingZeros(button)], TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the buttons that were pressed or released in this update, in the order of their bits.
+     * The list and its events belong to this snapshot, and are recycled along with it.
+     *
+     * @return the button events of this update
+     */
+    @NotNull
+    public List<ExtensibleGamepad.ButtonEvent> getEvents() {
+        return eventsView;
+    }
+
+    @NotNull
+    public ExtensibleGamepad.Joystick leftJoystick() {
+        return leftJoystick;
+    }
+
+    @NotNull
+    public ExtensibleGamepad.Joystick rightJoystick() {
+        return rightJoystick;
+    }
+
+    @NotNull
+    public ExtensibleGamepad.Dpad getDpad() {
+        return dpad;
+    }
+
+    public float getLeftTrigger() {
+        return leftTrigger;
+    }
+
+    public float getRightTrigger() {
+        return rightTrigger;
+    }
+
+    public int getUserDefinedLeft() {
+        return userDefinedLeft;
+    }
+
+    public int getUserDefinedRight() {
+        return userDefinedRight;
+    }
+
+    /**
+     * The time the gamepad was updated (in milliseconds) from the FTC SDK
+     *
+     * @return the time in milliseconds of the update
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    boolean sameState(@NotNull GamepadSnapshot other) {
+        return buttons == other.buttons &&
+                leftJoystick.equals(other.leftJoystick) &&
+                rightJoystick.equals(other.rightJoystick) &&
+                leftTrigger == other.leftTrigger &&
+                rightTrigger == other.rightTrigger;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.logging.Level;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A fixed size, in-process, log. Once it is full, the oldest entries are overwritten. Each entry
+ * gets a sequence number, starting at 1, so that a reader can ask for only the entries it hasn't
+ * seen yet.
+ * <p>
+ * The ring is fed by {@link RobotStatus#log(Level, String, String)}, and so by
+ * {@link RobotLogger}; it is read by the telemetry and the web server instead of a {@code logcat}
+ * process.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+public final class LogRing {
+    /**
+     * How many entries are kept, unless stated otherwise
+     */
+    public static final int DEFAULT_CAPACITY = 512;
+
+    private final Entry[] entries;
+    private final int mask;
+    private volatile long lastSequence;
+    private long clearedSequence;
+
+    /**
+     * Creates a ring that keeps the last {@link #DEFAULT_CAPACITY} entries
+     */
+    public LogRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a ring
+     *
+     * @param capacity how many entries to keep, this is rounded up to a power of two
+     */
+    public LogRing(int capacity) {
+        checkArgument(capacity > 0 && capacity <= 1 << 20, "The capacity must be between 1 and 2^20");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        entries = new Entry[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds an entry to the ring, overwriting the oldest one if the ring is full
+     *
+     * @param level   the level of the entry
+     * @param tag     the tag of the entry
+     * @param message the message
+     * @return the sequence number of the new entry
+     */
+    public synchronized long add(@NotNull Level level, @NotNull String tag, @NotNull String message) {
+        long sequence = lastSequence + 1;
+        entries[(int) (sequence & mask)] = new Entry(sequence, System.currentTimeMillis(),
+                checkNotNull(level), checkNotNull(tag), checkNotNull(message));
+        lastSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * Reads the entries that came after the given sequence number, oldest first. If some of those
+     * entries were already overwritten, reading starts at the oldest entry still in the ring.
+     *
+     * @param after the sequence number of the last entry the reader has seen, or {@code 0} for all
+     * @param into  where to add the entries
+     * @param max   the most entries to read
+     * @return the number of entries read
+     */
+    public synchronized int read(long after, @NotNull List<? super Entry> into, int max) {
+        long first = Math.max(Math.max(after, 0) + 1, firstSequence());
+        long end = Math.min(lastSequence, first + max - 1);
+        for (long sequence = first; sequence <= end; sequence++) {
+            into.add(entries[(int) (sequence & mask)]);
+        }
+        return (int) Math.max(0, end - first + 1);
+    }
+
+    /**
+     * Gets the sequence number of the oldest entry still in the ring
+     *
+     * @return the oldest sequence number, this is greater than {@link #lastSequence()} if the ring
+     * is empty
+     */
+    public synchronized long firstSequence() {
+        return Math.max(clearedSequence, lastSequence - entries.length) + 1;
+    }
+
+    /**
+     * Gets the sequence number of the newest entry, this never blocks
+     *
+     * @return the newest sequence number, or {@code 0} if nothing was ever added
+     */
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Gets how many entries this ring can hold
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * Removes every entry, sequence numbers keep counting up from where they were
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+        clearedSequence = lastSequence;
+    }
+
+    /**
+     * An entry in the log, entries never change once they are added
+     */
+    public static final class Entry {
+        private final long sequence;
+        private final long time;
+        private final Level level;
+        private final String tag;
+        private final String message;
+        // Cached by the status, so the entry is rendered only once
+        String rendered;
+
+        Entry(long sequence, long time, Level level, String tag, String message) {
+            this.sequence = sequence;
+            this.time = time;
+            this.level = level;
+            this.tag = tag;
+            this.message = message;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Gets when this entry was added
+         *
+         * @return the time, in milliseconds since the epoch
+         */
+        public long getTime() {
+            return time;
+        }
+
+        @NotNull
+        public Level getLevel() {
+            return level;
+        }
+
+        @NotNull
+        public String getTag() {
+            return tag;
+        }
+
+        @NotNull
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return level.getName() + ' ' + tag + ": " + message;
+        }
+    }
+}
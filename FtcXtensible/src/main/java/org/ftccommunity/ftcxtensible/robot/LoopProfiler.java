@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.ftccommunity.ftcxtensible.core.trace.EventTracer;
+import org.ftccommunity.ftcxtensible.math.LatencyHistogram;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Records how long each phase of an {@link ExtensibleOpMode} loop cycle takes, into one
+ * {@link LatencyHistogram} per phase. The memory used is fixed, so this can be left running for a
+ * whole match and still report the tail latency of every phase.
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+public final class LoopProfiler {
+    private final LatencyHistogram[] histograms;
+    private boolean enabled;
+
+    LoopProfiler() {
+        histograms = new LatencyHistogram[Phase.values().length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given start time against a phase, if this profiler is
+     * enabled; the phase is also traced if the {@link EventTracer} is enabled
+     *
+     * @param phase     the phase that just finished
+     * @param startTime when the phase started, from {@link System#nanoTime()}
+     * @return the current time, to use as the start time of the next phase
+     */
+    long record(Phase phase, long startTime) {
+        long now = System.nanoTime();
+        EventTracer.complete(phase.name(), startTime, now);
+        if (enabled) {
+            histograms[phase.ordinal()].record(now - startTime);
+        }
+
+        return now;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Checks if this profiler is recording
+     *
+     * @return {@code true} if loop phases are being recorded, otherwise {@code false}
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the histogram of a phase; the histogram keeps changing as long as this profiler is
+     * enabled
+     *
+     * @param phase the phase to get
+     * @return the histogram of the given phase, in nanoseconds
+     */
+    @NotNull
+    public LatencyHistogram get(@NotNull Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * Clears every phase histogram
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Summarizes every phase, in the order the phases run
+     *
+     * @return a map of each phase's name to its summary
+     */
+    @NotNull
+    public Map<String, Summary> summarize() {
+        LinkedHashMap<String, Summary> summaries = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            summaries.put(phase.name(), new Summary(get(phase)));
+        }
+
+        return summaries;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Summary> entry : summarize().entrySet()) {
+            builder.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * The phases of a loop cycle
+     */
+    public enum Phase {
+        /**
+         * Updating both gamepads
+         */
+        GAMEPAD,
+        /**
+         * Running the {@link org.ftccommunity.ftcxtensible.interfaces.RunAssistant}s before the
+         * user loop
+         */
+        PRE_LOOP,
+        /**
+         * Running the user loop, or its alternate loop, and processing what it returned
+         */
+        USER_LOOP,
+        /**
+         * Running the {@link org.ftccommunity.ftcxtensible.interfaces.RunAssistant}s after the
+         * user loop
+         */
+        POST_LOOP,
+        /**
+         * Handing the telemetry data of the cycle off to the sender
+         */
+        TELEMETRY,
+        /**
+         * The whole loop cycle
+         */
+        TOTAL
+    }
+
+    /**
+     * A point in time summary of a phase, in nanoseconds
+     */
+    public static final class Summary {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long max;
+
+        Summary(LatencyHistogram histogram) {
+            count = histogram.getCount();
+            mean = histogram.getMean();
+            p50 = histogram.getValueAtPercentile(50);
+            p90 = histogram.getValueAtPercentile(90);
+            p99 = histogram.getValueAtPercentile(99);
+            max = histogram.getMax();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "n=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                    count, mean / 1E6, p50 / 1E6, p90 / 1E6, p99 / 1E6, max / 1E6);
+        }
+    }
+}
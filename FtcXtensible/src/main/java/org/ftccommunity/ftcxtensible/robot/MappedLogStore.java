@@ -0,0 +1,404 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import com.google.common.base.Charsets;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A log on disk, made of fixed size segment files that are memory mapped. Appending a record
+ * encodes it into a scratch array and copies that into the mapped segment, there is no system
+ * call involved; the kernel writes the pages out on its own, so the log survives the app crashing
+ * mid-match (though not the phone losing power before the pages are written, see
+ * {@link #force()}).
+ * <p>
+ * Each segment starts with a header of the magic {@code XLOG}, the format version and the index
+ * of the segment. Records follow, each framed as:</p>
+ * <pre>
+ * int length | int crc32 | long time | int level | tag | message
+ * </pre>
+ * <p>
+ * where the strings are a {@code short} length followed by that many UTF-8 bytes and the CRC
+ * covers everything after it. The length is written last, and a length of zero marks the end of
+ * a segment, so a record torn by a crash is either not there or fails its CRC. Once a segment is
+ * full, the next one is started, and the oldest segments are deleted past the limit.</p>
+ * <p>
+ * Appending is synchronized, but a store is meant to have one main writer: {@link RobotLogger}
+ * appends from its background thread, and only {@link RobotLogger#wtf(String, String, Exception)}
+ * appends from the thread that calls it.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+public final class MappedLogStore {
+    /**
+     * Where the robot logs are kept, unless stated otherwise
+     */
+    public static final String DEFAULT_DIRECTORY = "/sdcard/FIRST/logs";
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+    public static final int DEFAULT_MAX_SEGMENTS = 16;
+    static final int MAGIC = 0x584c4f47; // XLOG
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int FRAME_SIZE = 8;
+    private static final int FIXED_PAYLOAD = 8 + 4 + 2 + 2;
+    private static final String PREFIX = "log-";
+    private static final String SUFFIX = ".seg";
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final CRC32 crc;
+    private byte[] scratch;
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private long firstSegment;
+    private long records;
+    private boolean closed;
+
+    /**
+     * Opens a store in the default directory with the default limits
+     *
+     * @throws IOException if the first segment can't be created
+     */
+    public MappedLogStore() throws IOException {
+        this(new File(DEFAULT_DIRECTORY), DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Opens a store, appending to a new segment after any that are already there
+     *
+     * @param directory   where to keep the segments
+     * @param segmentSize the size of each segment, in bytes
+     * @param maxSegments how many segments to keep, the oldest ones are deleted first
+     * @throws IOException if the first segment can't be created
+     */
+    public MappedLogStore(@NotNull File directory, int segmentSize, int maxSegments) throws IOException {
+        checkArgument(segmentSize >= 256, "Segments must be at least 256 bytes");
+        checkArgument(maxSegments > 0, "At least one segment needs to be kept");
+        this.directory = checkNotNull(directory);
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        crc = new CRC32();
+        scratch = new byte[256];
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new FileNotFoundException("Cannot create " + directory);
+        }
+
+        long[] existing = segmentIndexes(directory);
+        firstSegment = existing.length > 0 ? existing[0] : 0;
+        segmentIndex = existing.length > 0 ? existing[existing.length - 1] + 1 : 0;
+        openSegment();
+        // The segments left by earlier runs count against the limit too
+        deleteOldSegments();
+    }
+
+    /**
+     * Appends a record to the log, starting a new segment if it doesn't fit in this one. Messages
+     * too large for a segment are cut short.
+     *
+     * @param time    when the record was logged, in milliseconds since the epoch
+     * @param level   the level of the record
+     * @param tag     the tag of the record
+     * @param message the message
+     * @throws IOException if a new segment is needed and can't be created
+     */
+    public synchronized void append(long time, @NotNull Level level, @NotNull String tag, @NotNull String message)
+            throws IOException {
+        checkState(!closed, "The log store is closed");
+        int max = segmentSize - HEADER_SIZE - FRAME_SIZE - 4;
+        ensureScratch(Math.min(max, FIXED_PAYLOAD + 3 * (tag.length() + message.length())));
+
+        int position = 0;
+        position = putLong(scratch, position, time);
+        position = putInt(scratch, position, level.intValue());
+        // Each string is limited to what is left after its length and the lengths that follow
+        position = putString(scratch, position, tag, max - position - 4);
+        position = putString(scratch, position, message, max - position - 2);
+
+        // Keep room for the zero length that ends the segment
+        if (segment.remaining() < FRAME_SIZE + position + 4) {
+            rotate();
+        }
+
+        crc.reset();
+        crc.update(scratch, 0, position);
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.putInt((int) crc.getValue());
+        segment.put(scratch, 0, position);
+        segment.putInt(start, position);
+        records++;
+    }
+
+    /**
+     * Asks the kernel to write the current segment to storage now, this blocks until it is done
+     */
+    public synchronized void force() {
+        if (!closed) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Stops appending to the store, the segments are left as they are
+     */
+    public synchronized void close() {
+        if (!closed) {
+            segment.force();
+            closed = true;
+            segment = null;
+        }
+    }
+
+    /**
+     * Gets how many records were appended since the store was opened
+     *
+     * @return the number of records appended
+     */
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    /**
+     * Gets the directory the segments are kept in
+     *
+     * @return the directory of the store
+     */
+    @NotNull
+    public File getDirectory() {
+        return directory;
+    }
+
+    private void rotate() throws IOException {
+        segmentIndex++;
+        openSegment();
+        deleteOldSegments();
+    }
+
+    private void deleteOldSegments() throws IOException {
+        while (segmentIndex - firstSegment >= maxSegments) {
+            File oldest = segmentFile(directory, firstSegment++);
+            if (oldest.exists() && !oldest.delete()) {
+                throw new IOException("Cannot delete " + oldest);
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segmentFile(directory, segmentIndex), "rw");
+        try {
+            file.setLength(segmentSize);
+            // The mapping stays valid once the file is closed
+            segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } finally {
+            file.close();
+        }
+
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+        segment.putLong(segmentIndex);
+    }
+
+    private void ensureScratch(int size) {
+        if (scratch.length < size) {
+            scratch = Arrays.copyOf(scratch, Math.max(size, scratch.length * 2));
+        }
+    }
+
+    private static int putLong(byte[] target, int position, long value) {
+        position = putInt(target, position, (int) (value >>> 32));
+        return putInt(target, position, (int) value);
+    }
+
+    private static int putInt(byte[] target, int position, int value) {
+        target[position] = (byte) (value >>> 24);
+        target[position + 1] = (byte) (value >>> 16);
+        target[position + 2] = (byte) (value >>> 8);
+        target[position + 3] = (byte) value;
+        return position + 4;
+    }
+
+    /**
+     * Writes a string as a {@code short} length and UTF-8 bytes, without allocating. Characters
+     * that don't fit in the limit are left out.
+     */
+    private static int putString(byte[] target, int position, String string, int limit) {
+        int start = position + 2;
+        int end = start;
+        int max = Math.min(start + Math.min(limit, Short.MAX_VALUE), target.length);
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                if (end + 1 > max) {
+                    break;
+                }
+                target[end++] = (byte) c;
+            } else if (c < 0x800) {
+                if (end + 2 > max) {
+                    break;
+                }
+                target[end++] = (byte) (0xc0 | (c >> 6));
+                target[end++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length() &&
+                    Character.isLowSurrogate(string.charAt(i + 1))) {
+                if (end + 4 > max) {
+                    break;
+                }
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                target[end++] = (byte) (0xf0 | (codePoint >> 18));
+                target[end++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                target[end++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                target[end++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else {
+                if (end + 3 > max) {
+                    break;
+                }
+                target[end++] = (byte) (0xe0 | (c >> 12));
+                target[end++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                target[end++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        int length = end - start;
+        target[position] = (byte) (length >>> 8);
+        target[position + 1] = (byte) length;
+        return end;
+    }
+
+    static File segmentFile(File directory, long index) {
+        return new File(directory, PREFIX + String.format(Locale.US, "%08d", index) + SUFFIX);
+    }
+
+    /**
+     * Finds the segments in a directory
+     *
+     * @return the indexes of the segments, oldest first
+     */
+    static long[] segmentIndexes(File directory) {
+        String[] names = directory.list();
+        if (names == null) {
+            return new long[0];
+        }
+
+        long[] indexes = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                try {
+                    indexes[count++] = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                } catch (NumberFormatException ex) {
+                    count--;
+                }
+            }
+        }
+
+        indexes = Arrays.copyOf(indexes, count);
+        Arrays.sort(indexes);
+        return indexes;
+    }
+
+    /**
+     * Reads every intact record in a store, oldest first. Reading a segment stops at its end, or
+     * at the first record that fails its CRC.
+     *
+     * @param directory where the segments are kept
+     * @param visitor   gets each record
+     * @return the number of records read
+     * @throws IOException if a segment can't be read
+     */
+    public static long read(@NotNull File directory, @NotNull RecordVisitor visitor) throws IOException {
+        checkNotNull(visitor);
+        CRC32 check = new CRC32();
+        long count = 0;
+        for (long index : segmentIndexes(checkNotNull(directory))) {
+            RandomAccessFile file = new RandomAccessFile(segmentFile(directory, index), "r");
+            ByteBuffer buffer;
+            try {
+                buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            } finally {
+                file.close();
+            }
+
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                continue;
+            }
+            buffer.getLong();
+
+            byte[] payload = new byte[256];
+            while (buffer.remaining() >= FRAME_SIZE) {
+                int length = buffer.getInt();
+                int expected = buffer.getInt();
+                if (length < FIXED_PAYLOAD || length > buffer.remaining()) {
+                    break;
+                }
+                if (payload.length < length) {
+                    payload = new byte[length];
+                }
+                buffer.get(payload, 0, length);
+                check.reset();
+                check.update(payload, 0, length);
+                if ((int) check.getValue() != expected) {
+                    break;
+                }
+
+                ByteBuffer record = ByteBuffer.wrap(payload, 0, length);
+                long time = record.getLong();
+                Level level = Level.parse(Integer.toString(record.getInt()));
+                String tag = getString(record);
+                String message = getString(record);
+                visitor.visit(index, time, level, tag, message);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        String value = new String(buffer.array(), buffer.position(), length, Charsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Gets the records read back from a store
+     */
+    public interface RecordVisitor {
+        void visit(long segment, long time, @NotNull Level level, @NotNull String tag, @NotNull String message);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.ftccommunity.ftcxtensible.interfaces.IndependentRunAssistant;
+import org.ftccommunity.ftcxtensible.interfaces.RunAssistant;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Runs the {@link IndependentRunAssistant}s of a loop cycle on a small, fixed set of worker
+ * threads. The loop thread starts a batch, does its own work, then waits for the batch in
+ * {@link #await()}, helping with whatever hasn't been picked up yet. The output and exception of
+ * every independent assistant is kept, in the order they were registered, so they can be
+ * processed on the loop thread once the batch is done.
+ * <p>
+ * Assistants are claimed through one word that holds the generation of the batch, its size and
+ * the next index to hand out. A claim is a compare-and-set of the whole word, so a worker that
+ * wakes up late can only claim from the batch that is current, and can never run an assistant of
+ * a batch twice. Everything is allocated up front, a steady batch doesn't allocate.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+final class ParallelAssistantRunner {
+    /**
+     * The most assistants a batch can hold
+     */
+    static final int MAX_BATCH = 0xffff;
+
+    private final Thread[] workers;
+    private final ArrayList<RunAssistant> tasks;
+    private final ArrayList<LinkedList<Object>> outputs;
+    // generation << 32 | size << 16 | next index
+    private final AtomicLong claims;
+    private final AtomicInteger remaining;
+    private Exception[] failures;
+    private RobotContext context;
+    private int generation;
+    private int size;
+    private volatile boolean running;
+    private volatile Thread waiter;
+
+    ParallelAssistantRunner(int threads) {
+        checkArgument(threads > 0, "At least one thread is needed");
+        tasks = new ArrayList<>();
+        outputs = new ArrayList<>();
+        failures = new Exception[0];
+        claims = new AtomicLong();
+        remaining = new AtomicInteger();
+        running = true;
+
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Worker(), "Xtensible Assistant #" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Starts running every {@link IndependentRunAssistant} in the given list, the other
+     * assistants are skipped and left for the caller. The previous batch must have been
+     * {@linkplain #await() awaited}.
+     *
+     * @param ctx        the robot context to hand to each assistant
+     * @param assistants the assistants of this loop cycle
+     */
+    void start(@NotNull RobotContext ctx, @NotNull List<RunAssistant> assistants) {
+        tasks.clear();
+        for (int i = 0; i < assistants.size(); i++) {
+            RunAssistant assistant = assistants.get(i);
+            if (assistant instanceof IndependentRunAssistant) {
+                tasks.add(assistant);
+            }
+        }
+
+        int count = tasks.size();
+        checkArgument(count <= MAX_BATCH, "Only %s independent assistants can run at once", MAX_BATCH);
+        while (outputs.size() < count) {
+            outputs.add(new LinkedList<Object>());
+        }
+        if (failures.length < count) {
+            failures = new Exception[Math.max(count, failures.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            outputs.get(i).clear();
+            failures[i] = null;
+        }
+
+        context = ctx;
+        size = count;
+        if (count == 0) {
+            return;
+        }
+
+        // The volatile write publishes the tasks, outputs and failures along with the batch
+        remaining.set(count);
+        generation++;
+        claims.set((long) generation << 32 | (long) count << 16);
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Waits for every assistant of the current batch to finish, this is the barrier before the
+     * user loop. The calling thread runs unclaimed assistants while it waits.
+     */
+    void await() {
+        drain();
+
+        waiter = Thread.currentThread();
+        while (remaining.get() > 0) {
+            LockSupport.park(this);
+        }
+        waiter = null;
+    }
+
+    /**
+     * Gets how many assistants ran in the last batch
+     *
+     * @return the size of the last batch
+     */
+    int size() {
+        return size;
+    }
+
+    @NotNull
+    LinkedList<Object> getOutput(int index) {
+        return outputs.get(index);
+    }
+
+    @Nullable
+    Exception getFailure(int index) {
+        return failures[index];
+    }
+
+    /**
+     * Stops the worker threads, the current batch is still finished
+     */
+    void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Runs assistants of the current batch until every one of them has been claimed
+     */
+    private void drain() {
+        while (true) {
+            long claim = claims.get();
+            int index = (int) claim & 0xffff;
+            if (index >= ((int) (claim >>> 16) & 0xffff)) {
+                return;
+            }
+            // The generation in the word keeps a claim from landing on a later batch
+            if (claims.compareAndSet(claim, claim + 1)) {
+                execute(index);
+            }
+        }
+    }
+
+    private void execute(int index) {
+        try {
+            tasks.get(index).onExecute(context, outputs.get(index));
+        } catch (Exception ex) {
+            failures[index] = ex;
+        } finally {
+            if (remaining.decrementAndGet() == 0) {
+                Thread thread = waiter;
+                if (thread != null) {
+                    LockSupport.unpark(thread);
+                }
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            int seen = 0;
+            while (running) {
+                int current = (int) (claims.get() >>> 32);
+                if (current == seen) {
+                    LockSupport.park(this);
+                    continue;
+                }
+
+                seen = current;
+                drain();
+            }
+        }
+    }
+}
@@ -17,64 +17,151 @@
  */
 package org.ftccommunity.ftcxtensible.robot;
 
+import org.ftccommunity.ftcxtensible.math.LatencyHistogram;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Serializable;
 
-import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkArgument;
 
 /**
- * A serializable class that describes key info in how a loop performs in operation
+ * A serializable class that describes key info in how a loop performs in operation. Loop times are
+ * fed in one at a time as the loop runs; the mean and variance are kept up to date with Welford's
+ * method and the percentiles come from a {@link LatencyHistogram}, so the memory used stays the
+ * same no matter how long the OpMode runs.
+ * <p>
+ * A loop is flagged as an outlier as soon as it is recorded, when it is more than
+ * {@link #getOutlierThreshold()} standard deviations slower than the loops before it.</p>
  *
  * @author David Sargent
  * @since 0.3.1
  */
 public class PerformanceTuner implements Serializable {
-    private static final long serialVersionUID = 0;
-    private Integer[] times;
-    private double[] z_indexes;
+    /**
+     * The default number of standard deviations a loop must be above the mean to be an outlier
+     */
+    public static final double DEFAULT_OUTLIER_THRESHOLD = 3;
+    private static final long serialVersionUID = 1;
+    private static final int WARM_UP_SAMPLES = 30;
+
+    private final LatencyHistogram sketch;
+    private final double outlierThreshold;
+    private long count;
     private double average;
-    private double stdDev;
+    private double sumOfSquares;
+    private long outliers;
+    private double lastZIndex;
+
+    /**
+     * Creates a new {@link PerformanceTuner} using the {@link #DEFAULT_OUTLIER_THRESHOLD}
+     */
+    public PerformanceTuner() {
+        this(DEFAULT_OUTLIER_THRESHOLD);
+    }
 
     /**
      * Creates a new {@link PerformanceTuner}
-     * @param times an array of loop times to use
+     *
+     * @param outlierThreshold how many standard deviations above the mean a loop time needs to
+     *                         be to count as an outlier
      */
-    public PerformanceTuner(@NotNull final Integer[] times) {
-        this.times = checkNotNull(times).clone();
-        average = 0;
-        for (int time :
-                times) {
-            average = getAverage() + time;
-        }
-        average = getAverage() / times.length;
+    public PerformanceTuner(double outlierThreshold) {
+        checkArgument(outlierThreshold > 0, "The outlier threshold must be positive");
+        this.outlierThreshold = outlierThreshold;
+        sketch = new LatencyHistogram();
+    }
 
-        stdDev = 0;
-        for (int time :
-                times) {
-            stdDev += Math.pow(time - getAverage(), 2);
+    /**
+     * Records a single loop time. This does not allocate, so it is safe to call every loop
+     *
+     * @param time how long the loop took, in nanoseconds
+     * @return {@code true} if the loop time is an outlier, otherwise {@code false}
+     */
+    public boolean record(long time) {
+        // Compare against the loops before this one, so an outlier can't hide itself
+        double stdDev = getStdDev();
+        lastZIndex = stdDev > 0 ? (time - average) / stdDev : 0;
+        boolean outlier = count >= WARM_UP_SAMPLES && lastZIndex > outlierThreshold;
+        if (outlier) {
+            outliers++;
         }
-        stdDev = getStdDev() / times.length;
 
-        z_indexes = new double[times.length];
-        for (int i = 0; i < times.length; i++) {
-            z_indexes[i] = (times[i] - getAverage()) / stdDev;
-        }
+        count++;
+        double delta = time - average;
+        average += delta / count;
+        sumOfSquares += delta * (time - average);
+        sketch.record(time);
+        return outlier;
     }
 
-    public Integer[] getTimes() {
-        return times;
+    /**
+     * Clears every recorded loop time
+     */
+    public void reset() {
+        count = 0;
+        average = 0;
+        sumOfSquares = 0;
+        outliers = 0;
+        lastZIndex = 0;
+        sketch.reset();
     }
 
-    public double[] getZ_indexes() {
-        return z_indexes;
+    public long getCount() {
+        return count;
     }
 
     public double getAverage() {
         return average;
     }
 
+    public double getVariance() {
+        return count == 0 ? 0 : sumOfSquares / count;
+    }
+
     public double getStdDev() {
-        return stdDev;
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Gets how many standard deviations the last recorded loop time was from the mean of the
+     * loops before it
+     *
+     * @return the z-index of the last loop
+     */
+    public double getLastZIndex() {
+        return lastZIndex;
+    }
+
+    public double getOutlierThreshold() {
+        return outlierThreshold;
+    }
+
+    /**
+     * Gets how many loops have been flagged as outliers
+     *
+     * @return the number of outliers
+     */
+    public long getOutliers() {
+        return outliers;
+    }
+
+    /**
+     * Estimates a loop time percentile, to within about 2%
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the loop time at the percentile, in nanoseconds
+     */
+    public long getPercentile(double percentile) {
+        return sketch.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Gets the quantile sketch backing this tuner
+     *
+     * @return the histogram of every recorded loop time
+     */
+    @NotNull
+    public LatencyHistogram getSketch() {
+        return sketch;
     }
 }
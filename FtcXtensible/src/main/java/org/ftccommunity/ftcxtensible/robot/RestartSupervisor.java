@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decides when a {@link org.ftccommunity.ftcxtensible.opmodes.RobotsDontQuit} OpMode that threw
+ * gets restarted, and how long it took to recover. The OpMode is restarted in place, on its own
+ * loop thread, so the {@link RobotContext} and the hardware stay as they are.
+ * <p>
+ * The wait before a restart starts short and doubles with every failure that comes soon after
+ * the last recovery, up to a maximum; once the OpMode has run cleanly for a while the wait goes
+ * back to the start.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+public final class RestartSupervisor {
+    static final long DEFAULT_INITIAL_BACKOFF = TimeUnit.MILLISECONDS.toNanos(50);
+    static final long DEFAULT_MAX_BACKOFF = TimeUnit.SECONDS.toNanos(2);
+    static final long DEFAULT_STABLE_TIME = TimeUnit.SECONDS.toNanos(10);
+
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final long stableTime;
+
+    private State state;
+    private long backoff;
+    private long failedAt;
+    private long restartAt;
+    private long recoveredAt;
+
+    private int restarts;
+    private long lastRecoveryTime;
+    private long maxRecoveryTime;
+
+    RestartSupervisor() {
+        this(DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF, DEFAULT_STABLE_TIME, TimeUnit.NANOSECONDS);
+    }
+
+    RestartSupervisor(long initialBackoff, long maxBackoff, long stableTime, TimeUnit unit) {
+        checkArgument(initialBackoff >= 0 && maxBackoff >= initialBackoff,
+                "The backoff must be positive, and no more than the max backoff");
+        this.initialBackoff = checkNotNull(unit).toNanos(initialBackoff);
+        this.maxBackoff = unit.toNanos(maxBackoff);
+        this.stableTime = unit.toNanos(stableTime);
+        state = State.RUNNING;
+        backoff = this.initialBackoff;
+        recoveredAt = Long.MIN_VALUE;
+    }
+
+    /**
+     * Schedules a restart after the OpMode threw
+     *
+     * @param now the current time, from {@link System#nanoTime()}
+     * @return how long until the restart, in nanoseconds
+     */
+    long failed(long now) {
+        if (state == State.RUNNING) {
+            failedAt = now;
+            if (recoveredAt == Long.MIN_VALUE || now - recoveredAt > stableTime) {
+                backoff = initialBackoff;
+            }
+        }
+
+        long delay = backoff;
+        restartAt = now + delay;
+        backoff = Math.min(maxBackoff, Math.max(1, backoff * 2));
+        state = State.WAITING;
+        return delay;
+    }
+
+    /**
+     * Checks if the OpMode is waiting to be restarted
+     *
+     * @return {@code true} if the OpMode shouldn't run its loop
+     */
+    boolean isWaiting() {
+        return state == State.WAITING;
+    }
+
+    /**
+     * Starts the restart, if it is time for it
+     *
+     * @param now the current time, from {@link System#nanoTime()}
+     * @return {@code true} if the OpMode should be restarted now
+     */
+    boolean beginRestart(long now) {
+        if (state != State.WAITING || now - restartAt < 0) {
+            return false;
+        }
+
+        restarts++;
+        state = State.RESTARTING;
+        return true;
+    }
+
+    /**
+     * Marks the restart as done, unless the OpMode failed again while restarting. The OpMode has
+     * recovered once it finishes a loop.
+     */
+    void endRestart() {
+        if (state == State.RESTARTING) {
+            state = State.RECOVERING;
+        }
+    }
+
+    /**
+     * Notes that a loop cycle finished
+     *
+     * @param now the current time, from {@link System#nanoTime()}
+     * @return the time it took to recover in nanoseconds, if this loop finished a recovery,
+     * otherwise -1
+     */
+    long loopFinished(long now) {
+        if (state != State.RECOVERING) {
+            return -1;
+        }
+
+        state = State.RUNNING;
+        recoveredAt = now;
+        lastRecoveryTime = now - failedAt;
+        maxRecoveryTime = Math.max(maxRecoveryTime, lastRecoveryTime);
+        return lastRecoveryTime;
+    }
+
+    /**
+     * Gets how many times the OpMode was restarted
+     *
+     * @return the number of restarts
+     */
+    public int getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * Gets the time from the last failure to the end of the first loop after it was restarted
+     *
+     * @return the last time to recovery, in nanoseconds
+     */
+    public long getLastRecoveryTime() {
+        return lastRecoveryTime;
+    }
+
+    /**
+     * Gets the longest time to recovery so far
+     *
+     * @return the worst time to recovery, in nanoseconds
+     */
+    public long getMaxRecoveryTime() {
+        return maxRecoveryTime;
+    }
+
+    private enum State {
+        RUNNING, WAITING, RESTARTING, RECOVERING
+    }
+}
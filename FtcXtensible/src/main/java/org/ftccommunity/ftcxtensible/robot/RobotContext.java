@@ -114,7 +114,7 @@ public class RobotContext implements AbstractRobotContext {
             appContext = buildApplicationContext();
         }
         telemetry = tlmtry;
-        extensibleTelemetry = new ExtensibleTelemetry(tlmtry);
+        extensibleTelemetry = new ExtensibleTelemetry(ExtensibleTelemetry.DEFAULT_DATA_MAX, tlmtry, status.logRing());
     }
 
     public static Context buildApplicationContext() {
@@ -23,7 +23,10 @@ import android.util.Log;
 import com.qualcomm.robotcore.util.RobotLog;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -31,12 +34,24 @@ import static com.google.common.base.Preconditions.checkState;
 
 /**
  * A Logger that writes to both the Xtensible Robot Status Log, and the Android logcat
+ * <p>
+ * Logging never takes a lock; messages are put on a bounded queue and written out by one
+ * background thread, so threads that log don't hold each other up. See
+ * {@link #setOverflowPolicy(OverflowPolicy)} for what happens when the queue is
+ * full.</p>
  *
  * @since 0.1.0
  * @author David Sargent
  */
 public final class RobotLogger {
-    private static RobotLogger logger;
+    /**
+     * How many messages can wait to be written out before the overflow policy kicks in
+     */
+    public static final int QUEUE_CAPACITY = 1024;
+    private static final AsyncLogQueue queue = new AsyncLogQueue(QUEUE_CAPACITY,
+            OverflowPolicy.BLOCK_ON_ERRORS, new LogSink(), "Xtensible Logger");
+    private static volatile RobotLogger logger;
+    private static volatile MappedLogStore store;
     private RobotContext context;
 
     private RobotLogger(RobotContext ctx) {
@@ -85,7 +100,8 @@ public final class RobotLogger {
     }
 
     /**
-     * Writes a debug message to the respective loggers.
+     * Writes a debug message to the respective loggers. This never blocks on other loggers,
+     * the message is written out by the logger's background thread.
      *
      * @param tag the log tag
      * @param mess the message to send
@@ -93,15 +109,41 @@ public final class RobotLogger {
      * @see RobotStatus#log(Level, String, String)
      * @see Level#FINE
      */
-    public synchronized static void d(@NotNull String tag, @NotNull String mess) {
-        tag = checkNotNull(tag);
-        mess = checkNotNull(mess);
-        RobotLog.d(mess);
-        getInstance().context.status().log(Level.FINE, tag, mess);
+    public static void d(@NotNull String tag, @NotNull String mess) {
+        enqueue(Level.FINE, tag, mess, 0, null, null);
     }
 
     /**
-     * Writes a info message to the respective loggers.
+     * Writes a debug message to the respective loggers, formatting it only once it is written
+     * out, on the logger's background thread. The arguments are kept as they are until then, so a
+     * mutable argument is printed as it is by the time it is written, not as it was here.
+     *
+     * @param tag the log tag
+     * @param format the format of the message, see {@link String#format(String, Object...)}
+     * @param arg the argument of the format
+     */
+    public static void d(@NotNull String tag, @NotNull String format, @Nullable Object arg) {
+        enqueue(Level.FINE, tag, format, 1, arg, null);
+    }
+
+    /**
+     * Writes a debug message to the respective loggers, formatting it only once it is written
+     * out, on the logger's background thread. The arguments are kept as they are until then, so a
+     * mutable argument is printed as it is by the time it is written, not as it was here.
+     *
+     * @param tag the log tag
+     * @param format the format of the message, see {@link String#format(String, Object...)}
+     * @param first the first argument of the format
+     * @param second the second argument of the format
+     */
+    public static void d(@NotNull String tag, @NotNull String format, @Nullable Object first,
+                         @Nullable Object second) {
+        enqueue(Level.FINE, tag, format, 2, first, second);
+    }
+
+    /**
+     * Writes an info message to the respective loggers. This never blocks on other loggers,
+     * the message is written out by the logger's background thread.
      *
      * @param tag the log tag
      * @param mess the message to send
@@ -109,16 +151,41 @@ public final class RobotLogger {
      * @see RobotStatus#log(Level, String, String)
      * @see Level#INFO
      */
-    public synchronized static void i(String tag, String mess) {
-        tag = checkNotNull(tag);
-        mess = checkNotNull(mess);
+    public static void i(@NotNull String tag, @NotNull String mess) {
+        enqueue(Level.INFO, tag, mess, 0, null, null);
+    }
+
+    /**
+     * Writes an info message to the respective loggers, formatting it only once it is written
+     * out, on the logger's background thread. The arguments are kept as they are until then, so a
+     * mutable argument is printed as it is by the time it is written, not as it was here.
+     *
+     * @param tag the log tag
+     * @param format the format of the message, see {@link String#format(String, Object...)}
+     * @param arg the argument of the format
+     */
+    public static void i(@NotNull String tag, @NotNull String format, @Nullable Object arg) {
+        enqueue(Level.INFO, tag, format, 1, arg, null);
+    }
 
-        RobotLog.i(mess);
-        getInstance().context.status().log(Level.INFO, tag, mess);
+    /**
+     * Writes an info message to the respective loggers, formatting it only once it is written
+     * out, on the logger's background thread. The arguments are kept as they are until then, so a
+     * mutable argument is printed as it is by the time it is written, not as it was here.
+     *
+     * @param tag the log tag
+     * @param format the format of the message, see {@link String#format(String, Object...)}
+     * @param first the first argument of the format
+     * @param second the second argument of the format
+     */
+    public static void i(@NotNull String tag, @NotNull String format, @Nullable Object first,
+                         @Nullable Object second) {
+        enqueue(Level.INFO, tag, format, 2, first, second);
     }
 
     /**
-     * Writes a warning message to the respective loggers.
+     * Writes a warning message to the respective loggers. This never blocks on other loggers,
+     * the message is written out by the logger's background thread.
      *
      * @param tag the log tag
      * @param mess the message to send
@@ -126,16 +193,41 @@ public final class RobotLogger {
      * @see RobotStatus#log(Level, String, String)
      * @see Level#WARNING
      */
-    public synchronized static void w(String tag, String mess) {
-        tag = checkNotNull(tag);
-        mess = checkNotNull(mess);
+    public static void w(@NotNull String tag, @NotNull String mess) {
+        enqueue(Level.WARNING, tag, mess, 0, null, null);
+    }
 
-        RobotLog.w(mess);
-        getInstance().context.status().log(Level.WARNING, tag, mess);
+    /**
+     * Writes a warning message to the respective loggers, formatting it only once it is written
+     * out, on the logger's background thread. The arguments are kept as they are until then, so a
+     * mutable argument is printed as it is by the time it is written, not as it was here.
+     *
+     * @param tag the log tag
+     * @param format the format of the message, see {@link String#format(String, Object...)}
+     * @param arg the argument of the format
+     */
+    public static void w(@NotNull String tag, @NotNull String format, @Nullable Object arg) {
+        enqueue(Level.WARNING, tag, format, 1, arg, null);
     }
 
     /**
-     * Writes a error message to the respective loggers.
+     * Writes a warning message to the respective loggers, formatting it only once it is written
+     * out, on the logger's background thread. The arguments are kept as they are until then, so a
+     * mutable argument is printed as it is by the time it is written, not as it was here.
+     *
+     * @param tag the log tag
+     * @param format the format of the message, see {@link String#format(String, Object...)}
+     * @param first the first argument of the format
+     * @param second the second argument of the format
+     */
+    public static void w(@NotNull String tag, @NotNull String format, @Nullable Object first,
+                         @Nullable Object second) {
+        enqueue(Level.WARNING, tag, format, 2, first, second);
+    }
+
+    /**
+     * Writes an error message to the respective loggers. This never blocks on other loggers,
+     * the message is written out by the logger's background thread.
      *
      * @param tag the log tag
      * @param mess the message to send
@@ -143,12 +235,176 @@ public final class RobotLogger {
      * @see RobotStatus#log(Level, String, String)
      * @see Level#SEVERE
      */
-    public synchronized static void e(String tag, String mess) {
-        tag = checkNotNull(tag);
-        mess = checkNotNull(mess);
+    public static void e(@NotNull String tag, @NotNull String mess) {
+        enqueue(Level.SEVERE, tag, mess, 0, null, null);
+    }
+
+    /**
+     * Writes an error message to the respective loggers, formatting it only once it is written
+     * out, on the logger's background thread. The arguments are kept as they are until then, so a
+     * mutable argument is printed as it is by the time it is written, not as it was here.
+     *
+     * @param tag the log tag
+     * @param format the format of the message, see {@link String#format(String, Object...)}
+     * @param arg the argument of the format
+     */
+    public static void e(@NotNull String tag, @NotNull String format, @Nullable Object arg) {
+        enqueue(Level.SEVERE, tag, format, 1, arg, null);
+    }
+
+    /**
+     * Writes an error message to the respective loggers, formatting it only once it is written
+     * out, on the logger's background thread. The arguments are kept as they are until then, so a
+     * mutable argument is printed as it is by the time it is written, not as it was here.
+     *
+     * @param tag the log tag
+     * @param format the format of the message, see {@link String#format(String, Object...)}
+     * @param first the first argument of the format
+     * @param second the second argument of the format
+     */
+    public static void e(@NotNull String tag, @NotNull String format, @Nullable Object first,
+                         @Nullable Object second) {
+        enqueue(Level.SEVERE, tag, format, 2, first, second);
+    }
 
-        RobotLog.e(mess);
-        getInstance().context.status().log(Level.SEVERE, tag, mess);
+    private static void enqueue(Level level, String tag, String format, int arguments, Object first, Object second) {
+        checkNotNull(tag);
+        checkNotNull(format);
+        RobotStatus status = getInstance().context.status();
+        queue.offer(status, level, tag, format, arguments, first, second);
+    }
+
+    /**
+     * Sets what happens to messages logged while the queue of the background thread is full. By
+     * default, debug and info messages are dropped while warnings and errors wait for room.
+     *
+     * @param policy the new policy
+     */
+    public static void setOverflowPolicy(@NotNull OverflowPolicy policy) {
+        queue.setPolicy(policy);
+    }
+
+    /**
+     * Gets how many messages were dropped because the queue of the background thread was full
+     *
+     * @return the number of messages dropped
+     */
+    public static long getDroppedMessages() {
+        return queue.getDropped();
+    }
+
+    /**
+     * Gets how many messages had to wait for room in the queue of the background thread
+     *
+     * @return the number of messages that blocked their caller
+     */
+    public static long getBlockedMessages() {
+        return queue.getBlocked();
+    }
+
+    /**
+     * Starts keeping a copy of every message on disk, in {@link MappedLogStore#DEFAULT_DIRECTORY}.
+     * The messages are appended by the logger's background thread, never by the caller.
+     *
+     * @throws IOException if the log store can't be opened
+     */
+    public static void enablePersistentLog() throws IOException {
+        enablePersistentLog(new MappedLogStore());
+    }
+
+    /**
+     * Starts keeping a copy of every message in the given store, replacing any store that was in
+     * use
+     *
+     * @param logStore the store to append messages to
+     */
+    public static synchronized void enablePersistentLog(@NotNull MappedLogStore logStore) {
+        MappedLogStore old = store;
+        store = checkNotNull(logStore);
+        if (old != null && old != logStore) {
+            flush(1, TimeUnit.SECONDS);
+            old.close();
+        }
+    }
+
+    /**
+     * Stops keeping messages on disk, once the messages already logged are written out
+     */
+    public static synchronized void disablePersistentLog() {
+        MappedLogStore old = store;
+        if (old != null) {
+            flush(1, TimeUnit.SECONDS);
+            store = null;
+            old.close();
+        }
+    }
+
+    /**
+     * Waits for every message logged so far to be written out, then asks the kernel to write the
+     * persistent log to storage; this does nothing if the persistent log isn't enabled
+     *
+     * @param timeout how long to wait for the messages, at most
+     * @param unit    the unit of the timeout
+     */
+    public static void syncPersistentLog(long timeout, @NotNull TimeUnit unit) {
+        MappedLogStore current = store;
+        if (current != null) {
+            flush(timeout, unit);
+            current.force();
+        }
+    }
+
+    /**
+     * Waits for every message logged so far to be written out
+     *
+     * @param timeout how long to wait, at most
+     * @param unit    the unit of the timeout
+     * @return {@code true} if everything was written in time
+     */
+    public static boolean flush(long timeout, @NotNull TimeUnit unit) {
+        return queue.awaitDrained(timeout, unit);
+    }
+
+    /**
+     * Writes queued messages out to logcat and the status of the context they were logged in
+     */
+    private static final class LogSink implements AsyncLogQueue.Sink {
+        @Override
+        public void write(@Nullable RobotStatus status, long time, @NotNull Level level, @NotNull String tag,
+                          @NotNull String message) {
+            if (level == Level.SEVERE) {
+                RobotLog.e(message);
+            } else if (level == Level.WARNING) {
+                RobotLog.w(message);
+            } else if (level == Level.INFO) {
+                RobotLog.i(message);
+            } else {
+                RobotLog.d(message);
+            }
+
+            if (status != null) {
+                status.log(level, tag, message);
+            }
+            persist(time, level, tag, message);
+        }
+    }
+
+    /**
+     * Appends a message to the persistent log, if it is enabled
+     */
+    private static void persist(long time, Level level, String tag, String message) {
+        MappedLogStore current = store;
+        if (current != null) {
+            try {
+                current.append(time, level, tag, message);
+            } catch (IOException | IllegalStateException ex) {
+                // Don't keep failing on every message, unless the store was just replaced
+                if (store == current) {
+                    store = null;
+                    Log.e("ROBOT_LOGGER", "Cannot write to the log store, it is disabled", ex);
+                }
+            }
+        }
     }
 
     /**
@@ -158,6 +414,7 @@ public final class RobotLogger {
      * @param mess the message to send
      * @see RobotLog#setGlobalErrorMsg(String)
      * @see Log#wtf(String, String)
+     * @see RobotStatus#log(Level, String, String)
      */
     public synchronized static void wtf(String tag, String mess, Exception ex) {
         tag = checkNotNull(tag);
@@ -166,5 +423,26 @@ public final class RobotLogger {
 
         Log.wtf(tag, mess, ex);
         RobotLog.setGlobalErrorMsg(mess);
+        String details = mess + ": " + ex.toString();
+        getInstance().context.status().log(Level.SEVERE, tag, details);
+        persist(System.currentTimeMillis(), Level.SEVERE, tag, details);
+    }
+
+    /**
+     * What happens to a message that is logged while the queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * The message is dropped, writers never wait
+         */
+        DROP,
+        /**
+         * Warnings and errors wait for room, anything less severe is dropped
+         */
+        BLOCK_ON_ERRORS,
+        /**
+         * Every message waits for room
+         */
+        BLOCK
     }
 }
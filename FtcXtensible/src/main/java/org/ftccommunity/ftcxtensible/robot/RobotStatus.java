@@ -17,25 +17,39 @@
  */
 package org.ftccommunity.ftcxtensible.robot;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 import org.ftccommunity.ftcxtensible.internal.NotDocumentedWell;
+import org.ftccommunity.ftcxtensible.robot.formatters.JsonLogWriter;
+import org.jetbrains.annotations.NotNull;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 @NotDocumentedWell
 public class RobotStatus {
     private static final Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
-    private final ConcurrentLinkedQueue<LogElement> logElements;
+    private static final String HTML_HEADER =
+            "<!DOCTYPE html>" +
+                    "<head>" +
+                    "<title>Robot Log</title>" +
+                    "<!-- Latest compiled and minified CSS -->\n" +
+                    "<link rel=\"stylesheet\" href=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.5/css/bootstrap.min.css\">" +
+                    "</head>" +
+                    "<body>" +
+                    "<table class=\"table table-bordered\">\n";
+    private static final String HTML_FOOTER =
+            "</table>" +
+                    "</body>";
+    private final LogRing logElements;
     private LogTypes logType;
     private MainStates state;
     private Type type;
 
     private RobotStatus() {
-        logElements = new ConcurrentLinkedQueue<>();
+        logElements = new LogRing();
     }
 
     public RobotStatus(RobotContext ctx, LogTypes type) {
@@ -43,54 +57,111 @@ public class RobotStatus {
         logType = type;
     }
 
+    /**
+     * Renders every entry still in the log
+     *
+     * @return the log, in the format this status was created with
+     */
     public String getLog() {
+        return getLog(0, logElements.capacity()).getContent();
+    }
+
+    /**
+     * Renders the entries that came after the given sequence number, oldest first. Each entry is
+     * only ever rendered once, so asking for the same page again only costs joining the entries.
+     *
+     * @param after the {@link LogPage#getNextCursor() cursor} of the last page read, or
+     *              {@code 0} to start at the oldest entry
+     * @param max   the most entries to return
+     * @return the page of the log
+     */
+    @NotNull
+    public LogPage getLog(long after, int max) {
+        checkArgument(max >= 0, "The page size can't be negative");
+        ArrayList<LogRing.Entry> entries = new ArrayList<>(Math.min(max, logElements.capacity()));
+        logElements.read(after, entries, max);
+
+        StringBuilder builder = new StringBuilder();
+        if (logType == LogTypes.HTML) {
+            builder.append(HTML_HEADER);
+        } else if (logType == LogTypes.JSON) {
+            builder.append('[');
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            if (logType == LogTypes.JSON && i > 0) {
+                builder.append(',');
+            }
+            builder.append(render(entries.get(i)));
+        }
+        if (logType == LogTypes.HTML) {
+            builder.append(HTML_FOOTER);
+        } else if (logType == LogTypes.JSON) {
+            builder.append(']');
+        }
+
+        long first = entries.isEmpty() ? after + 1 : entries.get(0).getSequence();
+        long next = entries.isEmpty() ? Math.max(after, logElements.lastSequence()) :
+                entries.get(entries.size() - 1).getSequence();
+        return new LogPage(builder.toString(), next, first > Math.max(after, 0) + 1);
+    }
+
+    /**
+     * Gets the rendered form of an entry, rendering it if it hasn't been yet
+     */
+    private String render(LogRing.Entry entry) {
+        String rendered = entry.rendered;
+        if (rendered != null) {
+            return rendered;
+        }
+
         if (logType == LogTypes.JSON) {
-            GsonBuilder gsonBuilder = new GsonBuilder().enableComplexMapKeySerialization().setPrettyPrinting();
-            Gson gson = gsonBuilder.create();
-            return gson.toJson(logElements.toArray());
-        } else if (logType == LogTypes.HTML) {
-            final String header =
-                    "<!DOCTYPE html>" +
-                            "<head>" +
-                            "<title>Robot Log</title>" +
-                            "<!-- Latest compiled and minified CSS -->\n" +
-                            "<link rel=\"stylesheet\" href=\"https://maxcdn.bootstrapcdn.com/bootstrap/3.3.5/css/bootstrap.min.css\">" +
-                            "</head>" +
-                            "<body>" +
-                            "<table class=\"table table-bordered\">\n";
-            final String footer =
-                    "</table>" +
-                            "</body>";
             StringBuilder builder = new StringBuilder();
-            builder.append(header);
-            for (LogElement logElement : logElements) {
-                if (logElement.level == Level.SEVERE) {
-                    builder.append("<tr class=\"danger\">");
-                } else if (logElement.level == Level.WARNING) {
-                    builder.append("<tr class=\"warning\">");
-                } else {
-                    builder.append("<tr> ");
-                }
-                builder.append("<td>").append(logElement.type).append("</td>");
-                builder.append("<td>").append(logElement.details).append("</td>");
+            try {
+                new JsonLogWriter(builder).beginObject()
+                        .member("sequence", entry.getSequence())
+                        .member("time", entry.getTime())
+                        .member("level", entry.getLevel().getName())
+                        .member("tag", entry.getTag())
+                        .member("message", entry.getMessage())
+                        .endObject();
+            } catch (IOException ex) {
+                // A StringBuilder never throws
+                throw new AssertionError(ex);
             }
-            builder.append(footer);
-
-            return builder.toString();
-        } else {
+            rendered = builder.toString();
+        } else if (logType == LogTypes.HTML) {
             StringBuilder builder = new StringBuilder();
-            for (LogElement logElement : logElements) {
-                builder.append(logElement.type).append("\t\t");
-                builder.append(logElement.details);
+            if (entry.getLevel() == Level.SEVERE) {
+                builder.append("<tr class=\"danger\">");
+            } else if (entry.getLevel() == Level.WARNING) {
+                builder.append("<tr class=\"warning\">");
+            } else {
+                builder.append("<tr> ");
             }
-            return builder.toString();
+            builder.append("<td>").append(entry.getTag()).append("</td>");
+            builder.append("<td>").append(entry.getMessage()).append("</td>");
+            builder.append("</tr>\n");
+            rendered = builder.toString();
+        } else {
+            rendered = entry.getTag() + "\t\t" + entry.getMessage() + '\n';
         }
+
+        // Entries never change and strings are immutable, racing renders agree
+        entry.rendered = rendered;
+        return rendered;
     }
 
     public void log(Level level, String tag, String details) {
-        synchronized (logElements) {
-            logElements.add(new LogElement(level, tag, details));
-        }
+        logElements.add(level, tag, details);
+    }
+
+    /**
+     * Gets the in-process log this status writes to, for readers that only want new entries
+     *
+     * @return the log ring
+     */
+    public LogRing logRing() {
+        return logElements;
     }
 
     public MainStates getMainRobotState() {
@@ -125,15 +196,46 @@ public class RobotStatus {
         SUCCESS, FAILURE, IDK
     }
 
-    private class LogElement {
-        String type;
-        Level level;
-        String details;
+    /**
+     * A page of the rendered log, see {@link #getLog(long, int)}
+     */
+    public static final class LogPage {
+        private final String content;
+        private final long nextCursor;
+        private final boolean missedEntries;
+
+        LogPage(String content, long nextCursor, boolean missedEntries) {
+            this.content = content;
+            this.nextCursor = nextCursor;
+            this.missedEntries = missedEntries;
+        }
+
+        /**
+         * Gets the rendered entries
+         *
+         * @return the page, in the format of the status
+         */
+        @NotNull
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * Gets the cursor to ask for the next page with
+         *
+         * @return the sequence number of the last entry on this page
+         */
+        public long getNextCursor() {
+            return nextCursor;
+        }
 
-        public LogElement(Level logLevel, String entryType, String entryDetails) {
-            level = logLevel;
-            details = entryDetails;
-            type = entryType;
+        /**
+         * Checks if entries were overwritten before they could be read
+         *
+         * @return {@code true} if there is a gap between the last page and this one
+         */
+        public boolean hasMissedEntries() {
+            return missedEntries;
         }
     }
 }
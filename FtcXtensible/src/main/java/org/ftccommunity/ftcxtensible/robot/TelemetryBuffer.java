@@ -0,0 +1,594 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Hands telemetry from the thread that writes it to the thread that sends it without either one
+ * blocking the other. The owning thread, normally the loop thread, writes into a private
+ * {@link Frame}; {@link #publish()} swaps that frame into a shared slot with one atomic operation
+ * and the sender takes it from there with another. If the sender hasn't taken the last frame
+ * yet, the new writes are merged into it instead, so nothing is lost.
+ * <p>
+ * Any other thread can write too, its writes go through a concurrent queue instead; that is
+ * still lock-free, but allocates.</p>
+ * <p>
+ * Besides lines and persistent data, a frame has a slot for each registered key; setting a key is
+ * an array write, and only the keys set since the last publish are handed over.</p>
+ * <p>
+ * A key can also be given numbers instead of text, see {@link #record(int, double)}. Numbers are
+ * kept as primitives, along with the minimum, maximum and mean of every number recorded for the
+ * key in the frame, and are only turned into text by the sender.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+final class TelemetryBuffer {
+    private static final int LINE = -1;
+    private static final int PERSISTENT = -2;
+
+    /**
+     * The key holds text
+     */
+    static final byte TEXT = 0;
+    /**
+     * The key holds {@code double} samples
+     */
+    static final byte DOUBLE = 1;
+    /**
+     * The key holds {@code long} samples
+     */
+    static final byte LONG = 2;
+
+    private final int lineCapacity;
+    private final int keyCapacity;
+    private final AtomicReference<Thread> owner;
+    private final AtomicReference<Frame> published;
+    private final AtomicReference<Frame> free;
+    private final ConcurrentLinkedQueue<ForeignWrite> foreign;
+    // Only touched by the sender
+    private final Frame foreignFrame;
+    private Frame writing;
+    private volatile TelemetryRecorder recorder;
+
+    /**
+     * Creates a new buffer
+     *
+     * @param lineCapacity how many lines to keep between sends, older lines are dropped first
+     * @param keyCapacity  how many keys can be registered
+     */
+    TelemetryBuffer(int lineCapacity, int keyCapacity) {
+        checkArgument(lineCapacity > 0, "At least one line needs to be kept");
+        checkArgument(keyCapacity >= 0, "The key capacity can't be negative");
+        this.lineCapacity = lineCapacity;
+        this.keyCapacity = keyCapacity;
+        owner = new AtomicReference<>();
+        published = new AtomicReference<>();
+        free = new AtomicReference<>();
+        foreign = new ConcurrentLinkedQueue<>();
+        foreignFrame = newFrame();
+        writing = newFrame();
+    }
+
+    /**
+     * Makes the calling thread the owner of this buffer, if there isn't one yet
+     *
+     * @return {@code true} if the calling thread is the owner
+     */
+    boolean claim() {
+        Thread current = Thread.currentThread();
+        return owner.compareAndSet(null, current) || owner.get() == current;
+    }
+
+    private boolean isOwner() {
+        return owner.get() == Thread.currentThread();
+    }
+
+    /**
+     * Adds a line of data, a line is only sent once
+     *
+     * @param line the line to add
+     */
+    void line(@NotNull String line) {
+        if (isOwner()) {
+            writing.addLine(line);
+        } else {
+            foreign.add(new ForeignWrite(LINE, null, line));
+        }
+    }
+
+    /**
+     * Adds persistent data, persistent data is sent every time
+     *
+     * @param tag     the tag of the data
+     * @param message the data
+     */
+    void persistent(@NotNull String tag, @NotNull String message) {
+        if (isOwner()) {
+            writing.addPersistent(tag, message);
+        } else {
+            foreign.add(new ForeignWrite(PERSISTENT, tag, message));
+        }
+    }
+
+    /**
+     * Sets the value of a registered key, only the last value set before a publish is kept
+     *
+     * @param key   the handle of the key
+     * @param value the new value
+     */
+    void set(int key, @NotNull String value) {
+        if (isOwner()) {
+            writing.set(key, value);
+        } else {
+            foreign.add(new ForeignWrite(key, null, value));
+        }
+    }
+
+    /**
+     * Records a number for a registered key. Every number recorded before a publish counts
+     * towards the key's minimum, maximum and mean, the last one is its value.
+     *
+     * @param key   the handle of the key
+     * @param value the number
+     */
+    void record(int key, double value) {
+        if (isOwner()) {
+            writing.record(key, value);
+        } else {
+            foreign.add(new ForeignWrite(key, value));
+        }
+    }
+
+    /**
+     * Records a whole number for a registered key, see {@link #record(int, double)}
+     *
+     * @param key   the handle of the key
+     * @param value the number
+     */
+    void record(int key, long value) {
+        if (isOwner()) {
+            writing.record(key, value);
+        } else {
+            foreign.add(new ForeignWrite(key, value));
+        }
+    }
+
+    /**
+     * Hands everything the owner wrote since the last publish to the sender. Calls from any
+     * other thread do nothing.
+     *
+     * @return {@code true} if there is something new for the sender
+     */
+    boolean publish() {
+        if (!isOwner()) {
+            return !foreign.isEmpty();
+        }
+        if (writing.isEmpty()) {
+            return !foreign.isEmpty();
+        }
+
+        TelemetryRecorder current = recorder;
+        if (current != null) {
+            current.capture(writing);
+        }
+
+        Frame stale = published.getAndSet(null);
+        if (stale != null) {
+            // The sender hasn't gotten to the last frame yet
+            stale.append(writing);
+            writing.clear();
+            published.set(stale);
+        } else {
+            published.set(writing);
+            Frame next = free.getAndSet(null);
+            writing = next != null ? next : newFrame();
+        }
+
+        return true;
+    }
+
+    /**
+     * Sets the recorder that gets every frame the owner publishes, writes from other threads are
+     * recorded by the sender when it drains them
+     *
+     * @param recorder the recorder, or {@code null} to stop recording
+     */
+    void setRecorder(@Nullable TelemetryRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Moves everything published so far into the given frame, this must only be called by the
+     * sender
+     *
+     * @param target the sender's frame
+     * @return {@code true} if anything was moved
+     */
+    boolean drainTo(@NotNull Frame target) {
+        boolean drained = false;
+        Frame frame = published.getAndSet(null);
+        if (frame != null) {
+            target.append(frame);
+            frame.clear();
+            free.set(frame);
+            drained = true;
+        }
+
+        // Collect the other threads' writes in a frame of their own, so they can be recorded too
+        Frame writes = foreignFrame;
+        ForeignWrite write;
+        while ((write = foreign.poll()) != null) {
+            if (write.key == LINE) {
+                writes.addLine(write.message);
+            } else if (write.key == PERSISTENT) {
+                writes.addPersistent(write.tag, write.message);
+            } else if (write.kind == DOUBLE) {
+                writes.record(write.key, write.doubleValue);
+            } else if (write.kind == LONG) {
+                writes.record(write.key, write.longValue);
+            } else {
+                writes.set(write.key, write.message);
+            }
+        }
+        if (!writes.isEmpty()) {
+            TelemetryRecorder current = recorder;
+            if (current != null) {
+                current.capture(writes);
+            }
+            target.append(writes);
+            writes.clear();
+            drained = true;
+        }
+
+        return drained;
+    }
+
+    /**
+     * Creates a frame the sender can drain into
+     *
+     * @return a new, empty, frame
+     */
+    @NotNull
+    Frame newFrame() {
+        return new Frame(lineCapacity, keyCapacity);
+    }
+
+    private static final class ForeignWrite {
+        private final int key;
+        private final byte kind;
+        private final String tag;
+        private final String message;
+        private final double doubleValue;
+        private final long longValue;
+
+        ForeignWrite(int key, String tag, String message) {
+            this(key, TEXT, tag, message, 0, 0);
+        }
+
+        ForeignWrite(int key, double value) {
+            this(key, DOUBLE, null, null, value, 0);
+        }
+
+        ForeignWrite(int key, long value) {
+            this(key, LONG, null, null, 0, value);
+        }
+
+        private ForeignWrite(int key, byte kind, String tag, String message, double doubleValue, long longValue) {
+            this.key = key;
+            this.kind = kind;
+            this.tag = tag;
+            this.message = message;
+            this.doubleValue = doubleValue;
+            this.longValue = longValue;
+        }
+    }
+
+    /**
+     * The telemetry written between two publishes; a frame is only ever used by one thread at a
+     * time
+     */
+    static final class Frame {
+        private final String[] lines;
+        private int lineHead;
+        private int lineCount;
+        private final ArrayList<String> persistentTags;
+        private final ArrayList<String> persistentMessages;
+        private final String[] values;
+        private final boolean[] changed;
+        private final int[] changedKeys;
+        private int changedCount;
+
+        // Numbers recorded for each key, only valid for changed keys
+        private final byte[] kinds;
+        private final int[] samples;
+        private final double[] sums;
+        private final double[] doubleMins;
+        private final double[] doubleMaxes;
+        private final double[] doubleLasts;
+        private final long[] longMins;
+        private final long[] longMaxes;
+        private final long[] longLasts;
+
+        Frame(int lineCapacity, int keyCapacity) {
+            lines = new String[lineCapacity];
+            persistentTags = new ArrayList<>();
+            persistentMessages = new ArrayList<>();
+            values = new String[keyCapacity];
+            changed = new boolean[keyCapacity];
+            changedKeys = new int[keyCapacity];
+            kinds = new byte[keyCapacity];
+            samples = new int[keyCapacity];
+            sums = new double[keyCapacity];
+            doubleMins = new double[keyCapacity];
+            doubleMaxes = new double[keyCapacity];
+            doubleLasts = new double[keyCapacity];
+            longMins = new long[keyCapacity];
+            longMaxes = new long[keyCapacity];
+            longLasts = new long[keyCapacity];
+        }
+
+        void addLine(String line) {
+            if (lineCount == lines.length) {
+                // Drop the oldest line
+                lines[lineHead] = null;
+                lineHead = (lineHead + 1) % lines.length;
+                lineCount--;
+            }
+            lines[(lineHead + lineCount) % lines.length] = line;
+            lineCount++;
+        }
+
+        void addPersistent(String tag, String message) {
+            persistentTags.add(tag);
+            persistentMessages.add(message);
+        }
+
+        /**
+         * Marks a key as changed, and starts its numbers over if it is new to this frame or
+         * changes kind
+         */
+        private void touch(int key, byte kind) {
+            if (!changed[key]) {
+                changed[key] = true;
+                changedKeys[changedCount++] = key;
+                samples[key] = 0;
+            }
+            if (kinds[key] != kind) {
+                kinds[key] = kind;
+                samples[key] = 0;
+            }
+        }
+
+        void set(int key, String value) {
+            touch(key, TEXT);
+            values[key] = value;
+        }
+
+        void record(int key, double value) {
+            touch(key, DOUBLE);
+            if (samples[key] == 0) {
+                sums[key] = value;
+                doubleMins[key] = value;
+                doubleMaxes[key] = value;
+            } else {
+                sums[key] += value;
+                doubleMins[key] = Math.min(doubleMins[key], value);
+                doubleMaxes[key] = Math.max(doubleMaxes[key], value);
+            }
+            doubleLasts[key] = value;
+            samples[key]++;
+        }
+
+        void record(int key, long value) {
+            touch(key, LONG);
+            if (samples[key] == 0) {
+                sums[key] = value;
+                longMins[key] = value;
+                longMaxes[key] = value;
+            } else {
+                sums[key] += value;
+                longMins[key] = Math.min(longMins[key], value);
+                longMaxes[key] = Math.max(longMaxes[key], value);
+            }
+            longLasts[key] = value;
+            samples[key]++;
+        }
+
+        private void merge(int key, Frame newer) {
+            byte kind = newer.kinds[key];
+            touch(key, kind);
+            if (samples[key] == 0) {
+                sums[key] = newer.sums[key];
+                doubleMins[key] = newer.doubleMins[key];
+                doubleMaxes[key] = newer.doubleMaxes[key];
+                longMins[key] = newer.longMins[key];
+                longMaxes[key] = newer.longMaxes[key];
+            } else {
+                sums[key] += newer.sums[key];
+                if (kind == DOUBLE) {
+                    doubleMins[key] = Math.min(doubleMins[key], newer.doubleMins[key]);
+                    doubleMaxes[key] = Math.max(doubleMaxes[key], newer.doubleMaxes[key]);
+                } else {
+                    longMins[key] = Math.min(longMins[key], newer.longMins[key]);
+                    longMaxes[key] = Math.max(longMaxes[key], newer.longMaxes[key]);
+                }
+            }
+            doubleLasts[key] = newer.doubleLasts[key];
+            longLasts[key] = newer.longLasts[key];
+            samples[key] += newer.samples[key];
+        }
+
+        void append(Frame newer) {
+            for (int i = 0; i < newer.lineCount; i++) {
+                addLine(newer.line(i));
+            }
+            persistentTags.addAll(newer.persistentTags);
+            persistentMessages.addAll(newer.persistentMessages);
+            for (int i = 0; i < newer.changedCount; i++) {
+                int key = newer.changedKeys[i];
+                if (newer.kinds[key] == TEXT) {
+                    set(key, newer.values[key]);
+                } else {
+                    merge(key, newer);
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return lineCount == 0 && persistentTags.isEmpty() && changedCount == 0;
+        }
+
+        void clear() {
+            while (lineCount > 0) {
+                pollLine();
+            }
+            persistentTags.clear();
+            persistentMessages.clear();
+            for (int i = 0; i < changedCount; i++) {
+                int key = changedKeys[i];
+                changed[key] = false;
+                values[key] = null;
+                samples[key] = 0;
+            }
+            changedCount = 0;
+        }
+
+        /**
+         * Takes the oldest line out of this frame
+         *
+         * @return the oldest line, or {@code null} if there are none left
+         */
+        String pollLine() {
+            if (lineCount == 0) {
+                return null;
+            }
+
+            String line = lines[lineHead];
+            lines[lineHead] = null;
+            lineHead = (lineHead + 1) % lines.length;
+            lineCount--;
+            return line;
+        }
+
+        int lineCount() {
+            return lineCount;
+        }
+
+        /**
+         * Gets a line without taking it out of the frame
+         *
+         * @param index the index of the line, oldest first
+         * @return the line
+         */
+        String line(int index) {
+            return lines[(lineHead + index) % lines.length];
+        }
+
+        int persistentSize() {
+            return persistentTags.size();
+        }
+
+        String persistentTag(int index) {
+            return persistentTags.get(index);
+        }
+
+        String persistentMessage(int index) {
+            return persistentMessages.get(index);
+        }
+
+        /**
+         * Gets how many keys were set in this frame
+         *
+         * @return the number of keys set
+         */
+        int changedSize() {
+            return changedCount;
+        }
+
+        /**
+         * Gets a key that was set in this frame, in the order they were first set
+         *
+         * @param index the index of the change
+         * @return the handle of the key
+         */
+        int changedKey(int index) {
+            return changedKeys[index];
+        }
+
+        String value(int key) {
+            return values[key];
+        }
+
+        /**
+         * Gets what a changed key holds
+         *
+         * @param key the handle of the key
+         * @return {@link #TEXT}, {@link #DOUBLE} or {@link #LONG}
+         */
+        byte kind(int key) {
+            return kinds[key];
+        }
+
+        /**
+         * Gets how many numbers were recorded for a key in this frame
+         *
+         * @param key the handle of the key
+         * @return the number of samples
+         */
+        int samples(int key) {
+            return samples[key];
+        }
+
+        double mean(int key) {
+            return sums[key] / samples[key];
+        }
+
+        double doubleValue(int key) {
+            return doubleLasts[key];
+        }
+
+        double doubleMin(int key) {
+            return doubleMins[key];
+        }
+
+        double doubleMax(int key) {
+            return doubleMaxes[key];
+        }
+
+        long longValue(int key) {
+            return longLasts[key];
+        }
+
+        long longMin(int key) {
+            return longMins[key];
+        }
+
+        long longMax(int key) {
+            return longMaxes[key];
+        }
+    }
+}
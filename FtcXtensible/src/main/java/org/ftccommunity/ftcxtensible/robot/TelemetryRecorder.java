@@ -0,0 +1,340 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import android.util.Log;
+
+import com.google.common.base.Charsets;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.ftccommunity.ftcxtensible.robot.TelemetryRecording.DEFINE;
+import static org.ftccommunity.ftcxtensible.robot.TelemetryRecording.DOUBLE;
+import static org.ftccommunity.ftcxtensible.robot.TelemetryRecording.LINE;
+import static org.ftccommunity.ftcxtensible.robot.TelemetryRecording.LONG;
+import static org.ftccommunity.ftcxtensible.robot.TelemetryRecording.TEXT;
+
+/**
+ * Records every value published to the telemetry into a file, see {@link TelemetryRecording} for
+ * the format. {@link #capture(TelemetryBuffer.Frame)} runs on the thread that publishes, and only
+ * copies the changes of the frame into arrays that were allocated up front; a background thread
+ * encodes and writes them. Writes from threads other than the owner are captured by the sender
+ * as it drains them, a lock keeps the two apart but is only contended when both have
+ * something. If the writer falls behind far enough that the arrays fill up, changes
+ * are dropped and counted rather than making the loop wait.
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+final class TelemetryRecorder {
+    static final int DEFAULT_CAPACITY = 4096;
+    private static final String TAG = "TELEMETRY_RECORDER::";
+    private static final long WRITE_PERIOD = TimeUnit.MILLISECONDS.toNanos(100);
+    // Persistent data has a name rather than a registered key
+    private static final byte NAMED = -1;
+
+    private final String[] keyNames;
+    private final int mask;
+    private final long[] times;
+    private final byte[] kinds;
+    private final int[] keys;
+    private final String[] texts;
+    private final String[] names;
+    private final double[] doubles;
+    private final long[] longs;
+    private volatile long tail;
+    private volatile long head;
+    private volatile long dropped;
+
+    private final DataOutputStream out;
+    private final Thread writer;
+    private volatile boolean running;
+    private volatile boolean sleeping;
+    private volatile Exception failure;
+
+    // Only touched by the writer
+    private final long startNanos;
+    private final HashMap<String, Integer> ids;
+    private int[] handleIds;
+    private long[] previous;
+    private long lastMicros;
+
+    /**
+     * Starts recording to a file
+     *
+     * @param file     where to record to, it is overwritten
+     * @param keyNames the names of the registered keys, by handle
+     * @param capacity how many changes can wait to be written, rounded up to a power of two
+     * @throws IOException if the file can't be created
+     */
+    TelemetryRecorder(@NotNull File file, @NotNull String[] keyNames, int capacity) throws IOException {
+        checkArgument(capacity > 1 && capacity <= 1 << 20, "The capacity must be between 2 and 2^20");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        this.keyNames = checkNotNull(keyNames);
+        mask = size - 1;
+        times = new long[size];
+        kinds = new byte[size];
+        keys = new int[size];
+        texts = new String[size];
+        names = new String[size];
+        doubles = new double[size];
+        longs = new long[size];
+
+        ids = new HashMap<>();
+        handleIds = new int[keyNames.length];
+        Arrays.fill(handleIds, -1);
+        previous = new long[16];
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(checkNotNull(file)), 8192));
+        startNanos = System.nanoTime();
+        out.write(TelemetryRecording.MAGIC);
+        out.writeLong(System.currentTimeMillis());
+
+        running = true;
+        writer = new Thread(new Writer(), "Xtensible Telemetry Recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Copies everything in a frame that is about to be published, this is called by the thread
+     * that owns the telemetry buffer and by the sender for writes from other threads
+     *
+     * @param frame the frame being published
+     */
+    synchronized void capture(@NotNull TelemetryBuffer.Frame frame) {
+        if (!running) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long position = tail;
+        long limit = head + times.length;
+        int lost = 0;
+        for (int i = 0; i < frame.changedSize(); i++) {
+            if (position == limit) {
+                lost++;
+                continue;
+            }
+
+            int key = frame.changedKey(i);
+            int index = (int) (position++ & mask);
+            times[index] = now;
+            keys[index] = key;
+            byte kind = frame.kind(key);
+            if (kind == TelemetryBuffer.DOUBLE) {
+                kinds[index] = DOUBLE;
+                doubles[index] = frame.doubleValue(key);
+            } else if (kind == TelemetryBuffer.LONG) {
+                kinds[index] = LONG;
+                longs[index] = frame.longValue(key);
+            } else {
+                kinds[index] = TEXT;
+                texts[index] = frame.value(key);
+            }
+        }
+        for (int i = 0; i < frame.lineCount(); i++) {
+            if (position == limit) {
+                lost++;
+                continue;
+            }
+
+            int index = (int) (position++ & mask);
+            times[index] = now;
+            kinds[index] = LINE;
+            texts[index] = frame.line(i);
+        }
+        for (int i = 0; i < frame.persistentSize(); i++) {
+            if (position == limit) {
+                lost++;
+                continue;
+            }
+
+            int index = (int) (position++ & mask);
+            times[index] = now;
+            kinds[index] = NAMED;
+            names[index] = frame.persistentTag(i);
+            texts[index] = frame.persistentMessage(i);
+        }
+
+        if (lost > 0) {
+            dropped += lost;
+        }
+        if (position != tail) {
+            tail = position;
+            if (sleeping && position - head > times.length / 2) {
+                LockSupport.unpark(writer);
+            }
+        }
+    }
+
+    /**
+     * Gets how many changes were dropped because the writer fell behind
+     *
+     * @return the number of changes dropped
+     */
+    long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Writes out what is left and closes the file
+     *
+     * @throws IOException if the recording couldn't be written
+     */
+    void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        Exception cause = failure;
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause != null) {
+            throw new IOException("The telemetry recording failed", cause);
+        }
+    }
+
+    /**
+     * Encodes every change captured so far, this is only called by the writer
+     */
+    private void drain() throws IOException {
+        long end = tail;
+        for (long position = head; position < end; position++) {
+            int index = (int) (position & mask);
+            long micros = TimeUnit.NANOSECONDS.toMicros(times[index] - startNanos);
+            long delta = Math.max(0, micros - lastMicros);
+            lastMicros = Math.max(lastMicros, micros);
+
+            byte kind = kinds[index];
+            if (kind == LINE) {
+                out.write(LINE);
+                writeVarint(delta);
+                writeString(texts[index]);
+            } else {
+                int id = kind == NAMED ? id(names[index]) : id(keys[index]);
+                out.write(kind == NAMED ? TEXT : kind);
+                writeVarint(delta);
+                writeVarint(id);
+                if (kind == DOUBLE) {
+                    long bits = Double.doubleToRawLongBits(doubles[index]);
+                    writeVarint(bits ^ previous[id]);
+                    previous[id] = bits;
+                } else if (kind == LONG) {
+                    long value = longs[index];
+                    long difference = value - previous[id];
+                    writeVarint((difference << 1) ^ (difference >> 63));
+                    previous[id] = value;
+                } else {
+                    writeString(texts[index]);
+                }
+            }
+
+            texts[index] = null;
+            names[index] = null;
+        }
+        head = end;
+    }
+
+    private int id(int handle) throws IOException {
+        int id = handleIds[handle];
+        if (id < 0) {
+            id = id(keyNames[handle]);
+            handleIds[handle] = id;
+        }
+        return id;
+    }
+
+    /**
+     * Gets the id of a name in the string table, adding it to the table the first time
+     */
+    private int id(String name) throws IOException {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        int next = ids.size();
+        ids.put(name, next);
+        if (next == previous.length) {
+            previous = Arrays.copyOf(previous, next * 2);
+        }
+        out.write(DEFINE);
+        writeVarint(next);
+        writeString(name);
+        return next;
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes);
+    }
+
+    private class Writer implements Runnable {
+        @Override
+        public void run() {
+            try {
+                try {
+                    while (running) {
+                        sleeping = true;
+                        LockSupport.parkNanos(this, WRITE_PERIOD);
+                        sleeping = false;
+                        drain();
+                        out.flush();
+                    }
+                    drain();
+                } finally {
+                    out.close();
+                }
+            } catch (IOException | RuntimeException ex) {
+                failure = ex;
+                running = false;
+                Log.e(TAG, "The telemetry recording failed", ex);
+            }
+        }
+    }
+}
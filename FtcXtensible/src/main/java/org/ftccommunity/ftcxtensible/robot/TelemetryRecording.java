@@ -0,0 +1,205 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import com.google.common.base.Charsets;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads telemetry recordings made with {@link ExtensibleTelemetry#startRecording(java.io.File)}.
+ * A recording is the magic {@code XTR1} and the wall clock time it started at, in milliseconds
+ * since the epoch, followed by records that each start with a type byte:
+ * <pre>
+ * DEFINE  varint id, string name         adds a key to the string table, ids count up from 0
+ * TEXT    varint dt, varint id, string   a text value of a key
+ * DOUBLE  varint dt, varint id, varint   the bits of the value XOR the bits of the key's last value
+ * LONG    varint dt, varint id, varint   the zigzag encoded difference from the key's last value
+ * LINE    varint dt, string              a line of data, which has no key
+ * </pre>
+ * <p>
+ * {@code dt} is the time since the previous record, in microseconds of a monotonic clock, and
+ * strings are a varint length followed by that many bytes of UTF-8.</p>
+ * <p>
+ * This runs on a regular JVM; {@link #main(String[])} converts a recording to CSV.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+public final class TelemetryRecording {
+    static final byte[] MAGIC = {'X', 'T', 'R', '1'};
+    static final byte DEFINE = 1;
+    static final byte TEXT = 2;
+    static final byte DOUBLE = 3;
+    static final byte LONG = 4;
+    static final byte LINE = 5;
+
+    private TelemetryRecording() {
+        throw new AssertionError("No TelemetryRecording for you!");
+    }
+
+    /**
+     * Converts a recording to CSV, with a header and the columns {@code time_ms}, the time since
+     * the recording started, {@code key} and {@code value}
+     *
+     * @param in  the recording
+     * @param csv where to write the CSV to
+     * @return the number of values converted
+     * @throws IOException if the recording is malformed, or either stream fails
+     */
+    public static long toCsv(@NotNull InputStream in, @NotNull Writer csv) throws IOException {
+        DataInputStream data = new DataInputStream(checkNotNull(in));
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a telemetry recording");
+        }
+        data.readLong();
+
+        csv.write("time_ms,key,value\n");
+        ArrayList<String> names = new ArrayList<>();
+        long[] previous = new long[16];
+        long micros = 0;
+        long count = 0;
+        int type;
+        while ((type = data.read()) >= 0) {
+            if (type == DEFINE) {
+                int id = (int) readVarint(data);
+                if (id != names.size()) {
+                    throw new IOException("Key " + id + " is out of order");
+                }
+                names.add(readString(data));
+                if (id == previous.length) {
+                    previous = Arrays.copyOf(previous, id * 2);
+                }
+                continue;
+            }
+
+            micros += readVarint(data);
+            String key;
+            String value;
+            if (type == LINE) {
+                key = "";
+                value = readString(data);
+            } else {
+                int id = (int) readVarint(data);
+                if (id < 0 || id >= names.size()) {
+                    throw new IOException("Key " + id + " was never defined");
+                }
+                key = names.get(id);
+                if (type == TEXT) {
+                    value = readString(data);
+                } else if (type == DOUBLE) {
+                    previous[id] ^= readVarint(data);
+                    value = Double.toString(Double.longBitsToDouble(previous[id]));
+                } else if (type == LONG) {
+                    long zigzag = readVarint(data);
+                    previous[id] += (zigzag >>> 1) ^ -(zigzag & 1);
+                    value = Long.toString(previous[id]);
+                } else {
+                    throw new IOException("Unknown record type " + type);
+                }
+            }
+
+            csv.write(String.format(Locale.US, "%d.%03d", micros / 1000, micros % 1000));
+            csv.write(',');
+            csv.write(escape(key));
+            csv.write(',');
+            csv.write(escape(value));
+            csv.write('\n');
+            count++;
+        }
+
+        csv.flush();
+        return count;
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("The recording ends in the middle of a record");
+            }
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        long length = readVarint(in);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Malformed string length");
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static String escape(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Converts a recording to CSV
+     *
+     * @param args the recording, and optionally where to write the CSV; it is written to standard
+     *             out otherwise
+     * @throws IOException if the recording can't be converted
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: TelemetryRecording <recording> [output.csv]");
+            System.exit(1);
+        }
+
+        InputStream in = new BufferedInputStream(new FileInputStream(args[0]));
+        try {
+            Writer out = args.length > 1 ? new PrintWriter(args[1], "UTF-8") :
+                    new OutputStreamWriter(System.out, Charsets.UTF_8);
+            try {
+                toCsv(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hashed timing wheel that dispatches {@link ExtensibleLoopManager.Registration}s on the loop
+ * they are due. Each registration is linked into the slot for <code>due % slots</code>, so advancing
+ * the wheel by one loop only visits the registrations that are (almost always) due on that loop.
+ * Registering and unregistering are both O(1); neither of them, nor advancing, allocates once the
+ * wheel has been sized.
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+final class TimingWheel {
+    private static final int MIN_SLOTS = 16;
+    private static final int MAX_SLOTS = 1024;
+
+    private final ArrayList<ExtensibleLoopManager.Registration> due;
+    private ExtensibleLoopManager.Registration[] slots;
+    private int mask;
+    private int cursor;
+    private int size;
+    // Registrations removed while they were in the due list, they are left there until it is read
+    private int removedDue;
+
+    TimingWheel() {
+        due = new ArrayList<>();
+        slots = new ExtensibleLoopManager.Registration[MIN_SLOTS];
+        mask = MIN_SLOTS - 1;
+        cursor = 0;
+    }
+
+    /**
+     * Gets the last loop this wheel was advanced to
+     *
+     * @return the last loop number passed to {@link #advance(int)}
+     */
+    int cursor() {
+        return cursor;
+    }
+
+    /**
+     * Schedules a registration for the first loop after the cursor that it is due on. A one shot
+     * registration for a loop that has already passed is never scheduled.
+     *
+     * @param registration the registration to add
+     * @return {@code true} if the registration will run at some point, otherwise {@code false}
+     */
+    boolean add(ExtensibleLoopManager.Registration registration) {
+        if (registration.period > 0) {
+            registration.due = nextMultiple(cursor, registration.period);
+            if (registration.period > slots.length && slots.length < MAX_SLOTS) {
+                resize(Math.min(MAX_SLOTS, Integer.highestOneBit(registration.period - 1) << 1));
+            }
+        } else {
+            registration.due = registration.loopNumber;
+            if (registration.due <= cursor) {
+                return false;
+            }
+        }
+
+        link(registration);
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes a registration from this wheel, this can be called for registrations that have
+     * already been removed
+     *
+     * @param registration the registration to remove
+     */
+    void remove(ExtensibleLoopManager.Registration registration) {
+        if (registration.wheel != this) {
+            return;
+        }
+
+        unlink(registration);
+        size--;
+        // Finding it in the due list would take a scan, so that waits until the list is read again
+        registration.removed = true;
+        removedDue++;
+    }
+
+    /**
+     * Advances the wheel to the given loop, and gets the registrations due on that loop, in
+     * order of registration. Loops skipped between the last call and this one are passed over
+     * without their registrations being returned. Calling this again for the same loop returns
+     * the same registrations.
+     *
+     * @param loop the loop number to advance to
+     * @return the registrations due; this list is reused and must not be modified
+     */
+    List<ExtensibleLoopManager.Registration> advance(int loop) {
+        if (loop == cursor) {
+            if (removedDue > 0) {
+                purgeRemoved();
+            }
+            return due;
+        }
+
+        due.clear();
+        removedDue = 0;
+        if (loop < cursor || loop - cursor > slots.length) {
+            resync(loop - 1);
+        }
+
+        while (cursor < loop) {
+            cursor++;
+            fire(cursor, cursor == loop);
+        }
+
+        return due;
+    }
+
+    private void fire(int loop, boolean collect) {
+        ExtensibleLoopManager.Registration registration = slots[loop & mask];
+        slots[loop & mask] = null;
+        while (registration != null) {
+            ExtensibleLoopManager.Registration next = registration.next;
+            registration.next = null;
+            registration.previous = null;
+            registration.wheel = null;
+            if (registration.due != loop) {
+                link(registration);
+            } else {
+                if (collect) {
+                    insertDue(registration);
+                }
+
+                if (registration.period > 0) {
+                    registration.due = loop + registration.period;
+                    link(registration);
+                } else {
+                    size--;
+                    registration.finished();
+                }
+            }
+
+            registration = next;
+        }
+    }
+
+    private void purgeRemoved() {
+        int kept = 0;
+        for (int i = 0; i < due.size(); i++) {
+            ExtensibleLoopManager.Registration registration = due.get(i);
+            if (!registration.removed) {
+                due.set(kept++, registration);
+            }
+        }
+        while (due.size() > kept) {
+            due.remove(due.size() - 1);
+        }
+        removedDue = 0;
+    }
+
+    private void insertDue(ExtensibleLoopManager.Registration registration) {
+        int index = due.size();
+        while (index > 0 && due.get(index - 1).sequence > registration.sequence) {
+            index--;
+        }
+        due.add(index, registration);
+    }
+
+    /**
+     * Rebuilds every slot, so each registration is due on the first loop after the given loop.
+     * This is used when the wheel jumps more than one revolution at once.
+     */
+    private void resync(int loop) {
+        ArrayList<ExtensibleLoopManager.Registration> registrations = drain();
+        cursor = loop;
+        for (ExtensibleLoopManager.Registration registration : registrations) {
+            if (registration.period > 0) {
+                registration.due = nextMultiple(loop, registration.period);
+            } else if (registration.due <= loop) {
+                size--;
+                registration.finished();
+                continue;
+            }
+
+            link(registration);
+        }
+    }
+
+    private void resize(int count) {
+        ArrayList<ExtensibleLoopManager.Registration> registrations = drain();
+        slots = new ExtensibleLoopManager.Registration[count];
+        mask = count - 1;
+        for (ExtensibleLoopManager.Registration registration : registrations) {
+            link(registration);
+        }
+    }
+
+    private ArrayList<ExtensibleLoopManager.Registration> drain() {
+        ArrayList<ExtensibleLoopManager.Registration> registrations = new ArrayList<>(size);
+        for (int i = 0; i < slots.length; i++) {
+            ExtensibleLoopManager.Registration registration = slots[i];
+            while (registration != null) {
+                ExtensibleLoopManager.Registration next = registration.next;
+                registration.next = null;
+                registration.previous = null;
+                registration.wheel = null;
+                registrations.add(registration);
+                registration = next;
+            }
+            slots[i] = null;
+        }
+
+        return registrations;
+    }
+
+    private void link(ExtensibleLoopManager.Registration registration) {
+        int slot = registration.due & mask;
+        registration.previous = null;
+        registration.next = slots[slot];
+        if (slots[slot] != null) {
+            slots[slot].previous = registration;
+        }
+        slots[slot] = registration;
+        registration.wheel = this;
+    }
+
+    private void unlink(ExtensibleLoopManager.Registration registration) {
+        if (registration.previous != null) {
+            registration.previous.next = registration.next;
+        } else {
+            slots[registration.due & mask] = registration.next;
+        }
+
+        if (registration.next != null) {
+            registration.next.previous = registration.previous;
+        }
+
+        registration.next = null;
+        registration.previous = null;
+        registration.wheel = null;
+    }
+
+    private static int nextMultiple(int loop, int period) {
+        return (loop / period + 1) * period;
+    }
+}
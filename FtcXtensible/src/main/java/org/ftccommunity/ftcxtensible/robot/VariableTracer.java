@@ -0,0 +1,306 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Traces the fields of an OpMode every loop cycle. The fields are resolved once, when the tracer
+ * is created, into a plan of typed accessors; every non-transient field that is a primitive, or a
+ * boxed primitive, is traced; other fields are skipped. Values are stored by column in a ring
+ * buffer of a fixed number of rows, so logging doesn't box or allocate and the memory used
+ * doesn't grow with the match.
+ * <p>
+ * The trace is written with {@link #write(OutputStream)} in a compact binary format: the magic
+ * {@code XVT1}, the field count, each field's name and {@link Type}, the row count, then each
+ * row, oldest first, as the loop number, the time in nanoseconds, and each field's value at its
+ * natural width.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+final class VariableTracer {
+    /**
+     * The default number of loop cycles kept
+     */
+    static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAGIC = 0x58565431; // XVT1
+
+    private final Object target;
+    private final Field[] fields;
+    private final Type[] types;
+    private final int capacity;
+    private final long[] values;
+    private final int[] loops;
+    private final long[] times;
+    private long count;
+
+    VariableTracer(@NotNull Object target) {
+        this(target, DEFAULT_CAPACITY);
+    }
+
+    VariableTracer(@NotNull Object target, int capacity) {
+        checkArgument(capacity > 0, "The capacity must be positive");
+        this.target = checkNotNull(target);
+        this.capacity = capacity;
+
+        ArrayList<Field> traced = new ArrayList<>();
+        ArrayList<Type> tracedTypes = new ArrayList<>();
+        for (Field field : target.getClass().getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isTransient(modifiers) || Modifier.isStatic(modifiers) || field.isSynthetic()) {
+                continue;
+            }
+
+            Type type = Type.of(field.getType());
+            if (type == null) {
+                continue;
+            }
+
+            field.setAccessible(true);
+            traced.add(field);
+            tracedTypes.add(type);
+        }
+
+        fields = traced.toArray(new Field[traced.size()]);
+        types = tracedTypes.toArray(new Type[tracedTypes.size()]);
+        values = new long[fields.length * capacity];
+        loops = new int[capacity];
+        times = new long[capacity];
+    }
+
+    /**
+     * Records the current value of every traced field, overwriting the oldest row once the
+     * buffer is full
+     *
+     * @param loop the current loop number
+     * @param time the current time, from {@link System#nanoTime()}
+     */
+    void log(int loop, long time) {
+        int row = (int) (count % capacity);
+        loops[row] = loop;
+        times[row] = time;
+        for (int i = 0; i < fields.length; i++) {
+            try {
+                values[i * capacity + row] = read(fields[i], types[i]);
+            } catch (IllegalAccessException | IllegalArgumentException e) {
+                values[i * capacity + row] = 0;
+            }
+        }
+        count++;
+    }
+
+    private long read(Field field, Type type) throws IllegalAccessException {
+        switch (type) {
+            case BOOLEAN:
+                return field.getBoolean(target) ? 1 : 0;
+            case BYTE:
+                return field.getByte(target);
+            case SHORT:
+                return field.getShort(target);
+            case CHAR:
+                return field.getChar(target);
+            case INT:
+                return field.getInt(target);
+            case LONG:
+                return field.getLong(target);
+            case FLOAT:
+                return Float.floatToRawIntBits(field.getFloat(target));
+            case DOUBLE:
+                return Double.doubleToRawLongBits(field.getDouble(target));
+            default:
+                return readBoxed(field.get(target));
+        }
+    }
+
+    private static long readBoxed(Object value) {
+        double result;
+        if (value instanceof Number) {
+            result = ((Number) value).doubleValue();
+        } else if (value instanceof Boolean) {
+            result = (Boolean) value ? 1 : 0;
+        } else if (value instanceof Character) {
+            result = (Character) value;
+        } else {
+            // null
+            result = Double.NaN;
+        }
+
+        return Double.doubleToRawLongBits(result);
+    }
+
+    /**
+     * Gets how many rows are held, at most the capacity
+     *
+     * @return the number of rows
+     */
+    int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    int getFieldCount() {
+        return fields.length;
+    }
+
+    @NotNull
+    String getName(int field) {
+        return fields[checkElementIndex(field, fields.length)].getName();
+    }
+
+    /**
+     * Gets a traced value
+     *
+     * @param field the index of the field
+     * @param row   the row, zero is the oldest row held
+     * @return the value of the field in that row
+     */
+    double get(int field, int row) {
+        checkElementIndex(field, fields.length);
+        long raw = values[field * capacity + index(row)];
+        switch (types[field]) {
+            case FLOAT:
+                return Float.intBitsToFloat((int) raw);
+            case DOUBLE:
+            case BOXED:
+                return Double.longBitsToDouble(raw);
+            default:
+                return raw;
+        }
+    }
+
+    int getLoop(int row) {
+        return loops[index(row)];
+    }
+
+    private int index(int row) {
+        checkElementIndex(row, size());
+        return (int) ((count - size() + row) % capacity);
+    }
+
+    /**
+     * Writes every held row, oldest first
+     *
+     * @param stream where to write the trace, this is not closed
+     * @throws IOException if the stream can't be written to
+     */
+    void write(@NotNull OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeShort(fields.length);
+        for (int i = 0; i < fields.length; i++) {
+            out.writeUTF(fields[i].getName());
+            out.writeByte(types[i].ordinal());
+        }
+
+        int size = size();
+        out.writeInt(size);
+        for (int row = 0; row < size; row++) {
+            int index = index(row);
+            out.writeInt(loops[index]);
+            out.writeLong(times[index]);
+            for (int i = 0; i < fields.length; i++) {
+                long value = values[i * capacity + index];
+                switch (types[i].width) {
+                    case 1:
+                        out.writeByte((int) value);
+                        break;
+                    case 2:
+                        out.writeShort((int) value);
+                        break;
+                    case 4:
+                        out.writeInt((int) value);
+                        break;
+                    default:
+                        out.writeLong(value);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes every held row to a file
+     *
+     * @param file the file to write
+     * @throws IOException if the file can't be written
+     */
+    void dump(@NotNull File file) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            write(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * How a traced field is read and stored
+     */
+    enum Type {
+        BOOLEAN(1), BYTE(1), SHORT(2), CHAR(2), INT(4), LONG(8), FLOAT(4), DOUBLE(8),
+        /**
+         * A boxed primitive, stored as a double
+         */
+        BOXED(8);
+
+        private final int width;
+
+        Type(int width) {
+            this.width = width;
+        }
+
+        static Type of(Class<?> type) {
+            if (type == boolean.class) {
+                return BOOLEAN;
+            } else if (type == byte.class) {
+                return BYTE;
+            } else if (type == short.class) {
+                return SHORT;
+            } else if (type == char.class) {
+                return CHAR;
+            } else if (type == int.class) {
+                return INT;
+            } else if (type == long.class) {
+                return LONG;
+            } else if (type == float.class) {
+                return FLOAT;
+            } else if (type == double.class) {
+                return DOUBLE;
+            } else if (Number.class.isAssignableFrom(type) || type == Boolean.class ||
+                    type == Character.class) {
+                return BOXED;
+            }
+
+            return null;
+        }
+    }
+}
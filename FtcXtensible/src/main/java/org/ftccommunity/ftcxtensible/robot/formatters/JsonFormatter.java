@@ -19,18 +19,29 @@
 package org.ftccommunity.ftcxtensible.robot.formatters;
 
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 import org.ftccommunity.ftcxtensible.internal.Alpha;
 import org.ftccommunity.ftcxtensible.internal.NotDocumentedWell;
+import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.util.logging.Formatter;
 import java.util.logging.LogRecord;
 
+/**
+ * Formats log records as one JSON object each, for example
+ * {@code {"level":"INFO","time":1451606400000,"logger":"robot","message":"Hello"}}, where the time
+ * is in milliseconds since the epoch.
+ * <p>
+ * Records are written with a {@link JsonLogWriter}, so formatting into a reused
+ * {@link StringBuilder} or {@link Appendable} with {@link #format(LogRecord, Appendable)} doesn't
+ * allocate, unless the record has parameters to fill in or a resource bundle to localize with.</p>
+ */
 @NotDocumentedWell
 @Alpha
 public class JsonFormatter extends Formatter {
+    private final StringBuilder builder = new StringBuilder();
+    private final JsonLogWriter writer = new JsonLogWriter();
+
     /**
      * Converts stopMode {@link LogRecord} object into stopMode string representation. The resulted
      * string is usually localized and includes the message field of the record.
@@ -39,9 +50,35 @@ public class JsonFormatter extends Formatter {
      * @return the formatted string.
      */
     @Override
-    public String format(LogRecord r) {
-        Gson gson = new GsonBuilder().create();
-        JSON json = JSON.fromLogRecord(r, formatMessage(r));
-        return gson.toJson(json);
+    public synchronized String format(LogRecord r) {
+        builder.setLength(0);
+        try {
+            format(r, builder);
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes a log record as a JSON object to the given target
+     *
+     * @param r   the record to write
+     * @param out where to write it
+     * @throws IOException if the target can't be written to
+     */
+    public synchronized void format(@NotNull LogRecord r, @NotNull Appendable out) throws IOException {
+        // Only a plain message can skip formatMessage(), it also localizes with the resource bundle
+        Object[] parameters = r.getParameters();
+        String message = r.getResourceBundle() == null && (parameters == null || parameters.length == 0) ?
+                r.getMessage() : formatMessage(r);
+        JsonLogWriter json = writer.reset(out);
+        json.beginObject()
+                .member("level", r.getLevel().getName())
+                .member("time", r.getMillis());
+        if (r.getLoggerName() != null) {
+            json.member("logger", r.getLoggerName());
+        }
+        json.member("message", message).endObject();
     }
 }
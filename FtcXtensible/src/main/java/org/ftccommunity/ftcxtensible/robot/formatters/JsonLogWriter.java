@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot.formatters;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Writes flat JSON objects straight to an {@link Appendable}, a token at a time. There is no
+ * reflection and nothing is built up in between, so writing a record to a reused
+ * {@link StringBuilder} does not allocate at all. A writer can be pointed at a new target with
+ * {@link #reset(Appendable)} and reused.
+ * <p>
+ * Only what log records need is supported: one object at a time, with string, number and
+ * boolean values.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+public final class JsonLogWriter {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private Appendable out;
+    private boolean inObject;
+    private boolean needsComma;
+
+    /**
+     * Creates a writer, it must be given a target with {@link #reset(Appendable)}
+     */
+    public JsonLogWriter() {
+    }
+
+    /**
+     * Creates a writer that writes to the given target
+     *
+     * @param out where to write the JSON
+     */
+    public JsonLogWriter(@NotNull Appendable out) {
+        reset(out);
+    }
+
+    /**
+     * Points this writer at a new target, dropping any object that wasn't finished
+     *
+     * @param out where to write the JSON
+     * @return this writer
+     */
+    @NotNull
+    public JsonLogWriter reset(@NotNull Appendable out) {
+        this.out = checkNotNull(out);
+        inObject = false;
+        needsComma = false;
+        return this;
+    }
+
+    @NotNull
+    public JsonLogWriter beginObject() throws IOException {
+        checkState(out != null && !inObject, "An object was already started");
+        out.append('{');
+        inObject = true;
+        needsComma = false;
+        return this;
+    }
+
+    @NotNull
+    public JsonLogWriter endObject() throws IOException {
+        checkState(inObject, "No object was started");
+        out.append('}');
+        inObject = false;
+        return this;
+    }
+
+    /**
+     * Writes a string member, {@code null} values are written as {@code null}
+     *
+     * @param name  the name of the member
+     * @param value the value of the member
+     * @return this writer
+     * @throws IOException if the target can't be written to
+     */
+    @NotNull
+    public JsonLogWriter member(@NotNull String name, @Nullable CharSequence value) throws IOException {
+        name(name);
+        if (value == null) {
+            out.append("null");
+        } else {
+            quote(out, value);
+        }
+        return this;
+    }
+
+    @NotNull
+    public JsonLogWriter member(@NotNull String name, long value) throws IOException {
+        name(name);
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(value);
+        } else {
+            out.append(Long.toString(value));
+        }
+        return this;
+    }
+
+    @NotNull
+    public JsonLogWriter member(@NotNull String name, boolean value) throws IOException {
+        name(name);
+        out.append(value ? "true" : "false");
+        return this;
+    }
+
+    private void name(String name) throws IOException {
+        checkState(inObject, "No object was started");
+        if (needsComma) {
+            out.append(',');
+        }
+        quote(out, name);
+        out.append(':');
+        needsComma = true;
+    }
+
+    /**
+     * Writes a JSON string, quoted and escaped
+     *
+     * @param out   where to write the string
+     * @param value the string
+     * @throws IOException if the target can't be written to
+     */
+    public static void quote(@NotNull Appendable out, @NotNull CharSequence value) throws IOException {
+        out.append('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String escape;
+            if (c == '"') {
+                escape = "\\\"";
+            } else if (c == '\\') {
+                escape = "\\\\";
+            } else if (c == '\n') {
+                escape = "\\n";
+            } else if (c == '\r') {
+                escape = "\\r";
+            } else if (c == '\t') {
+                escape = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                escape = null;
+            } else {
+                continue;
+            }
+
+            // Copy the run of plain characters before this one in one go
+            if (start < i) {
+                out.append(value, start, i);
+            }
+            if (escape != null) {
+                out.append(escape);
+            } else {
+                out.append("\\u").append(HEX[c >> 12]).append(HEX[(c >> 8) & 0xf])
+                        .append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+            }
+            start = i + 1;
+        }
+        if (start < length) {
+            out.append(value, start, length);
+        }
+        out.append('"');
+    }
+}
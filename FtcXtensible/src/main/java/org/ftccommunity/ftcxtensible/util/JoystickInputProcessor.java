@@ -25,6 +25,7 @@ import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
 
+import org.ftccommunity.ftcxtensible.robot.ExtensibleGamepad;
 import org.ftccommunity.ftcxtensible.robot.RobotContext;
 import org.jetbrains.annotations.NotNull;
 
@@ -128,18 +129,19 @@ public class JoystickInputProcessor {
             context.telemetry().data(inputButtons[i], answers.get(i));
         }
 
+        ExtensibleGamepad gamepad = context.gamepad1();
         int index = -1;
-        if (context.gamepad1().isAPressed()) {
+        if (gamepad.wasPressed(ExtensibleGamepad.BUTTON_A)) {
             index = 0;
-        } else if (context.gamepad1().isBPressed()) {
+        } else if (gamepad.wasPressed(ExtensibleGamepad.BUTTON_B)) {
             index = 1;
-        } else if (context.gamepad1().isXPressed()) {
+        } else if (gamepad.wasPressed(ExtensibleGamepad.BUTTON_X)) {
             index = 2;
-        } else if (context.gamepad1().isYPressed()) {
+        } else if (gamepad.wasPressed(ExtensibleGamepad.BUTTON_Y)) {
             index = 3;
-        } else if (context.gamepad1().getDpad().isUpPressed()) {
+        } else if (gamepad.wasPressed(ExtensibleGamepad.BUTTON_DPAD_UP)) {
             index = 4;
-        } else if (context.gamepad1().getDpad().isDownPressed()) {
+        } else if (gamepad.wasPressed(ExtensibleGamepad.BUTTON_DPAD_DOWN)) {
             index = 5;
         }
 
@@ -147,9 +149,9 @@ public class JoystickInputProcessor {
             joystickQuestion.handleResponse(answers.get(index));
         }
 
-        if (context.gamepad1().getDpad().isLeftPressed()) {
+        if (gamepad.wasPressed(ExtensibleGamepad.BUTTON_DPAD_LEFT)) {
             this.index = --this.index % questions.size();
-        } else if (context.gamepad1().getDpad().isRightPressed()) {
+        } else if (gamepad.wasPressed(ExtensibleGamepad.BUTTON_DPAD_RIGHT)) {
             this.index %= ++this.index % questions.size();
         }
     }
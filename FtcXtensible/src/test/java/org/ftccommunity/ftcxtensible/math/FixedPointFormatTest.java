@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.math;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FixedPointFormatTest {
+    private static String format(double value, int decimals) {
+        return FixedPointFormat.append(new StringBuilder(), value, decimals).toString();
+    }
+
+    @Test
+    public void testRounding() throws Exception {
+        assertEquals("3.142", format(Math.PI, 3));
+        assertEquals("3", format(Math.PI, 0));
+        assertEquals("0.005", format(0.005, 3));
+        assertEquals("1.000", format(0.9996, 3));
+        assertEquals("-2.50", format(-2.499, 2));
+        assertEquals("0.00", format(-0.001, 2));
+        assertEquals("12.000000001", format(12.000000001, 9));
+    }
+
+    @Test
+    public void testSpecialValues() throws Exception {
+        assertEquals("NaN", format(Double.NaN, 2));
+        assertEquals("Infinity", format(Double.POSITIVE_INFINITY, 2));
+        assertEquals("-Infinity", format(Double.NEGATIVE_INFINITY, 2));
+        assertEquals("1.0E300", format(1e300, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyDecimals() throws Exception {
+        format(1, FixedPointFormat.MAX_DECIMALS + 1);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.math;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    @Test
+    public void testSmallValuesAreExact() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 0; value < 128; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(128, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(0));
+        assertEquals(63, histogram.getValueAtPercentile(50));
+        assertEquals(64, histogram.getValueAtPercentile(50.5));
+        assertEquals(126, histogram.getValueAtPercentile(99));
+        assertEquals(127, histogram.getValueAtPercentile(100));
+        assertEquals(63.5, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void testSubBucketBoundaries() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 128 and 129 are the first values to share a sub-bucket, 130 starts the next one
+        histogram.record(128);
+        histogram.record(130);
+        histogram.record(1000);
+        assertEquals(129, histogram.getValueAtPercentile(33));
+        assertEquals(131, histogram.getValueAtPercentile(66));
+
+        // A percentile never reports more than the maximum or less than the minimum
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        histogram.reset();
+        histogram.record(128);
+        assertEquals(128, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testMagnitudeBoundaries() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(255);
+        histogram.record(256);
+        histogram.record(100000);
+        // 255 is the last value of its power of two; 256 starts a new one, with sub-buckets of 4
+        assertEquals(255, histogram.getValueAtPercentile(33));
+        assertEquals(259, histogram.getValueAtPercentile(66));
+    }
+
+    @Test
+    public void testPercentilesAreWithinTheBucketPrecision() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(42);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (Math.exp(random.nextDouble() * 20) * 1000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        double[] percentiles = {1, 10, 50, 90, 99, 99.9};
+        for (double percentile : percentiles) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + "%: " + actual + " < " + expected, actual >= expected);
+            assertTrue(percentile + "%: " + actual + " is too far from " + expected,
+                    actual - expected <= expected / 64);
+        }
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values[values.length - 1], histogram.getMax());
+    }
+
+    @Test
+    public void testOutOfRangeValuesAreClamped() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getMin());
+        assertEquals(MAX_VALUE, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(MAX_VALUE, histogram.getValueAtPercentile(100));
+        assertEquals(MAX_VALUE / 2.0, histogram.getMean(), 1);
+    }
+
+    @Test
+    public void testResetClearsEverything() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(12345);
+        histogram.record(678);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getValueAtPercentile(99));
+
+        histogram.record(50);
+        assertEquals(50, histogram.getMin());
+        assertEquals(50, histogram.getValueAtPercentile(99));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPercentileMustBeInRange() throws Exception {
+        new LatencyHistogram().getValueAtPercentile(100.5);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.networking.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventBufferTest {
+    @Test
+    public void testEventsComeOutInOrder() throws Exception {
+        EventBuffer buffer = new EventBuffer(3);
+        assertFalse(buffer.offer("a"));
+        assertFalse(buffer.offer("b"));
+        assertEquals("a", buffer.poll());
+        assertFalse(buffer.offer("c"));
+        assertFalse(buffer.offer("d"));
+        assertEquals("b", buffer.poll());
+        assertEquals("c", buffer.poll());
+        assertEquals("d", buffer.poll());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void testTheOldestEventsAreDropped() throws Exception {
+        EventBuffer buffer = new EventBuffer(2);
+        buffer.offer("1");
+        buffer.offer("2");
+        assertTrue(buffer.offer("3"));
+        assertTrue(buffer.offer("4"));
+        assertEquals(2, buffer.size());
+        assertEquals(2, buffer.getDropped());
+
+        assertEquals(2, buffer.takeUnreportedDrops());
+        assertEquals(0, buffer.takeUnreportedDrops());
+        assertEquals("3", buffer.poll());
+        assertEquals("4", buffer.poll());
+        assertEquals(2, buffer.getDropped());
+    }
+}
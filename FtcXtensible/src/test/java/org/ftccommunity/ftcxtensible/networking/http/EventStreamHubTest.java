@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.networking.http;
+
+import com.google.common.base.Charsets;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+import com.qualcomm.robotcore.robocol.Telemetry;
+
+import org.ftccommunity.ftcxtensible.robot.RobotContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.logging.Level;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.ReferenceCountUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventStreamHubTest {
+    private RobotContext context;
+    private EventStreamHub hub;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new RobotContext(new HardwareMap(), new Telemetry());
+        hub = new EventStreamHub(context, 2);
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        hub.open(channel.pipeline().firstContext());
+    }
+
+    @Test
+    public void testOpenStartsAnEventStream() throws Exception {
+        HttpResponse response = (HttpResponse) channel.readOutbound();
+        assertEquals(200, response.getStatus().code());
+        assertEquals("text/event-stream; charset=utf-8", response.headers().get(HttpHeaders.Names.CONTENT_TYPE));
+        assertTrue(HttpHeaders.isTransferEncodingChunked(response));
+        assertEquals("retry: 1000\n\n", readChunk());
+        assertNull(channel.readOutbound());
+        assertEquals(1, hub.getClients());
+    }
+
+    @Test
+    public void testTelemetryAndLogEventsAreFramed() throws Exception {
+        skipOpening();
+        hub.onData("SPEED", "0.5");
+        hub.onData(null, "LEFT 1");
+        channel.runPendingTasks();
+        assertEquals("event: telemetry\ndata: {\"key\":\"SPEED\",\"value\":\"0.5\"}\n\n", readChunk());
+        assertEquals("event: telemetry\ndata: {\"key\":null,\"value\":\"LEFT 1\"}\n\n", readChunk());
+        assertNull(channel.readOutbound());
+
+        // Skip whatever was logged while the context was created
+        hub.pollLog();
+        channel.runPendingTasks();
+        Object skipped;
+        while ((skipped = channel.readOutbound()) != null) {
+            ReferenceCountUtil.release(skipped);
+        }
+
+        context.status().log(Level.WARNING, "DRIVE", "stalled");
+        long sequence = context.status().logRing().lastSequence();
+        hub.pollLog();
+        channel.runPendingTasks();
+        String event = readChunk();
+        assertTrue(event, event.startsWith("id: " + sequence + "\nevent: log\ndata: {\"sequence\":" + sequence +
+                ",\"time\":"));
+        assertTrue(event, event.endsWith(",\"level\":\"WARNING\",\"tag\":\"DRIVE\",\"message\":\"stalled\"}\n\n"));
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testSlowClientsDropEventsUntilWritable() throws Exception {
+        skipOpening();
+        channel.config().setWriteBufferLowWaterMark(0);
+        channel.config().setWriteBufferHighWaterMark(1);
+
+        // Hold the channel back with a write that isn't flushed yet
+        channel.write(Unpooled.copiedBuffer("held", Charsets.UTF_8));
+        assertFalse(channel.isWritable());
+        for (int i = 0; i < 5; i++) {
+            hub.onData("KEY", Integer.toString(i));
+        }
+        channel.runPendingTasks();
+        ByteBuf held = (ByteBuf) channel.readOutbound();
+        assertEquals("held", held.toString(Charsets.UTF_8));
+        held.release();
+        assertEquals("event: dropped\ndata: 3\n\n", readChunk());
+        assertNull(channel.readOutbound());
+
+        // The two newest events were kept for when the channel can take them
+        assertTrue(channel.isWritable());
+        channel.config().setWriteBufferHighWaterMark(64 * 1024);
+        hub.writabilityChanged(channel);
+        channel.runPendingTasks();
+        assertEquals("event: telemetry\ndata: {\"key\":\"KEY\",\"value\":\"3\"}\n\n", readChunk());
+        assertEquals("event: telemetry\ndata: {\"key\":\"KEY\",\"value\":\"4\"}\n\n", readChunk());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testClosedChannelsAreForgotten() throws Exception {
+        skipOpening();
+        hub.closed(channel);
+        assertEquals(0, hub.getClients());
+        hub.onData("SPEED", "1");
+        channel.runPendingTasks();
+        assertNull(channel.readOutbound());
+    }
+
+    private void skipOpening() {
+        channel.readOutbound();
+        readChunk();
+    }
+
+    private String readChunk() {
+        HttpContent content = (HttpContent) channel.readOutbound();
+        try {
+            return content.content().toString(Charsets.UTF_8);
+        } finally {
+            content.release();
+        }
+    }
+}
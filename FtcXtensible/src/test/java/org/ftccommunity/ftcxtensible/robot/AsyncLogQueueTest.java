@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncLogQueueTest {
+    @Test
+    public void testMessagesAreFormattedByTheConsumer() throws Exception {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        AsyncLogQueue queue = new AsyncLogQueue(8, RobotLogger.OverflowPolicy.BLOCK, new AsyncLogQueue.Sink() {
+            @Override
+            public void write(RobotStatus status, long time, Level level, String tag, String message) {
+                messages.add(level.getName() + ' ' + tag + ' ' + message);
+                threads.add(Thread.currentThread());
+            }
+        }, "test logger");
+
+        queue.offer(null, Level.INFO, "A", "plain %d", 0, null, null);
+        queue.offer(null, Level.WARNING, "B", "speed %.2f", 1, 0.5, null);
+        queue.offer(null, Level.FINE, "C", "%s=%d", 2, "x", 3);
+        queue.offer(null, Level.SEVERE, "D", "bad %d", 1, "text", null);
+        assertTrue(queue.awaitDrained(1, TimeUnit.SECONDS));
+        queue.stop();
+
+        assertEquals("INFO A plain %d", messages.get(0));
+        assertEquals("WARNING B speed 0.50", messages.get(1));
+        assertEquals("FINE C x=3", messages.get(2));
+        assertEquals("SEVERE D bad %d text", messages.get(3));
+        assertFalse(threads.contains(Thread.currentThread()));
+        assertEquals(4, queue.getWritten());
+    }
+
+    @Test
+    public void testFullQueuePolicies() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        AsyncLogQueue queue = new AsyncLogQueue(2, RobotLogger.OverflowPolicy.DROP, new AsyncLogQueue.Sink() {
+            @Override
+            public void write(RobotStatus status, long time, Level level, String tag, String message) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "test logger");
+
+        // The consumer holds on to the first record, the next two fill the queue
+        assertTrue(queue.offer(null, Level.INFO, "T", "0", 0, null, null));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertTrue(queue.offer(null, Level.INFO, "T", "1", 0, null, null));
+        assertTrue(queue.offer(null, Level.INFO, "T", "2", 0, null, null));
+        assertFalse(queue.offer(null, Level.SEVERE, "T", "3", 0, null, null));
+        assertEquals(1, queue.getDropped());
+
+        queue.setPolicy(RobotLogger.OverflowPolicy.BLOCK_ON_ERRORS);
+        assertFalse(queue.offer(null, Level.INFO, "T", "4", 0, null, null));
+        assertEquals(2, queue.getDropped());
+
+        release.countDown();
+        assertTrue(queue.offer(null, Level.SEVERE, "T", "5", 0, null, null));
+        assertTrue(queue.awaitDrained(1, TimeUnit.SECONDS));
+        assertEquals(4, queue.getWritten());
+        queue.stop();
+    }
+
+    @Test
+    public void testManyProducersLoseNothing() throws Exception {
+        final int producers = 4;
+        final int perProducer = 5000;
+        final int[] lastSeen = new int[producers];
+        final int[] outOfOrder = new int[1];
+        final AsyncLogQueue queue = new AsyncLogQueue(64, RobotLogger.OverflowPolicy.BLOCK, new AsyncLogQueue.Sink() {
+            @Override
+            public void write(RobotStatus status, long time, Level level, String tag, String message) {
+                int producer = Integer.parseInt(tag);
+                int value = Integer.parseInt(message);
+                if (value != lastSeen[producer] + 1) {
+                    outOfOrder[0]++;
+                }
+                lastSeen[producer] = value;
+            }
+        }, "test logger");
+
+        Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            final String tag = Integer.toString(i);
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int value = 1; value <= perProducer; value++) {
+                        queue.offer(null, Level.INFO, tag, "%d", 1, value, null);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(queue.awaitDrained(5, TimeUnit.SECONDS));
+        queue.stop();
+        assertEquals(producers * perProducer, queue.getWritten());
+        assertEquals(0, queue.getDropped());
+        assertEquals(0, outOfOrder[0]);
+    }
+}
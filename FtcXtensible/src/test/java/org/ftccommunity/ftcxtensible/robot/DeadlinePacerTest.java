@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeadlinePacerTest {
+    private static final long PERIOD = TimeUnit.MILLISECONDS.toNanos(20);
+
+    @Test
+    public void testDisabledRunsEveryCall() throws Exception {
+        DeadlinePacer pacer = new DeadlinePacer();
+        assertTrue(pacer.begin(0));
+        assertTrue(pacer.begin(1));
+        assertTrue(pacer.shouldRunAssistants());
+        assertTrue(pacer.shouldSendTelemetry());
+    }
+
+    @Test
+    public void testTurnsAwayEarlyCalls() throws Exception {
+        DeadlinePacer pacer = new DeadlinePacer();
+        pacer.enable(20, TimeUnit.MILLISECONDS, DeadlinePacer.OverrunPolicy.SKIP_ASSISTANTS);
+
+        long now = 1000;
+        int ran = 0;
+        for (int i = 0; i < 1000; i++, now += PERIOD / 10) {
+            if (pacer.begin(now)) {
+                ran++;
+                assertEquals(PERIOD, pacer.getDeltaTime());
+                pacer.end(now + PERIOD / 4);
+            }
+        }
+
+        assertEquals(100, ran);
+        assertEquals(100, pacer.getCycles());
+        assertEquals(0, pacer.getMissedDeadlines());
+        assertEquals(0, pacer.getLateCycles());
+    }
+
+    @Test
+    public void testSkipAssistantsDropsMissedCycles() throws Exception {
+        DeadlinePacer pacer = new DeadlinePacer();
+        pacer.enable(20, TimeUnit.MILLISECONDS, DeadlinePacer.OverrunPolicy.SKIP_ASSISTANTS);
+
+        assertTrue(pacer.begin(0));
+        pacer.end(PERIOD * 3 + PERIOD / 2);
+        assertEquals(1, pacer.getMissedDeadlines());
+
+        assertTrue(pacer.begin(PERIOD * 3 + PERIOD / 2));
+        assertTrue(pacer.isLate());
+        assertFalse(pacer.shouldRunAssistants());
+        assertTrue(pacer.shouldSendTelemetry());
+        assertEquals(PERIOD * 3, pacer.getDeltaTime());
+        assertEquals(2, pacer.getSkippedCycles());
+        pacer.end(PERIOD * 3 + PERIOD / 2 + 1);
+
+        // Back on schedule at the next period boundary
+        assertFalse(pacer.begin(PERIOD * 4 - 1));
+        assertTrue(pacer.begin(PERIOD * 4));
+        assertFalse(pacer.isLate());
+        assertTrue(pacer.shouldRunAssistants());
+        assertEquals(PERIOD, pacer.getDeltaTime());
+    }
+
+    @Test
+    public void testDropTelemetryOnlyDropsTelemetry() throws Exception {
+        DeadlinePacer pacer = new DeadlinePacer();
+        pacer.enable(20, TimeUnit.MILLISECONDS, DeadlinePacer.OverrunPolicy.DROP_TELEMETRY);
+
+        assertTrue(pacer.begin(0));
+        pacer.end(PERIOD * 2);
+        assertTrue(pacer.begin(PERIOD * 2));
+        assertTrue(pacer.isLate());
+        assertTrue(pacer.shouldRunAssistants());
+        assertFalse(pacer.shouldSendTelemetry());
+    }
+
+    @Test
+    public void testCatchUpRunsEveryMissedCycle() throws Exception {
+        DeadlinePacer pacer = new DeadlinePacer();
+        pacer.enable(20, TimeUnit.MILLISECONDS, DeadlinePacer.OverrunPolicy.CATCH_UP);
+
+        assertTrue(pacer.begin(0));
+        long now = PERIOD * 3 + PERIOD / 2;
+        pacer.end(now);
+
+        // The three missed releases run back to back, each with the nominal dt
+        int caughtUp = 0;
+        while (pacer.begin(now)) {
+            assertEquals(PERIOD, pacer.getDeltaTime());
+            assertTrue(pacer.shouldRunAssistants());
+            assertTrue(pacer.shouldSendTelemetry());
+            pacer.end(now);
+            caughtUp++;
+        }
+
+        assertEquals(3, caughtUp);
+        assertEquals(0, pacer.getSkippedCycles());
+    }
+}
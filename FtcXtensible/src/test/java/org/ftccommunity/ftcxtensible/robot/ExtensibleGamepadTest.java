@@ -0,0 +1,245 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExtensibleGamepadTest {
+    @Test
+    public void testEdgesLastForOneUpdate() {
+        ExtensibleGamepad gamepad = new ExtensibleGamepad();
+        Gamepad gp = new Gamepad();
+
+        gp.a = true;
+        gp.dpad_up = true;
+        gamepad.updateGamepad(null, gp);
+        assertEquals(ExtensibleGamepad.BUTTON_A | ExtensibleGamepad.BUTTON_DPAD_UP, gamepad.getPressedButtons());
+        assertTrue(gamepad.wasPressed(ExtensibleGamepad.BUTTON_A));
+        assertTrue(gamepad.isAPressed());
+        assertTrue(gamepad.getDpad().isUpPressed());
+        assertEquals(2, gamepad.getEvents().size());
+        assertEquals("a pressed", gamepad.getEvents().get(0).toString());
+        assertEquals("dpad up pressed", gamepad.getEvents().get(1).toString());
+
+        gamepad.updateGamepad(null, gp);
+        assertEquals(0, gamepad.getPressedButtons());
+        assertTrue(gamepad.getEvents().isEmpty());
+        assertTrue(gamepad.isPressed(ExtensibleGamepad.BUTTON_A));
+
+        gp.a = false;
+        gamepad.updateGamepad(null, gp);
+        assertTrue(gamepad.wasReleased(ExtensibleGamepad.BUTTON_A));
+        assertFalse(gamepad.wasReleased(ExtensibleGamepad.BUTTON_DPAD_UP));
+        assertEquals(ExtensibleGamepad.BUTTON_DPAD_UP, gamepad.getButtons());
+        assertEquals(1, gamepad.getEvents().size());
+        assertFalse(gamepad.getEvents().get(0).isPressed());
+        assertEquals(0, gamepad.getHoldTime(ExtensibleGamepad.BUTTON_A, TimeUnit.NANOSECONDS));
+        assertTrue(gamepad.getHoldTime(ExtensibleGamepad.BUTTON_DPAD_UP, TimeUnit.NANOSECONDS) > 0);
+    }
+
+    @Test
+    public void testBouncesAreHeldOff() {
+        ExtensibleGamepad gamepad = new ExtensibleGamepad();
+        gamepad.setDebounce(1, TimeUnit.HOURS);
+        Gamepad gp = new Gamepad();
+
+        gp.b = true;
+        gamepad.updateGamepad(null, gp);
+        assertTrue(gamepad.wasPressed(ExtensibleGamepad.BUTTON_B));
+
+        gp.b = false;
+        gamepad.updateGamepad(null, gp);
+        assertFalse(gamepad.wasReleased(ExtensibleGamepad.BUTTON_B));
+        assertTrue(gamepad.isBPressed());
+
+        gamepad.setDebounce(0, TimeUnit.MILLISECONDS);
+        gamepad.updateGamepad(null, gp);
+        assertTrue(gamepad.wasReleased(ExtensibleGamepad.BUTTON_B));
+        assertFalse(gamepad.isBPressed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHoldTimeNeedsOneButton() {
+        new ExtensibleGamepad().getHoldTime(ExtensibleGamepad.BUTTON_A | ExtensibleGamepad.BUTTON_B, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testSnapshotsDoNotChangeWhenTheGamepadIsUpdated() {
+        ExtensibleGamepad gamepad = new ExtensibleGamepad();
+        Gamepad gp = new Gamepad();
+        gp.x = true;
+        gp.left_stick_x = 0.5f;
+        gamepad.updateGamepad(null, gp);
+        GamepadSnapshot snapshot = gamepad.snapshot();
+        long sequence = snapshot.getSequence();
+
+        gp.x = false;
+        gp.left_stick_x = -1;
+        for (int i = 1; i < GamepadSnapshot.REUSE_DISTANCE; i++) {
+            gamepad.updateGamepad(null, gp);
+            assertNotSame(snapshot, gamepad.snapshot());
+        }
+        assertEquals(sequence, snapshot.getSequence());
+        assertTrue(snapshot.wasPressed(ExtensibleGamepad.BUTTON_X));
+        assertEquals(0.5, snapshot.leftJoystick().X(), 0);
+        assertEquals(1, snapshot.getEvents().size());
+        assertFalse(gamepad.isXPressed());
+        assertEquals(-1, gamepad.leftJoystick().X(), 0);
+        assertEquals(-1, gamepad.getLeftX(), 0);
+    }
+
+    @Test
+    public void testHeldSnapshotsAreNotReused() {
+        ExtensibleGamepad gamepad = new ExtensibleGamepad();
+        Gamepad gp = new Gamepad();
+        gp.y = true;
+        gp.right_trigger = 0.25f;
+        gamepad.updateGamepad(null, gp);
+        GamepadSnapshot held = gamepad.acquireSnapshot();
+        long sequence = held.getSequence();
+
+        gp.y = false;
+        gp.right_trigger = 1;
+        for (int i = 0; i < 3 * GamepadSnapshot.REUSE_DISTANCE; i++) {
+            gamepad.updateGamepad(null, gp);
+            assertNotSame(held, gamepad.snapshot());
+        }
+        assertEquals(sequence, held.getSequence());
+        assertTrue(held.wasPressed(ExtensibleGamepad.BUTTON_Y));
+        assertEquals(0.25f, held.getRightTrigger(), 0);
+        assertEquals(1, held.getEvents().size());
+        assertTrue(held.getEvents().get(0).isPressed());
+        held.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSnapshotsAreOnlyReleasedOnce() {
+        ExtensibleGamepad gamepad = new ExtensibleGamepad();
+        GamepadSnapshot snapshot = gamepad.acquireSnapshot();
+        snapshot.release();
+        snapshot.release();
+    }
+
+    @Test
+    public void testConcurrentReadersSeeSnapshotsThatDoNotChange() throws Exception {
+        final int updates = 200000;
+        final ExtensibleGamepad gamepad = new ExtensibleGamepad();
+        final AtomicBoolean updating = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicInteger reads = new AtomicInteger();
+
+        // Every update toggles A and moves the stick and trigger to the same value, so the parts of
+        // a snapshot always agree with each other
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (updating.get()) {
+                        GamepadSnapshot snapshot = gamepad.acquireSnapshot();
+                        try {
+                            if (snapshot.getSequence() == 0) {
+                                continue;
+                            }
+
+                            long sequence = snapshot.getSequence();
+                            float trigger = snapshot.getLeftTrigger();
+                            double x = snapshot.leftJoystick().X();
+                            boolean pressed = snapshot.isPressed(ExtensibleGamepad.BUTTON_A);
+                            assertEquals(trigger, (float) x, 0);
+                            assertEquals((Math.round(trigger * updates) & 1) == 1, pressed);
+
+                            // Let the gamepad go around its snapshots while this one is held
+                            for (int i = 0; i < 64; i++) {
+                                Thread.yield();
+                                for (ExtensibleGamepad.ButtonEvent event : snapshot.getEvents()) {
+                                    assertEquals(pressed, event.isPressed());
+                                }
+                            }
+                            assertEquals(sequence, snapshot.getSequence());
+                            assertEquals(trigger, snapshot.getLeftTrigger(), 0);
+                            assertEquals(x, snapshot.leftJoystick().X(), 0);
+                            assertEquals(pressed, snapshot.isPressed(ExtensibleGamepad.BUTTON_A));
+                            assertEquals(1, snapshot.getEvents().size());
+                            reads.incrementAndGet();
+                        } finally {
+                            snapshot.release();
+                        }
+                    }
+                } catch (Throwable ex) {
+                    failure.compareAndSet(null, ex);
+                }
+            }
+        }, "Snapshot Reader");
+        reader.start();
+
+        Gamepad gp = new Gamepad();
+        try {
+            for (int i = 1; i <= updates; i++) {
+                gp.a = (i & 1) == 1;
+                gp.left_stick_x = i / (float) updates;
+                gp.left_trigger = gp.left_stick_x;
+                gamepad.updateGamepad(null, gp);
+            }
+        } finally {
+            updating.set(false);
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertTrue(reads.get() > 0);
+    }
+
+    @Test
+    public void testUpdatesDoNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ExtensibleGamepad gamepad = new ExtensibleGamepad();
+        Gamepad gp = new Gamepad();
+        for (int i = 0; i < 20000; i++) {
+            gp.a = (i & 1) == 0;
+            gp.right_stick_y = i / 20000f;
+            gamepad.updateGamepad(null, gp);
+        }
+
+        // An allocation per update shows up in every round, a one off from the JIT only in one
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < 10000; i++) {
+                gp.a = (i & 1) == 0;
+                gp.right_stick_y = i / 10000f;
+                gamepad.updateGamepad(null, gp);
+            }
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before);
+        }
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
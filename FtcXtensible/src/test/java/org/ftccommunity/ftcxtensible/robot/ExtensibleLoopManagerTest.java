@@ -0,0 +1,279 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import com.qualcomm.robotcore.eventloop.opmode.OpMode;
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+import org.ftccommunity.ftcxtensible.interfaces.OpModeLoop;
+import org.ftccommunity.ftcxtensible.interfaces.RunAssistant;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExtensibleLoopManagerTest {
+    private static final int WARMUP_CYCLES = 20000;
+    private static final int MEASURED_CYCLES = 100000;
+    // Room for a stray allocation by the JIT or the JVM, far less than a byte per loop
+    private static final long ALLOCATION_SLACK = 1024;
+
+    @Test
+    public void testAssistantsRunOnTheirLoop() throws Exception {
+        ExtensibleLoopManager manager = new ExtensibleLoopManager();
+        CountingAssistant before = new CountingAssistant();
+        CountingAssistant after = new CountingAssistant();
+        manager.registerBeforeXLoop(5, before);
+        manager.registerAfterX(500, after);
+
+        LinkedList<Object> out = new LinkedList<>();
+        for (int loop = 1; loop <= 1000; loop++) {
+            runCycle(manager, loop, out);
+        }
+
+        assertEquals(1, before.count);
+        assertEquals(1, after.count);
+        assertTrue(manager.getRegisterBeforeX().isEmpty());
+    }
+
+    @Test
+    public void testEveryXRunsAtItsRate() throws Exception {
+        ExtensibleLoopManager manager = new ExtensibleLoopManager();
+        CountingAssistant everyThird = new CountingAssistant();
+        CountingAssistant everySeventh = new CountingAssistant();
+        CountingAssistant everyTwoThousand = new CountingAssistant();
+        manager.registerBeforeEveryX(3, everyThird);
+        manager.registerAfterEveryX(7, everySeventh);
+        manager.scheduleAfterEveryX(2000, everyTwoThousand);
+
+        LinkedList<Object> out = new LinkedList<>();
+        for (int loop = 1; loop <= 4200; loop++) {
+            runCycle(manager, loop, out);
+        }
+
+        assertEquals(1400, everyThird.count);
+        assertEquals(600, everySeventh.count);
+        assertEquals(2, everyTwoThousand.count);
+    }
+
+    @Test
+    public void testLongestAlternateLoopWins() throws Exception {
+        ExtensibleLoopManager manager = new ExtensibleLoopManager();
+        OpModeLoop everySecond = new NoOpLoop();
+        OpModeLoop everySixth = new NoOpLoop();
+        manager.registerNewLoopOnEveryX(2, everySecond);
+        manager.registerNewLoopOnEveryX(6, everySixth);
+
+        assertNull(manager.getLoop(1));
+        assertSame(everySecond, manager.getLoop(2));
+        assertNull(manager.getLoop(3));
+        assertSame(everySecond, manager.getLoop(4));
+        assertNull(manager.getLoop(5));
+        assertSame(everySixth, manager.getLoop(6));
+    }
+
+    @Test
+    public void testUnregisterByHandle() throws Exception {
+        ExtensibleLoopManager manager = new ExtensibleLoopManager();
+        CountingAssistant assistant = new CountingAssistant();
+        ExtensibleLoopManager.Registration registration = manager.scheduleBeforeEveryX(1, assistant);
+
+        LinkedList<Object> out = new LinkedList<>();
+        for (int loop = 1; loop <= 10; loop++) {
+            runCycle(manager, loop, out);
+        }
+        manager.unregister(registration);
+        for (int loop = 11; loop <= 20; loop++) {
+            runCycle(manager, loop, out);
+        }
+
+        assertEquals(10, assistant.count);
+        assertFalse(registration.isRegistered());
+        assertTrue(manager.getRegisterBeforeEveryX().isEmpty());
+    }
+
+    @Test
+    public void testUnregisteredLoopsLeaveTheDueLoop() throws Exception {
+        ExtensibleLoopManager manager = new ExtensibleLoopManager();
+        OpModeLoop everySecond = new NoOpLoop();
+        OpModeLoop everyFourth = new NoOpLoop();
+        manager.scheduleLoopOnEveryX(2, everySecond);
+        ExtensibleLoopManager.Registration fourth = manager.scheduleLoopOnEveryX(4, everyFourth);
+
+        assertSame(everyFourth, manager.getLoop(4));
+        manager.unregister(fourth);
+        assertSame(everySecond, manager.getLoop(4));
+        assertNull(manager.getLoop(5));
+        assertSame(everySecond, manager.getLoop(8));
+    }
+
+    @Test
+    public void testSkippedLoopsKeepTheRate() throws Exception {
+        ExtensibleLoopManager manager = new ExtensibleLoopManager();
+        CountingAssistant assistant = new CountingAssistant();
+        manager.scheduleBeforeEveryX(5, assistant);
+
+        LinkedList<Object> out = new LinkedList<>();
+        runCycle(manager, 3, out);
+        runCycle(manager, 5000, out);
+        assertEquals(1, assistant.count);
+        for (int loop = 5001; loop <= 5010; loop++) {
+            runCycle(manager, loop, out);
+        }
+
+        assertEquals(3, assistant.count);
+    }
+
+    @Test
+    public void testSteadyStateLoopDoesNotAllocate() throws Exception {
+        ExtensibleLoopManager manager = new ExtensibleLoopManager();
+        for (int period = 1; period < 64; period++) {
+            manager.scheduleBeforeEveryX(period, new CountingAssistant());
+            manager.scheduleAfterEveryX(period * 7, new CountingAssistant());
+        }
+        manager.scheduleLoopOnEveryX(5, new NoOpLoop());
+
+        LinkedList<Object> out = new LinkedList<>();
+        int loop = 0;
+        for (int i = 0; i < WARMUP_CYCLES; i++) {
+            runCycle(manager, ++loop, out);
+        }
+
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+
+        long start = allocatedBytes();
+        for (int i = 0; i < MEASURED_CYCLES; i++) {
+            runCycle(manager, ++loop, out);
+        }
+        long allocated = allocatedBytes() - start - overhead;
+
+        assertTrue("Allocated " + allocated + " bytes in " + MEASURED_CYCLES + " loop cycles",
+                allocated < ALLOCATION_SLACK);
+    }
+
+    @Test
+    public void testOpModeLoopDoesNotAllocate() throws Exception {
+        CountingOpMode opMode = new CountingOpMode();
+        // The SDK only fills these in when the op mode is run by the event loop
+        ((OpMode) opMode).gamepad1 = new Gamepad();
+        ((OpMode) opMode).gamepad2 = new Gamepad();
+        for (int period = 1; period < 16; period++) {
+            opMode.loopManager().scheduleBeforeEveryX(period, new CountingAssistant());
+            opMode.loopManager().scheduleAfterEveryX(period * 3, new CountingAssistant());
+        }
+
+        for (int i = 0; i < WARMUP_CYCLES; i++) {
+            opMode.loop();
+        }
+
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+
+        long start = allocatedBytes();
+        for (int i = 0; i < MEASURED_CYCLES; i++) {
+            opMode.loop();
+        }
+        long allocated = allocatedBytes() - start - overhead;
+
+        assertEquals(WARMUP_CYCLES + MEASURED_CYCLES, opMode.loops);
+        assertTrue("Allocated " + allocated + " bytes in " + MEASURED_CYCLES + " op mode loops",
+                allocated < ALLOCATION_SLACK);
+    }
+
+    private static void runCycle(ExtensibleLoopManager manager, int loop, LinkedList<Object> out)
+            throws Exception {
+        out.clear();
+        List<RunAssistant> assistants = manager.getPreloopAssistants(loop);
+        for (int i = 0; i < assistants.size(); i++) {
+            assistants.get(i).onExecute(null, out);
+        }
+
+        OpModeLoop alternate = manager.getLoop(loop);
+        if (alternate != null) {
+            alternate.loop(null, out);
+        }
+
+        assistants = manager.getPostLoopAssistants(loop);
+        for (int i = 0; i < assistants.size(); i++) {
+            assistants.get(i).onExecute(null, out);
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static class CountingAssistant implements RunAssistant {
+        private int count;
+
+        @Override
+        public void onExecute(RobotContext ctx, LinkedList<Object> out) {
+            count++;
+        }
+    }
+
+    private static class CountingOpMode extends ExtensibleOpMode {
+        private int loops;
+
+        @Override
+        public void init(RobotContext ctx, LinkedList<Object> out) {
+        }
+
+        @Override
+        public void init_loop(RobotContext ctx, LinkedList<Object> out) {
+        }
+
+        @Override
+        public void start(RobotContext ctx, LinkedList<Object> out) {
+        }
+
+        @Override
+        public void loop(RobotContext ctx, LinkedList<Object> out) {
+            loops++;
+        }
+
+        @Override
+        public void stop(RobotContext ctx, LinkedList<Object> out) {
+        }
+
+        @Override
+        public void onSuccess(RobotContext ctx, Object event, Object in) {
+        }
+
+        @Override
+        public int onFailure(RobotContext ctx, RobotStatus.Type eventType, Object event, Object in) {
+            return -1;
+        }
+    }
+
+    private static class NoOpLoop implements OpModeLoop {
+        @Override
+        public void loop(RobotContext ctx, LinkedList<Object> out) {
+        }
+    }
+}
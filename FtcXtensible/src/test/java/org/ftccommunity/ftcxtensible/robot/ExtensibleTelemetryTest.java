@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import com.qualcomm.robotcore.robocol.Telemetry;
+
+import org.ftccommunity.ftcxtensible.interfaces.TelemetryListener;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExtensibleTelemetryTest {
+    @Test
+    public void testRegisteredKeysAreInEveryPacket() throws Exception {
+        PacketTelemetry parent = new PacketTelemetry();
+        ExtensibleTelemetry telemetry = new ExtensibleTelemetry(8, parent);
+        try {
+            int speed = telemetry.register("speed", 1);
+            int mode = telemetry.register("mode");
+            telemetry.data(speed, 0.5);
+            telemetry.data(mode, "auto");
+            telemetry.flush();
+            telemetry.sendData();
+            Map<String, String> first = parent.send();
+            assertEquals("0.5", first.get("SPEED"));
+            assertEquals("auto", first.get("MODE"));
+
+            // Nothing changed, but the parent was cleared when the last packet went out
+            telemetry.data(mode, "auto");
+            telemetry.flush();
+            telemetry.sendData();
+            assertEquals(first, parent.send());
+
+            telemetry.sendData();
+            assertEquals(first, parent.send());
+        } finally {
+            telemetry.close();
+        }
+    }
+
+    @Test
+    public void testRegisteredKeysCountAgainstTheDataPoints() throws Exception {
+        PacketTelemetry parent = new PacketTelemetry();
+        ExtensibleTelemetry telemetry = new ExtensibleTelemetry(4, parent);
+        try {
+            int left = telemetry.register("left");
+            int right = telemetry.register("right");
+            telemetry.data(left, "0.25");
+            telemetry.data(right, "0.75");
+            for (int cycle = 0; cycle < 3; cycle++) {
+                for (int i = 0; i < 3; i++) {
+                    telemetry.data("line", Integer.toString(i));
+                }
+                telemetry.flush();
+                telemetry.sendData();
+
+                Map<String, String> packet = parent.send();
+                assertEquals(4, packet.size());
+                assertEquals("0.25", packet.get("LEFT"));
+                assertEquals("0.75", packet.get("RIGHT"));
+            }
+        } finally {
+            telemetry.close();
+        }
+    }
+
+    @Test
+    public void testListenersOnlyGetChanges() throws Exception {
+        PacketTelemetry parent = new PacketTelemetry();
+        ExtensibleTelemetry telemetry = new ExtensibleTelemetry(8, parent);
+        try {
+            final AtomicInteger changes = new AtomicInteger();
+            telemetry.addListener(new TelemetryListener() {
+                @Override
+                public void onData(String key, String value) {
+                    if ("MODE".equals(key)) {
+                        changes.incrementAndGet();
+                    }
+                }
+            });
+
+            int mode = telemetry.register("mode");
+            for (int cycle = 0; cycle < 3; cycle++) {
+                telemetry.data(mode, "auto");
+                telemetry.flush();
+                telemetry.sendData();
+                parent.send();
+            }
+            assertEquals(1, changes.get());
+
+            telemetry.data(mode, "teleop");
+            telemetry.flush();
+            telemetry.sendData();
+            assertEquals(2, changes.get());
+        } finally {
+            telemetry.close();
+        }
+    }
+
+    /**
+     * Keeps the data of one packet, like the SDK it is cleared once the packet is sent
+     */
+    private static class PacketTelemetry extends Telemetry {
+        private final Map<String, String> packet = new LinkedHashMap<>();
+
+        @Override
+        public synchronized void addData(String key, String msg) {
+            packet.put(key, msg);
+        }
+
+        @Override
+        public synchronized void clearData() {
+            packet.clear();
+        }
+
+        synchronized Map<String, String> send() {
+            Map<String, String> sent = new LinkedHashMap<>(packet);
+            packet.clear();
+            return sent;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GamepadPlaybackTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GamepadPlayback record(int... times) throws Exception {
+        File file = folder.newFile();
+        GamepadRecordWriter writer = new GamepadRecordWriter(file, "test", 0, 0);
+        GamepadFrame frame = new GamepadFrame();
+        for (int i = 0; i < times.length; i++) {
+            frame.time = times[i];
+            frame.buttons = i;
+            frame.leftX = i / 10f;
+            writer.write(frame);
+        }
+        writer.close();
+        return new GamepadPlayback(new GamepadRecordReader(file));
+    }
+
+    @Test
+    public void testSamplesAreHeldUntilTheNextOne() throws Exception {
+        GamepadPlayback playback = record(0, 20, 40, 60);
+        GamepadFrame frame = new GamepadFrame();
+
+        assertTrue(playback.seek(0, frame, false));
+        assertEquals(0, frame.buttons);
+        assertTrue(playback.seek(19, frame, false));
+        assertEquals(0, frame.buttons);
+        assertTrue(playback.seek(20, frame, false));
+        assertEquals(1, frame.buttons);
+
+        // A slow loop skips the samples it missed
+        assertTrue(playback.seek(45, frame, false));
+        assertEquals(2, frame.buttons);
+
+        // The last sample is played once, then the playback is over
+        assertTrue(playback.seek(100, frame, false));
+        assertEquals(3, frame.buttons);
+        assertFalse(playback.seek(101, frame, false));
+        playback.close();
+    }
+
+    @Test
+    public void testAxesAreInterpolated() throws Exception {
+        GamepadPlayback playback = record(0, 20, 40);
+        GamepadFrame frame = new GamepadFrame();
+
+        assertTrue(playback.seek(10, frame, true));
+        assertEquals(0, frame.buttons);
+        assertEquals(0.05f, frame.leftX, 1e-4);
+        assertTrue(playback.seek(35, frame, true));
+        assertEquals(1, frame.buttons);
+        assertEquals(0.175f, frame.leftX, 1e-4);
+        playback.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPlaybackCannotGoBackwards() throws Exception {
+        GamepadPlayback playback = record(0, 20);
+        GamepadFrame frame = new GamepadFrame();
+        playback.seek(10, frame, false);
+        playback.seek(5, frame, false);
+    }
+}
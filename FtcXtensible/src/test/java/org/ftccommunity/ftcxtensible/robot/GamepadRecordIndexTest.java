@@ -0,0 +1,77 @@
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GamepadRecordIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void record(File directory, String name, int id, int samples) throws Exception {
+        GamepadRecordWriter writer = new GamepadRecordWriter(
+                new File(directory, name + GamepadRecordWriter.EXTENSION), name, id, 0);
+        GamepadFrame frame = new GamepadFrame();
+        for (int i = 0; i < samples; i++) {
+            frame.time = i * 20;
+            writer.write(frame);
+        }
+        writer.close();
+    }
+
+    @Test
+    public void testEntriesAreFoundAfterPut() throws Exception {
+        File directory = folder.newFolder();
+        GamepadRecordIndex index = new GamepadRecordIndex(directory);
+        assertNull(index.find("auto"));
+        assertEquals(0, index.nextId());
+
+        index.put(new GamepadRecordIndex.Entry("auto", 0, 100, 1980, 26));
+        index.put(new GamepadRecordIndex.Entry("défense", 1, 5, 80, 30));
+
+        GamepadRecordIndex.Entry entry = index.find("auto");
+        assertNotNull(entry);
+        assertEquals(0, entry.getId());
+        assertEquals(100, entry.getSamples());
+        assertEquals(1980, entry.getDuration());
+        assertEquals(26, entry.getOffset());
+        assertEquals(1, index.find("défense").getId());
+        assertNull(index.find("autonomous"));
+        assertEquals(2, index.nextId());
+
+        // Replacing an entry keeps its place, and a new index sees the same entries
+        index.put(new GamepadRecordIndex.Entry("auto", 0, 200, 3980, 26));
+        List<GamepadRecordIndex.Entry> entries = new GamepadRecordIndex(directory).entries();
+        assertEquals(2, entries.size());
+        assertEquals("auto", entries.get(0).getName());
+        assertEquals(200, entries.get(0).getSamples());
+        assertFalse(new File(directory, GamepadRecordIndex.FILE_NAME + ".tmp").exists());
+    }
+
+    @Test
+    public void testMissingIndexIsRebuiltFromTheRecordings() throws Exception {
+        File directory = folder.newFolder();
+        record(directory, "red", 3, 50);
+        record(directory, "blue", 0, 0);
+
+        GamepadRecordIndex index = new GamepadRecordIndex(directory);
+        GamepadRecordIndex.Entry red = index.find("red");
+        assertNotNull(red);
+        assertEquals(3, red.getId());
+        assertEquals(50, red.getSamples());
+        assertEquals(49 * 20, red.getDuration());
+        assertEquals(22 + 3, red.getOffset());
+        assertEquals(0, index.find("blue").getSamples());
+        assertEquals(1, index.nextId());
+        assertTrue(new File(directory, GamepadRecordIndex.FILE_NAME).isFile());
+    }
+}
@@ -0,0 +1,104 @@
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GamepadRecordTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void sample(GamepadFrame frame, int i) {
+        frame.time = i * 10;
+        frame.buttons = i & 0x7fff;
+        frame.leftX = (float) Math.sin(i / 10.0);
+        frame.leftY = (float) Math.cos(i / 10.0);
+        frame.rightX = -0.5f;
+        frame.rightY = 2f;
+        frame.leftTrigger = (i % 256) / 255f;
+        frame.rightTrigger = Float.NaN;
+    }
+
+    private File write(String name, int samples) throws IOException {
+        File file = folder.newFile(name + GamepadRecordWriter.EXTENSION);
+        GamepadRecordWriter writer = new GamepadRecordWriter(file, name, 7, 1234L);
+        GamepadFrame frame = new GamepadFrame();
+        for (int i = 0; i < samples; i++) {
+            sample(frame, i);
+            writer.write(frame);
+        }
+        writer.close();
+        return file;
+    }
+
+    @Test
+    public void testFramesAreReadBack() throws Exception {
+        File file = write("autonomous", 10000);
+        assertEquals(22 + "autonomous".length() + 10000 * GamepadFrame.SIZE, file.length());
+
+        GamepadRecordReader reader = new GamepadRecordReader(file);
+        assertEquals("autonomous", reader.getName());
+        assertEquals(7, reader.getId());
+        assertEquals(1234L, reader.getCreated());
+
+        GamepadFrame expected = new GamepadFrame();
+        GamepadFrame frame = new GamepadFrame();
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(reader.next(frame));
+            sample(expected, i);
+            assertEquals(expected.time, frame.time);
+            assertEquals(expected.buttons, frame.buttons);
+            assertEquals(expected.leftX, frame.leftX, 1.0 / Short.MAX_VALUE);
+            assertEquals(expected.leftY, frame.leftY, 1.0 / Short.MAX_VALUE);
+            assertEquals(-0.5f, frame.rightX, 1.0 / Short.MAX_VALUE);
+            assertEquals(1f, frame.rightY, 0);
+            assertEquals(expected.leftTrigger, frame.leftTrigger, 1.0 / 255);
+            assertEquals(0f, frame.rightTrigger, 0);
+        }
+        assertFalse(reader.next(frame));
+        assertEquals(10000, reader.getSamples());
+        reader.close();
+    }
+
+    @Test
+    public void testCutOffRecordingLosesOnlyTheLastFrame() throws Exception {
+        File file = write("cut", 100);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        GamepadRecordReader reader = new GamepadRecordReader(file);
+        GamepadFrame frame = new GamepadFrame();
+        int count = 0;
+        while (reader.next(frame)) {
+            count++;
+        }
+        reader.close();
+        assertEquals(99, count);
+        assertEquals(980, frame.time);
+    }
+
+    @Test
+    public void testOtherFilesAreRejected() throws Exception {
+        File file = folder.newFile("record.gsr.json");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.writeBytes("{\"name\":\"record\",\"id\":0,\"states\":[]}");
+        raf.close();
+
+        try {
+            new GamepadRecordReader(file);
+            fail();
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+}
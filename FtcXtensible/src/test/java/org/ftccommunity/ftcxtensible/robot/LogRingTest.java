@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.logging.Level;
+
+import static org.junit.Assert.assertEquals;
+
+public class LogRingTest {
+    @Test
+    public void testOnlyNewEntriesAreRead() throws Exception {
+        LogRing ring = new LogRing(4);
+        assertEquals(1, ring.add(Level.INFO, "A", "one"));
+        assertEquals(2, ring.add(Level.WARNING, "B", "two"));
+
+        ArrayList<LogRing.Entry> entries = new ArrayList<>();
+        assertEquals(2, ring.read(0, entries, 10));
+        assertEquals("one", entries.get(0).getMessage());
+        assertEquals("WARNING B: two", entries.get(1).toString());
+
+        entries.clear();
+        ring.add(Level.INFO, "C", "three");
+        assertEquals(1, ring.read(2, entries, 10));
+        assertEquals(3, entries.get(0).getSequence());
+        assertEquals(0, ring.read(3, entries, 10));
+    }
+
+    @Test
+    public void testOldEntriesAreOverwritten() throws Exception {
+        LogRing ring = new LogRing(3);
+        assertEquals(4, ring.capacity());
+        for (int i = 1; i <= 10; i++) {
+            ring.add(Level.INFO, "T", Integer.toString(i));
+        }
+        assertEquals(7, ring.firstSequence());
+        assertEquals(10, ring.lastSequence());
+
+        ArrayList<LogRing.Entry> entries = new ArrayList<>();
+        assertEquals(2, ring.read(1, entries, 2));
+        assertEquals("7", entries.get(0).getMessage());
+        assertEquals("8", entries.get(1).getMessage());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        LogRing ring = new LogRing(4);
+        ring.add(Level.INFO, "T", "gone");
+        ring.clear();
+        ArrayList<LogRing.Entry> entries = new ArrayList<>();
+        assertEquals(0, ring.read(0, entries, 10));
+        assertEquals(2, ring.add(Level.INFO, "T", "kept"));
+        assertEquals(1, ring.read(0, entries, 10));
+        assertEquals("kept", entries.get(0).getMessage());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappedLogStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> readAll(File directory) throws Exception {
+        final List<String> records = new ArrayList<>();
+        MappedLogStore.read(directory, new MappedLogStore.RecordVisitor() {
+            @Override
+            public void visit(long segment, long time, Level level, String tag, String message) {
+                records.add(time + " " + level.getName() + " " + tag + " " + message);
+            }
+        });
+        return records;
+    }
+
+    @Test
+    public void testRecordsAreReadBack() throws Exception {
+        File directory = folder.newFolder("logs");
+        MappedLogStore store = new MappedLogStore(directory, 4096, 4);
+        store.append(1, Level.INFO, "A", "hello");
+        store.append(2, Level.SEVERE, "B", "café π 🤖");
+        store.close();
+
+        List<String> records = readAll(directory);
+        assertEquals(2, records.size());
+        assertEquals("1 INFO A hello", records.get(0));
+        assertEquals("2 SEVERE B café π 🤖", records.get(1));
+    }
+
+    @Test
+    public void testSegmentsRotateAndOldOnesAreDeleted() throws Exception {
+        File directory = folder.newFolder("logs");
+        MappedLogStore store = new MappedLogStore(directory, 256, 3);
+        for (int i = 0; i < 100; i++) {
+            store.append(i, Level.FINE, "TAG", "message number " + i);
+        }
+        store.close();
+
+        assertEquals(3, MappedLogStore.segmentIndexes(directory).length);
+        List<String> records = readAll(directory);
+        assertFalse(records.isEmpty());
+        assertTrue(records.size() < 100);
+        assertEquals("99 FINE TAG message number 99", records.get(records.size() - 1));
+
+        // Opening the store again starts a new segment after the old ones
+        store = new MappedLogStore(directory, 256, 3);
+        store.append(100, Level.FINE, "TAG", "again");
+        store.close();
+        long[] indexes = MappedLogStore.segmentIndexes(directory);
+        assertEquals(indexes[indexes.length - 2] + 1, indexes[indexes.length - 1]);
+    }
+
+    @Test
+    public void testOpeningTheStoreKeepsTheLimit() throws Exception {
+        File directory = folder.newFolder("logs");
+        MappedLogStore store = new MappedLogStore(directory, 256, 3);
+        store.append(0, Level.FINE, "TAG", "first run");
+        store.close();
+        for (int run = 1; run < 5; run++) {
+            store = new MappedLogStore(directory, 256, 3);
+            store.append(run, Level.FINE, "TAG", "run " + run);
+            store.close();
+        }
+
+        long[] indexes = MappedLogStore.segmentIndexes(directory);
+        assertEquals(3, indexes.length);
+        assertEquals(4, indexes[indexes.length - 1]);
+        assertEquals("4 FINE TAG run 4", readAll(directory).get(2));
+    }
+
+    @Test
+    public void testLongMessagesAreCutShort() throws Exception {
+        File directory = folder.newFolder("logs");
+        MappedLogStore store = new MappedLogStore(directory, 256, 2);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append('x');
+        }
+        store.append(0, Level.INFO, "T", builder.toString());
+        store.close();
+
+        List<String> records = readAll(directory);
+        assertEquals(1, records.size());
+        assertTrue(records.get(0).length() < 256);
+    }
+
+    @Test
+    public void testTornRecordsAreSkipped() throws Exception {
+        File directory = folder.newFolder("logs");
+        MappedLogStore store = new MappedLogStore(directory, 4096, 2);
+        store.append(1, Level.INFO, "A", "intact");
+        store.append(2, Level.INFO, "A", "torn");
+        store.close();
+
+        // Flip a byte in the second record's message, as if the crash happened mid-write
+        File segment = MappedLogStore.segmentFile(directory, MappedLogStore.segmentIndexes(directory)[0]);
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            int first = MappedLogStore.HEADER_SIZE;
+            file.seek(first);
+            int length = file.readInt();
+            long torn = first + MappedLogStore.FRAME_SIZE + length + MappedLogStore.FRAME_SIZE + 17;
+            file.seek(torn);
+            int value = file.read();
+            file.seek(torn);
+            file.write(value ^ 0xff);
+        } finally {
+            file.close();
+        }
+
+        List<String> records = readAll(directory);
+        assertEquals(1, records.size());
+        assertEquals("1 INFO A intact", records.get(0));
+    }
+}
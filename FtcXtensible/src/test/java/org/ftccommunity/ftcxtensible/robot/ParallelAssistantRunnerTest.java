@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.ftccommunity.ftcxtensible.interfaces.IndependentRunAssistant;
+import org.ftccommunity.ftcxtensible.interfaces.RunAssistant;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelAssistantRunnerTest {
+    @Test
+    public void testEveryIndependentAssistantFinishesBeforeAwaitReturns() throws Exception {
+        ParallelAssistantRunner runner = new ParallelAssistantRunner(3);
+        try {
+            final AtomicInteger finished = new AtomicInteger();
+            List<RunAssistant> assistants = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final int id = i;
+                assistants.add(new IndependentRunAssistant() {
+                    @Override
+                    public void onExecute(RobotContext ctx, LinkedList<Object> out) throws Exception {
+                        out.add(id);
+                        finished.incrementAndGet();
+                    }
+                });
+            }
+
+            for (int cycle = 1; cycle <= 5000; cycle++) {
+                runner.start(null, assistants);
+                runner.await();
+                assertEquals(8 * cycle, finished.get());
+                assertEquals(8, runner.size());
+                for (int i = 0; i < runner.size(); i++) {
+                    assertEquals(1, runner.getOutput(i).size());
+                    assertEquals(i, runner.getOutput(i).getFirst());
+                }
+            }
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    @Test
+    public void testEveryAssistantRunsOnceWhenTheBatchSizeChanges() throws Exception {
+        ParallelAssistantRunner runner = new ParallelAssistantRunner(3);
+        try {
+            final AtomicInteger[] runs = new AtomicInteger[8];
+            List<RunAssistant> assistants = new ArrayList<>();
+            for (int i = 0; i < runs.length; i++) {
+                final AtomicInteger counter = runs[i] = new AtomicInteger();
+                assistants.add(new IndependentRunAssistant() {
+                    @Override
+                    public void onExecute(RobotContext ctx, LinkedList<Object> out) throws Exception {
+                        counter.incrementAndGet();
+                    }
+                });
+            }
+
+            // A late worker that still sees the previous batch must not run anything of the next
+            for (int cycle = 0; cycle < 20000; cycle++) {
+                int size = cycle % 2 == 0 ? 1 : runs.length;
+                runner.start(null, assistants.subList(0, size));
+                runner.await();
+                for (int i = 0; i < runs.length; i++) {
+                    assertEquals("Assistant " + i + " in cycle " + cycle,
+                            i < size ? 1 : 0, runs[i].getAndSet(0));
+                }
+            }
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    @Test
+    public void testAssistantsRunAtTheSameTime() throws Exception {
+        ParallelAssistantRunner runner = new ParallelAssistantRunner(2);
+        try {
+            // Neither assistant can pass the barrier unless the other one is running too
+            final CyclicBarrier together = new CyclicBarrier(2);
+            List<RunAssistant> assistants = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                assistants.add(new IndependentRunAssistant() {
+                    @Override
+                    public void onExecute(RobotContext ctx, LinkedList<Object> out) throws Exception {
+                        together.await(5, TimeUnit.SECONDS);
+                    }
+                });
+            }
+
+            runner.start(null, assistants);
+            runner.await();
+            assertNull(runner.getFailure(0));
+            assertNull(runner.getFailure(1));
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    @Test
+    public void testCollectsExceptionsAndSkipsDependentAssistants() throws Exception {
+        ParallelAssistantRunner runner = new ParallelAssistantRunner(1);
+        try {
+            final IllegalStateException failure = new IllegalStateException("sensor unplugged");
+            final AtomicInteger dependentRuns = new AtomicInteger();
+            List<RunAssistant> assistants = new ArrayList<>();
+            assistants.add(new RunAssistant() {
+                @Override
+                public void onExecute(RobotContext ctx, LinkedList<Object> out) throws Exception {
+                    dependentRuns.incrementAndGet();
+                }
+            });
+            assistants.add(new IndependentRunAssistant() {
+                @Override
+                public void onExecute(RobotContext ctx, LinkedList<Object> out) throws Exception {
+                    throw failure;
+                }
+            });
+            assistants.add(new IndependentRunAssistant() {
+                @Override
+                public void onExecute(RobotContext ctx, LinkedList<Object> out) throws Exception {
+                    out.add("ok");
+                }
+            });
+
+            runner.start(null, assistants);
+            runner.await();
+            assertEquals(0, dependentRuns.get());
+            assertEquals(2, runner.size());
+            assertSame(failure, runner.getFailure(0));
+            assertNull(runner.getFailure(1));
+            assertTrue(runner.getOutput(1).contains("ok"));
+
+            // The next batch starts clean
+            runner.start(null, assistants.subList(2, 3));
+            runner.await();
+            assertNull(runner.getFailure(0));
+        } finally {
+            runner.shutdown();
+        }
+    }
+
+    @Test
+    public void testSteadyBatchesDoNotAllocate() throws Exception {
+        ParallelAssistantRunner runner = new ParallelAssistantRunner(2);
+        try {
+            final AtomicInteger finished = new AtomicInteger();
+            List<RunAssistant> assistants = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                assistants.add(new IndependentRunAssistant() {
+                    @Override
+                    public void onExecute(RobotContext ctx, LinkedList<Object> out) throws Exception {
+                        finished.incrementAndGet();
+                    }
+                });
+            }
+
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long allocated = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                for (int cycle = 0; cycle < 10000; cycle++) {
+                    runner.start(null, assistants);
+                    runner.await();
+                }
+                allocated = Math.min(allocated,
+                        threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before);
+            }
+            assertTrue("Allocated " + allocated + " bytes", allocated < 10000);
+        } finally {
+            runner.shutdown();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PerformanceTunerTest {
+    @Test
+    public void testMatchesTwoPassStatistics() throws Exception {
+        Random random = new Random(42);
+        long[] times = new long[10000];
+        PerformanceTuner tuner = new PerformanceTuner();
+        for (int i = 0; i < times.length; i++) {
+            times[i] = 20000000 + (long) (random.nextGaussian() * 2000000);
+            tuner.record(times[i]);
+        }
+
+        double average = 0;
+        for (long time : times) {
+            average += time;
+        }
+        average /= times.length;
+
+        double variance = 0;
+        for (long time : times) {
+            variance += (time - average) * (time - average);
+        }
+        variance /= times.length;
+
+        assertEquals(times.length, tuner.getCount());
+        assertEquals(average, tuner.getAverage(), 1E-3);
+        assertEquals(variance, tuner.getVariance(), variance * 1E-9);
+        assertEquals(Math.sqrt(variance), tuner.getStdDev(), 1E-3);
+    }
+
+    @Test
+    public void testFlagsSlowLoopsAsTheyHappen() throws Exception {
+        Random random = new Random(7);
+        PerformanceTuner tuner = new PerformanceTuner();
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(tuner.record(20000000 + random.nextInt(1000000)));
+        }
+
+        assertTrue(tuner.record(80000000));
+        assertTrue(tuner.getLastZIndex() > PerformanceTuner.DEFAULT_OUTLIER_THRESHOLD);
+        assertFalse(tuner.record(5000000));
+        assertEquals(1, tuner.getOutliers());
+    }
+
+    @Test
+    public void testPercentilesAreWithinSketchError() throws Exception {
+        PerformanceTuner tuner = new PerformanceTuner();
+        for (int i = 1; i <= 100000; i++) {
+            tuner.record(i * 1000L);
+        }
+
+        assertEquals(50000000, tuner.getPercentile(50), 50000000 * 0.02);
+        assertEquals(99000000, tuner.getPercentile(99), 99000000 * 0.02);
+        assertEquals(100000000, tuner.getPercentile(100));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RestartSupervisorTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testRestartsAfterTheBackoff() throws Exception {
+        RestartSupervisor supervisor = new RestartSupervisor(50, 2000, 10000, TimeUnit.MILLISECONDS);
+        assertFalse(supervisor.isWaiting());
+
+        assertEquals(50 * MS, supervisor.failed(0));
+        assertTrue(supervisor.isWaiting());
+        assertFalse(supervisor.beginRestart(49 * MS));
+        assertTrue(supervisor.beginRestart(50 * MS));
+        supervisor.endRestart();
+        assertFalse(supervisor.isWaiting());
+
+        assertEquals(70 * MS, supervisor.loopFinished(70 * MS));
+        assertEquals(-1, supervisor.loopFinished(90 * MS));
+        assertEquals(1, supervisor.getRestarts());
+    }
+
+    @Test
+    public void testBackoffGrowsUpToTheMax() throws Exception {
+        RestartSupervisor supervisor = new RestartSupervisor(50, 300, 10000, TimeUnit.MILLISECONDS);
+        long now = 0;
+        long[] expected = {50, 100, 200, 300, 300};
+        for (long delay : expected) {
+            assertEquals(delay * MS, supervisor.failed(now));
+            now += delay * MS;
+            assertTrue(supervisor.beginRestart(now));
+            supervisor.endRestart();
+            supervisor.loopFinished(now);
+        }
+    }
+
+    @Test
+    public void testBackoffResetsAfterRunningCleanly() throws Exception {
+        RestartSupervisor supervisor = new RestartSupervisor(50, 2000, 10000, TimeUnit.MILLISECONDS);
+        supervisor.failed(0);
+        supervisor.beginRestart(50 * MS);
+        supervisor.endRestart();
+        supervisor.loopFinished(60 * MS);
+
+        assertEquals(100 * MS, supervisor.failed(1000 * MS));
+        supervisor.beginRestart(1100 * MS);
+        supervisor.endRestart();
+        supervisor.loopFinished(1110 * MS);
+
+        assertEquals(50 * MS, supervisor.failed(20000 * MS));
+    }
+
+    @Test
+    public void testFailingWhileRestartingKeepsTheFirstFailureTime() throws Exception {
+        RestartSupervisor supervisor = new RestartSupervisor(50, 2000, 10000, TimeUnit.MILLISECONDS);
+        supervisor.failed(0);
+        assertTrue(supervisor.beginRestart(50 * MS));
+
+        // The user init threw again
+        assertEquals(100 * MS, supervisor.failed(55 * MS));
+        supervisor.endRestart();
+        assertTrue(supervisor.isWaiting());
+
+        assertTrue(supervisor.beginRestart(155 * MS));
+        supervisor.endRestart();
+        assertEquals(170 * MS, supervisor.loopFinished(170 * MS));
+        assertEquals(2, supervisor.getRestarts());
+        assertEquals(170 * MS, supervisor.getMaxRecoveryTime());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.logging.Level;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RobotStatusTest {
+    @Test
+    public void testPagesOnlyHaveNewEntries() throws Exception {
+        RobotStatus status = new RobotStatus(null, RobotStatus.LogTypes.TEXT);
+        status.log(Level.INFO, "A", "one");
+        status.log(Level.INFO, "B", "two");
+        status.log(Level.INFO, "C", "three");
+
+        RobotStatus.LogPage page = status.getLog(0, 2);
+        assertEquals("A\t\tone\nB\t\ttwo\n", page.getContent());
+        assertEquals(2, page.getNextCursor());
+        assertFalse(page.hasMissedEntries());
+
+        page = status.getLog(page.getNextCursor(), 2);
+        assertEquals("C\t\tthree\n", page.getContent());
+        assertEquals(3, page.getNextCursor());
+
+        page = status.getLog(page.getNextCursor(), 2);
+        assertEquals("", page.getContent());
+        assertEquals(3, page.getNextCursor());
+    }
+
+    @Test
+    public void testGapsAreReported() throws Exception {
+        RobotStatus status = new RobotStatus(null, RobotStatus.LogTypes.JSON);
+        int capacity = status.logRing().capacity();
+        for (int i = 0; i < capacity + 5; i++) {
+            status.log(Level.INFO, "T", Integer.toString(i));
+        }
+
+        RobotStatus.LogPage page = status.getLog(2, 1);
+        assertTrue(page.hasMissedEntries());
+        assertEquals(6, page.getNextCursor());
+        assertTrue(page.getContent().startsWith("[{\"sequence\":6,"));
+        assertTrue(page.getContent().endsWith("\"level\":\"INFO\",\"tag\":\"T\",\"message\":\"5\"}]"));
+    }
+
+    @Test
+    public void testEntriesAreRenderedOnce() throws Exception {
+        RobotStatus status = new RobotStatus(null, RobotStatus.LogTypes.HTML);
+        status.log(Level.WARNING, "TAG", "careful");
+        status.getLog();
+
+        ArrayList<LogRing.Entry> entries = new ArrayList<>();
+        status.logRing().read(0, entries, 1);
+        String rendered = entries.get(0).rendered;
+        assertEquals("<tr class=\"warning\"><td>TAG</td><td>careful</td></tr>\n", rendered);
+
+        assertTrue(status.getLog().contains(rendered));
+        assertSame(rendered, entries.get(0).rendered);
+    }
+}
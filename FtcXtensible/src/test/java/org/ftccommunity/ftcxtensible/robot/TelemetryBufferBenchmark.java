@@ -0,0 +1,221 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import com.qualcomm.robotcore.robocol.Telemetry;
+
+import org.ftccommunity.ftcxtensible.math.LatencyHistogram;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs a loop thread that writes telemetry every cycle against a sender thread that keeps sending
+ * it, once through the {@link TelemetryBuffer} and once through a single lock like
+ * {@code ExtensibleTelemetry} used to, and logs how long the loop thread spent per cycle.
+ * <p>
+ * This is skipped in the default test run, run it with
+ * {@code ./gradlew :FtcXtensible:test -Dxtensible.benchmarks=true}.</p>
+ */
+public class TelemetryBufferBenchmark {
+    private static final int LINES = 144;
+    private static final int LINES_PER_CYCLE = 24;
+    private static final long RUN_TIME = TimeUnit.MILLISECONDS.toNanos(750);
+
+    @Before
+    public void onlyWhenBenchmarking() {
+        assumeTrue(Boolean.getBoolean("xtensible.benchmarks"));
+    }
+
+    @Test
+    public void testLoopThreadDoesNotWaitOnTheSender() throws Exception {
+        Result locked = run(new LockedTelemetry());
+        Result buffered = run(new BufferedTelemetry());
+        Logger.getLogger(getClass().getName()).info(
+                "Telemetry writer, per cycle\n  locked:   " + locked + "\n  buffered: " + buffered);
+
+        assertEquals(buffered.persistentWritten, buffered.persistentSent);
+        assertTrue(buffered.linesSent > 0);
+    }
+
+    private static Result run(final Target target) throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong linesSent = new AtomicLong();
+        final AtomicLong persistentSent = new AtomicLong();
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Telemetry telemetry = new Telemetry();
+                while (running.get()) {
+                    target.send(telemetry, linesSent, persistentSent);
+                    telemetry.clearData();
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+                }
+                target.send(telemetry, linesSent, persistentSent);
+            }
+        }, "Benchmark Sender");
+
+        LatencyHistogram cycles = new LatencyHistogram();
+        String[] lines = new String[LINES_PER_CYCLE];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "MOTOR" + i + " 0." + i;
+        }
+
+        target.claim();
+        sender.start();
+        long persistentWritten = 0;
+        long end = System.nanoTime() + RUN_TIME;
+        for (int cycle = 0; System.nanoTime() < end; cycle++) {
+            long start = System.nanoTime();
+            for (String line : lines) {
+                target.line(line);
+            }
+            if (cycle % 16 == 0) {
+                target.persistent("STATE", lines[cycle % lines.length]);
+                persistentWritten++;
+            }
+            target.publish();
+            cycles.record(System.nanoTime() - start);
+        }
+
+        running.set(false);
+        sender.join();
+        return new Result(cycles, linesSent.get(), persistentWritten, persistentSent.get());
+    }
+
+    private interface Target {
+        void claim();
+
+        void line(String line);
+
+        void persistent(String tag, String message);
+
+        void publish();
+
+        void send(Telemetry telemetry, AtomicLong lines, AtomicLong persistent);
+    }
+
+    private static class BufferedTelemetry implements Target {
+        private final TelemetryBuffer buffer = new TelemetryBuffer(LINES, 0);
+        private final TelemetryBuffer.Frame pending = buffer.newFrame();
+
+        @Override
+        public void claim() {
+            buffer.claim();
+        }
+
+        @Override
+        public void line(String line) {
+            buffer.line(line);
+        }
+
+        @Override
+        public void persistent(String tag, String message) {
+            buffer.persistent(tag, message);
+        }
+
+        @Override
+        public void publish() {
+            buffer.publish();
+        }
+
+        @Override
+        public void send(Telemetry telemetry, AtomicLong lines, AtomicLong persistent) {
+            buffer.drainTo(pending);
+            send(pending, telemetry, lines, persistent);
+            pending.clear();
+        }
+
+        static void send(TelemetryBuffer.Frame frame, Telemetry telemetry, AtomicLong lines,
+                         AtomicLong persistent) {
+            String line;
+            for (int i = 0; (line = frame.pollLine()) != null; i++) {
+                telemetry.addData(Integer.toString(i), line);
+                lines.incrementAndGet();
+            }
+            for (int i = 0; i < frame.persistentSize(); i++) {
+                telemetry.addData(frame.persistentTag(i) + i, frame.persistentMessage(i));
+                persistent.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The old model, both threads share one frame under one lock, and the sender holds the lock
+     * while it sends
+     */
+    private static class LockedTelemetry implements Target {
+        private final TelemetryBuffer.Frame frame = new TelemetryBuffer(LINES, 0).newFrame();
+
+        @Override
+        public void claim() {
+        }
+
+        @Override
+        public synchronized void line(String line) {
+            frame.addLine(line);
+        }
+
+        @Override
+        public synchronized void persistent(String tag, String message) {
+            frame.addPersistent(tag, message);
+        }
+
+        @Override
+        public void publish() {
+        }
+
+        @Override
+        public synchronized void send(Telemetry telemetry, AtomicLong lines, AtomicLong persistent) {
+            BufferedTelemetry.send(frame, telemetry, lines, persistent);
+            frame.clear();
+        }
+    }
+
+    private static class Result {
+        private final LatencyHistogram cycles;
+        private final long linesSent;
+        private final long persistentWritten;
+        private final long persistentSent;
+
+        Result(LatencyHistogram cycles, long linesSent, long persistentWritten, long persistentSent) {
+            this.cycles = cycles;
+            this.linesSent = linesSent;
+            this.persistentWritten = persistentWritten;
+            this.persistentSent = persistentSent;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d cycles, p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus, %d lines sent",
+                    cycles.getCount(), cycles.getValueAtPercentile(50) / 1E3,
+                    cycles.getValueAtPercentile(99) / 1E3, cycles.getValueAtPercentile(99.9) / 1E3,
+                    cycles.getMax() / 1E3, linesSent);
+        }
+    }
+}
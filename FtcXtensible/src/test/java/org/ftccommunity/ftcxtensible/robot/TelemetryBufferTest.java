@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TelemetryBufferTest {
+    @Test
+    public void testOnlyTheLastValueOfAKeyIsHandedOver() throws Exception {
+        TelemetryBuffer buffer = new TelemetryBuffer(8, 4);
+        assertTrue(buffer.claim());
+        buffer.set(2, "1.0");
+        buffer.set(0, "left");
+        buffer.set(2, "2.0");
+        assertTrue(buffer.publish());
+
+        TelemetryBuffer.Frame pending = buffer.newFrame();
+        assertTrue(buffer.drainTo(pending));
+        assertEquals(2, pending.changedSize());
+        assertEquals(2, pending.changedKey(0));
+        assertEquals("2.0", pending.value(2));
+        assertEquals("left", pending.value(0));
+
+        pending.clear();
+        assertFalse(buffer.drainTo(pending));
+        assertEquals(0, pending.changedSize());
+        assertNull(pending.value(2));
+    }
+
+    @Test
+    public void testWritesAreMergedIfTheSenderFallsBehind() throws Exception {
+        TelemetryBuffer buffer = new TelemetryBuffer(3, 2);
+        buffer.claim();
+        buffer.line("a");
+        buffer.line("b");
+        buffer.set(1, "old");
+        buffer.persistent("MODE", "auto");
+        buffer.publish();
+        buffer.line("c");
+        buffer.line("d");
+        buffer.set(1, "new");
+        buffer.persistent("MODE", "teleop");
+        buffer.publish();
+
+        TelemetryBuffer.Frame pending = buffer.newFrame();
+        buffer.drainTo(pending);
+        assertEquals("b", pending.pollLine());
+        assertEquals("c", pending.pollLine());
+        assertEquals("d", pending.pollLine());
+        assertNull(pending.pollLine());
+        assertEquals("new", pending.value(1));
+        assertEquals(2, pending.persistentSize());
+        assertEquals("teleop", pending.persistentMessage(1));
+    }
+
+    @Test
+    public void testOtherThreadsStillGetThrough() throws Exception {
+        final TelemetryBuffer buffer = new TelemetryBuffer(8, 2);
+        buffer.claim();
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                assertFalse(buffer.claim());
+                buffer.line("from another thread");
+                buffer.set(0, "x");
+            }
+        });
+        other.start();
+        other.join();
+
+        TelemetryBuffer.Frame pending = buffer.newFrame();
+        assertTrue(buffer.drainTo(pending));
+        assertEquals("from another thread", pending.pollLine());
+        assertEquals("x", pending.value(0));
+    }
+
+    @Test
+    public void testNumbersKeepTheirWindow() throws Exception {
+        TelemetryBuffer buffer = new TelemetryBuffer(4, 2);
+        buffer.claim();
+        buffer.record(0, 2.0);
+        buffer.record(0, -1.0);
+        buffer.record(1, 7L);
+        buffer.publish();
+        buffer.record(0, 5.0);
+        buffer.record(1, 3L);
+        buffer.publish();
+
+        TelemetryBuffer.Frame pending = buffer.newFrame();
+        buffer.drainTo(pending);
+        assertEquals(TelemetryBuffer.DOUBLE, pending.kind(0));
+        assertEquals(3, pending.samples(0));
+        assertEquals(5.0, pending.doubleValue(0), 0);
+        assertEquals(-1.0, pending.doubleMin(0), 0);
+        assertEquals(5.0, pending.doubleMax(0), 0);
+        assertEquals(2.0, pending.mean(0), 1e-9);
+
+        assertEquals(TelemetryBuffer.LONG, pending.kind(1));
+        assertEquals(2, pending.samples(1));
+        assertEquals(3L, pending.longValue(1));
+        assertEquals(3L, pending.longMin(1));
+        assertEquals(7L, pending.longMax(1));
+
+        pending.clear();
+        buffer.set(0, "text");
+        buffer.publish();
+        buffer.drainTo(pending);
+        assertEquals(TelemetryBuffer.TEXT, pending.kind(0));
+        assertEquals(0, pending.samples(0));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TelemetryRecordingTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecordingsConvertToCsv() throws Exception {
+        File file = folder.newFile("telemetry.xtr");
+        TelemetryBuffer buffer = new TelemetryBuffer(8, 3);
+        buffer.claim();
+        TelemetryRecorder recorder = new TelemetryRecorder(file, new String[] {"SPEED", "TICKS", "MODE"}, 64);
+        buffer.setRecorder(recorder);
+
+        buffer.record(0, 0.5);
+        buffer.record(1, 1000L);
+        buffer.set(2, "auto, fast");
+        buffer.line("LEFT 1");
+        buffer.publish();
+        Thread.sleep(2);
+        buffer.record(0, 0.75);
+        buffer.record(1, 990L);
+        buffer.persistent("STATE", "driving");
+        buffer.publish();
+        recorder.close();
+
+        String[] rows = toCsv(file).split("\n");
+        assertEquals(8, rows.length);
+        assertEquals("time_ms,key,value", rows[0]);
+        assertTrue(rows[1].endsWith(",SPEED,0.5"));
+        assertTrue(rows[2].endsWith(",TICKS,1000"));
+        assertTrue(rows[3].endsWith(",MODE,\"auto, fast\""));
+        assertTrue(rows[4].endsWith(",,LEFT 1"));
+        assertTrue(rows[5].endsWith(",SPEED,0.75"));
+        assertTrue(rows[6].endsWith(",TICKS,990"));
+        assertTrue(rows[7].endsWith(",STATE,driving"));
+
+        double first = Double.parseDouble(rows[1].substring(0, rows[1].indexOf(',')));
+        double later = Double.parseDouble(rows[5].substring(0, rows[5].indexOf(',')));
+        assertTrue(later - first >= 1);
+    }
+
+    @Test
+    public void testChangesAreDroppedInsteadOfWaiting() throws Exception {
+        File file = folder.newFile("telemetry.xtr");
+        TelemetryBuffer buffer = new TelemetryBuffer(64, 0);
+        buffer.claim();
+        TelemetryRecorder recorder = new TelemetryRecorder(file, new String[0], 4);
+        buffer.setRecorder(recorder);
+        for (int i = 0; i < 10; i++) {
+            buffer.line(Integer.toString(i));
+        }
+        buffer.publish();
+        recorder.close();
+
+        assertEquals(6, recorder.getDropped());
+        assertEquals(5, toCsv(file).split("\n").length);
+    }
+
+    @Test
+    public void testWritesFromOtherThreadsAreRecorded() throws Exception {
+        File file = folder.newFile("telemetry.xtr");
+        final TelemetryBuffer buffer = new TelemetryBuffer(8, 1);
+        TelemetryRecorder recorder = new TelemetryRecorder(file, new String[] {"SPEED"}, 64);
+        buffer.setRecorder(recorder);
+
+        // Like a linear OpMode, nothing ever claims the buffer
+        Thread opMode = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                buffer.record(0, 0.25);
+                buffer.line("LEFT 1");
+            }
+        });
+        opMode.start();
+        opMode.join();
+        assertTrue(buffer.drainTo(buffer.newFrame()));
+        recorder.close();
+
+        String[] rows = toCsv(file).split("\n");
+        assertEquals(3, rows.length);
+        assertTrue(rows[1].endsWith(",SPEED,0.25"));
+        assertTrue(rows[2].endsWith(",,LEFT 1"));
+    }
+
+    @Test
+    public void testWriterFailuresAreReportedOnClose() throws Exception {
+        File file = folder.newFile("telemetry.xtr");
+        TelemetryBuffer buffer = new TelemetryBuffer(8, 2);
+        buffer.claim();
+        // The second key has no name, the writer can't encode it
+        TelemetryRecorder recorder = new TelemetryRecorder(file, new String[] {"SPEED"}, 64);
+        buffer.setRecorder(recorder);
+        buffer.record(1, 0.5);
+        buffer.publish();
+
+        try {
+            recorder.close();
+            fail("The failure should have been reported");
+        } catch (IOException ex) {
+            assertTrue(ex.getCause() instanceof ArrayIndexOutOfBoundsException);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOtherFilesAreRejected() throws Exception {
+        TelemetryRecording.toCsv(new ByteArrayInputStream(new byte[] {'X', 'V', 'T', '1', 0, 0, 0, 0, 0, 0, 0, 0}),
+                new StringWriter());
+    }
+
+    private static String toCsv(File file) throws Exception {
+        StringWriter csv = new StringWriter();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            TelemetryRecording.toCsv(in, csv);
+        } finally {
+            in.close();
+        }
+        return csv.toString();
+    }
+}
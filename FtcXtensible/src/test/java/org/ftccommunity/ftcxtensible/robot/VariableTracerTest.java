@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VariableTracerTest {
+    @Test
+    public void testTracesPrimitiveFieldsOnly() throws Exception {
+        Traced traced = new Traced();
+        VariableTracer tracer = new VariableTracer(traced, 8);
+
+        assertEquals(5, tracer.getFieldCount());
+        for (int i = 0; i < tracer.getFieldCount(); i++) {
+            assertTrue(!tracer.getName(i).equals("name") && !tracer.getName(i).equals("skipped"));
+        }
+    }
+
+    @Test
+    public void testKeepsTheNewestRows() throws Exception {
+        Traced traced = new Traced();
+        VariableTracer tracer = new VariableTracer(traced, 8);
+        for (int loop = 1; loop <= 20; loop++) {
+            traced.count = loop;
+            traced.power = loop / 4.0;
+            traced.running = loop % 2 == 0;
+            tracer.log(loop, loop * 1000L);
+        }
+
+        assertEquals(8, tracer.size());
+        int count = indexOf(tracer, "count");
+        int power = indexOf(tracer, "power");
+        int running = indexOf(tracer, "running");
+        for (int row = 0; row < 8; row++) {
+            int loop = 13 + row;
+            assertEquals(loop, tracer.getLoop(row));
+            assertEquals(loop, tracer.get(count, row), 0);
+            assertEquals(loop / 4.0, tracer.get(power, row), 0);
+            assertEquals(loop % 2 == 0 ? 1 : 0, tracer.get(running, row), 0);
+        }
+    }
+
+    @Test
+    public void testWritesCompactRows() throws Exception {
+        Traced traced = new Traced();
+        VariableTracer tracer = new VariableTracer(traced, 8);
+        for (int loop = 1; loop <= 3; loop++) {
+            tracer.log(loop, loop);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tracer.write(bytes);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(0x58565431, in.readInt());
+        assertEquals(5, in.readShort());
+        int header = 4 + 2;
+        for (int i = 0; i < 5; i++) {
+            String name = in.readUTF();
+            in.readByte();
+            header += 2 + name.length() + 1;
+        }
+        assertEquals(3, in.readInt());
+        header += 4;
+
+        // loop + time + int + double + boolean + float + boxed double
+        int row = 4 + 8 + 4 + 8 + 1 + 4 + 8;
+        assertEquals(header + 3 * row, bytes.size());
+    }
+
+    @Test
+    public void testLoggingDoesNotAllocate() throws Exception {
+        Traced traced = new Traced();
+        VariableTracer tracer = new VariableTracer(traced, 1024);
+        for (int loop = 0; loop < 20000; loop++) {
+            traced.count = loop;
+            tracer.log(loop, loop);
+        }
+
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+
+        long start = allocatedBytes();
+        for (int loop = 0; loop < 100000; loop++) {
+            traced.count = loop;
+            tracer.log(loop, loop);
+        }
+        long allocated = allocatedBytes() - start - overhead;
+
+        assertEquals("Bytes allocated per traced loop", 0, allocated / 100000);
+    }
+
+    private static int indexOf(VariableTracer tracer, String name) {
+        for (int i = 0; i < tracer.getFieldCount(); i++) {
+            if (tracer.getName(i).equals(name)) {
+                return i;
+            }
+        }
+
+        throw new AssertionError(name + " is not traced");
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @SuppressWarnings("unused")
+    private static class Traced {
+        private static int ignored;
+        private int count;
+        private double power;
+        private boolean running;
+        private float heading;
+        private Double target = 1.5;
+        private String name = "traced";
+        private transient int skipped;
+    }
+}
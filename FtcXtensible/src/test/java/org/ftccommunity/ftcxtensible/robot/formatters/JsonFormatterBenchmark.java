@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot.formatters;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.Locale;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Formats the same batch of log records with the old formatter, which built a {@link Gson} for
+ * every record, and with {@link JsonFormatter}, and logs the time and memory each took per
+ * record.
+ * <p>
+ * This is skipped in the default test run, run it with
+ * {@code ./gradlew :FtcXtensible:test -Dxtensible.benchmarks=true}.</p>
+ */
+public class JsonFormatterBenchmark {
+    private static final int RECORDS = 256;
+    private static final int ROUNDS = 200;
+
+    @Before
+    public void onlyWhenBenchmarking() {
+        assumeTrue(Boolean.getBoolean("xtensible.benchmarks"));
+    }
+
+    @Test
+    public void testStreamingIsCheaperThanGson() throws Exception {
+        LogRecord[] records = new LogRecord[RECORDS];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new LogRecord(i % 8 == 0 ? Level.WARNING : Level.INFO,
+                    "Motor " + i + " at power 0." + i + ", \"ok\"");
+            records[i].setLoggerName("robot");
+        }
+
+        final JsonFormatter streaming = new JsonFormatter();
+        final StringBuilder builder = new StringBuilder();
+        Result gson = run(records, new Target() {
+            private final Formatter formatter = new GsonFormatter();
+
+            @Override
+            public int format(LogRecord record) {
+                return formatter.format(record).length();
+            }
+        });
+        Result string = run(records, new Target() {
+            @Override
+            public int format(LogRecord record) {
+                return streaming.format(record).length();
+            }
+        });
+        Result reused = run(records, new Target() {
+            @Override
+            public int format(LogRecord record) throws Exception {
+                builder.setLength(0);
+                streaming.format(record, builder);
+                return builder.length();
+            }
+        });
+
+        Logger.getLogger(getClass().getName()).info("JSON log formatter, per record\n  gson:      " + gson +
+                "\n  streaming: " + string + "\n  reused:    " + reused);
+        assertTrue(reused.bytes < gson.bytes);
+    }
+
+    private static Result run(LogRecord[] records, Target target) throws Exception {
+        // Warm up first
+        long length = 0;
+        for (int round = 0; round < ROUNDS / 4; round++) {
+            for (LogRecord record : records) {
+                length += target.format(record);
+            }
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (LogRecord record : records) {
+                length += target.format(record);
+            }
+        }
+        long time = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        assertTrue(length > 0);
+
+        long count = (long) ROUNDS * RECORDS;
+        return new Result(time / count, allocated / count);
+    }
+
+    private interface Target {
+        int format(LogRecord record) throws Exception;
+    }
+
+    /**
+     * The formatter as it was, with a new {@link Gson} for every record
+     */
+    private static class GsonFormatter extends Formatter {
+        @Override
+        public String format(LogRecord r) {
+            Gson gson = new GsonBuilder().create();
+            return gson.toJson(new Json(r.getLevel().toString(), new Date(r.getMillis()), formatMessage(r)));
+        }
+    }
+
+    private static class Json {
+        private final String level;
+        private final Date date;
+        private final String message;
+
+        Json(String level, Date date, String message) {
+            this.level = level;
+            this.date = date;
+            this.message = message;
+        }
+    }
+
+    private static class Result {
+        private final long nanos;
+        private final long bytes;
+
+        Result(long nanos, long bytes) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%6d ns, %6d bytes allocated", nanos, bytes);
+        }
+    }
+}
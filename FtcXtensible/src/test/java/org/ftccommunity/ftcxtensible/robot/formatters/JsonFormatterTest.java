@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.robot.formatters;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.util.ListResourceBundle;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class JsonFormatterTest {
+    @Test
+    public void testRecordsAreValidJson() throws Exception {
+        LogRecord record = new LogRecord(Level.WARNING, "quote \" slash \\ tab \t line\n bell \u0007 sep \u2028");
+        record.setMillis(1451606400000L);
+        record.setLoggerName("robot");
+
+        String json = new JsonFormatter().format(record);
+        assertFalse(json.contains("\n"));
+        JsonObject object = new JsonParser().parse(json).getAsJsonObject();
+        assertEquals("WARNING", object.get("level").getAsString());
+        assertEquals(1451606400000L, object.get("time").getAsLong());
+        assertEquals("robot", object.get("logger").getAsString());
+        assertEquals(record.getMessage(), object.get("message").getAsString());
+    }
+
+    @Test
+    public void testParametersAreFilledIn() throws Exception {
+        LogRecord record = new LogRecord(Level.INFO, "speed {0}");
+        record.setParameters(new Object[] {"fast"});
+        record.setMillis(5);
+
+        assertEquals("{\"level\":\"INFO\",\"time\":5,\"message\":\"speed fast\"}", new JsonFormatter().format(record));
+    }
+
+    @Test
+    public void testMessagesAreLocalizedWithTheResourceBundle() throws Exception {
+        LogRecord record = new LogRecord(Level.INFO, "motor.stalled");
+        record.setResourceBundle(new ListResourceBundle() {
+            @Override
+            protected Object[][] getContents() {
+                return new Object[][] {{"motor.stalled", "The motor stalled"}};
+            }
+        });
+        record.setMillis(5);
+
+        assertEquals("{\"level\":\"INFO\",\"time\":5,\"message\":\"The motor stalled\"}",
+                new JsonFormatter().format(record));
+    }
+
+    @Test
+    public void testFormattingIntoABuilder() throws Exception {
+        JsonFormatter formatter = new JsonFormatter();
+        LogRecord record = new LogRecord(Level.FINE, "a");
+        record.setMillis(1);
+        StringBuilder builder = new StringBuilder();
+        formatter.format(record, builder);
+        builder.append('\n');
+        formatter.format(record, builder);
+        assertEquals("{\"level\":\"FINE\",\"time\":1,\"message\":\"a\"}\n{\"level\":\"FINE\",\"time\":1,\"message\":\"a\"}",
+                builder.toString());
+    }
+}
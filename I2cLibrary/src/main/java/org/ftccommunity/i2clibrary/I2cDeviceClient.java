@@ -24,6 +24,7 @@ import com.qualcomm.robotcore.eventloop.opmode.OpMode;
 import com.qualcomm.robotcore.hardware.I2cController;
 import com.qualcomm.robotcore.util.ElapsedTime;
 
+import org.ftccommunity.ftcxtensible.core.trace.EventTracer;
 import org.ftccommunity.i2clibrary.interfaces.IFunc;
 import org.ftccommunity.i2clibrary.interfaces.II2cDevice;
 import org.ftccommunity.i2clibrary.interfaces.II2cDeviceClient;
@@ -51,6 +52,7 @@ public final class I2cDeviceClient implements II2cDeviceClient, IOpModeStateTran
 
     private static final int dibCacheOverhead = 4;       // this many bytes at start of writeCache are system overhead
     private static final int ibActionFlag = 31;          // index of the action flag in our write cache
+    private static final String PORT_READY_EVENT = "I2cDeviceClient.portIsReady"; // traced around each callback
     public final II2cDevice i2cDevice;                  // the device we are talking to
     private final Callback callback;                   // the callback object on which we actually receive callbacks
     private final ElapsedTime timeSinceLastHeartbeat;     // keeps track of our need for doing heartbeats
@@ -753,7 +755,12 @@ public final class I2cDeviceClient implements II2cDeviceClient, IOpModeStateTran
         // At the moment we are called, we are assured that the read buffer / write buffer for our port in the
         // USB device is not currently busy.
         {
-            updateStateMachines(UPDATE_STATE_MACHINE.FROM_CALLBACK);
+            EventTracer.begin(PORT_READY_EVENT);
+            try {
+                updateStateMachines(UPDATE_STATE_MACHINE.FROM_CALLBACK);
+            } finally {
+                EventTracer.end(PORT_READY_EVENT);
+            }
         }
 
         // The user has new data for us to write. We could do nothing, in which case the data
@@ -0,0 +1,280 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.core.trace;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A low overhead tracer of what each thread is doing, exported in the Chrome {@code trace_event}
+ * format so the loop thread, the I<sup>2</sup>C threads and the other background threads can be
+ * seen on one timeline (open the export in {@code chrome://tracing}).
+ * <p>
+ * Every thread writes into its own fixed-size ring buffer, so recording an event never takes a
+ * lock and never allocates once the thread's ring exists; when the ring is full the oldest events
+ * are overwritten. Event names should be constants, they are kept by reference. While tracing is
+ * disabled, recording is a single volatile read.</p>
+ *
+ * @author David Sargent
+ * @since 0.3.2
+ */
+public final class EventTracer {
+    /**
+     * The default number of events kept per thread
+     */
+    public static final int DEFAULT_EVENTS_PER_THREAD = 8192;
+
+    private static final byte BEGIN = 'B';
+    private static final byte END = 'E';
+    private static final byte COMPLETE = 'X';
+
+    private static final CopyOnWriteArrayList<Ring> rings = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<Ring> currentRing = new ThreadLocal<>();
+    private static volatile boolean enabled;
+    private static volatile int capacity = DEFAULT_EVENTS_PER_THREAD;
+    private static volatile long epoch;
+    private static volatile int generation;
+
+    private EventTracer() {
+        throw new AssertionError("No EventTracer for you!");
+    }
+
+    /**
+     * Starts tracing with the {@link #DEFAULT_EVENTS_PER_THREAD}, throwing away anything traced
+     * before
+     */
+    public static void enable() {
+        enable(DEFAULT_EVENTS_PER_THREAD);
+    }
+
+    /**
+     * Starts tracing, throwing away anything traced before
+     *
+     * @param eventsPerThread how many events to keep for each thread, rounded up to a power of
+     *                        two. An export leaves out the oldest of those, its slot is the one
+     *                        the next event is written to.
+     */
+    public static synchronized void enable(int eventsPerThread) {
+        if (eventsPerThread <= 0) {
+            throw new IllegalArgumentException("At least one event per thread must be kept");
+        }
+
+        enabled = false;
+        rings.clear();
+        generation++;
+        capacity = Integer.highestOneBit(eventsPerThread - 1) << 1;
+        epoch = System.nanoTime();
+        enabled = true;
+    }
+
+    /**
+     * Stops tracing, the events traced so far are kept until tracing is enabled again
+     */
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records the start of a slice on the current thread, it should be matched by an
+     * {@link #end(String)} on the same thread
+     *
+     * @param name the name of the slice
+     */
+    public static void begin(@NotNull String name) {
+        if (enabled) {
+            ring().add(BEGIN, name, System.nanoTime(), 0);
+        }
+    }
+
+    /**
+     * Records the end of a slice on the current thread
+     *
+     * @param name the name of the slice
+     */
+    public static void end(@NotNull String name) {
+        if (enabled) {
+            ring().add(END, name, System.nanoTime(), 0);
+        }
+    }
+
+    /**
+     * Records a whole slice on the current thread, for callers that already have both times
+     *
+     * @param name      the name of the slice
+     * @param startTime when the slice started, from {@link System#nanoTime()}
+     * @param endTime   when the slice ended, from {@link System#nanoTime()}
+     */
+    public static void complete(@NotNull String name, long startTime, long endTime) {
+        if (enabled) {
+            ring().add(COMPLETE, name, startTime, endTime - startTime);
+        }
+    }
+
+    private static Ring ring() {
+        Ring ring = currentRing.get();
+        if (ring == null || ring.generation != generation) {
+            ring = new Ring(Thread.currentThread(), capacity, generation);
+            currentRing.set(ring);
+            rings.add(ring);
+        }
+
+        return ring;
+    }
+
+    /**
+     * Writes every kept event as Chrome {@code trace_event} JSON
+     *
+     * @param writer where to write the events, this is not closed
+     * @throws IOException if the writer fails
+     */
+    public static void write(@NotNull Writer writer) throws IOException {
+        long start = epoch;
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        for (Ring ring : rings) {
+            first = ring.write(writer, start, first);
+        }
+        writer.write("]}");
+        writer.flush();
+    }
+
+    /**
+     * Writes every kept event to a file
+     *
+     * @param file the file to write
+     * @throws IOException if the file can't be written
+     * @see #write(Writer)
+     */
+    public static void write(@NotNull File file) throws IOException {
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            write(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void appendString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    private static String micros(long nanos) {
+        return (nanos / 1000) + "." + String.format("%03d", Math.abs(nanos % 1000));
+    }
+
+    /**
+     * The events of one thread, written only by that thread. The write count is published after
+     * each event, so a reader can tell which slots it might have seen half-written.
+     */
+    private static final class Ring {
+        private final long threadId;
+        private final String threadName;
+        private final int generation;
+        private final int mask;
+        private final byte[] phases;
+        private final String[] names;
+        private final long[] times;
+        private final long[] durations;
+        private volatile long written;
+
+        Ring(Thread thread, int capacity, int generation) {
+            threadId = thread.getId();
+            threadName = thread.getName();
+            this.generation = generation;
+            mask = capacity - 1;
+            phases = new byte[capacity];
+            names = new String[capacity];
+            times = new long[capacity];
+            durations = new long[capacity];
+        }
+
+        void add(byte phase, String name, long time, long duration) {
+            long count = written;
+            int index = (int) (count & mask);
+            phases[index] = phase;
+            names[index] = name;
+            times[index] = time;
+            durations[index] = duration;
+            written = count + 1;
+        }
+
+        boolean write(Writer writer, long epoch, boolean first) throws IOException {
+            long end = written;
+            long start = Math.max(0, end - mask - 1);
+
+            // Copy first, then drop anything the owner may have overwritten while copying
+            int size = (int) (end - start);
+            byte[] phaseCopy = new byte[size];
+            String[] nameCopy = new String[size];
+            long[] timeCopy = new long[size];
+            long[] durationCopy = new long[size];
+            for (int i = 0; i < size; i++) {
+                int index = (int) ((start + i) & mask);
+                phaseCopy[i] = phases[index];
+                nameCopy[i] = names[index];
+                timeCopy[i] = times[index];
+                durationCopy[i] = durations[index];
+            }
+            // The slot after the last published event may be in flight and aliases the oldest one
+            long safe = Math.max(0, written - mask);
+
+            if (!first) {
+                writer.write(',');
+            }
+            writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + threadId +
+                    ",\"args\":{\"name\":");
+            appendString(writer, threadName);
+            writer.write("}}");
+
+            for (int i = (int) Math.max(0, safe - start); i < size; i++) {
+                writer.write(",{\"name\":");
+                appendString(writer, nameCopy[i] == null ? "" : nameCopy[i]);
+                writer.write(",\"ph\":\"" + (char) phaseCopy[i] + "\",\"pid\":1,\"tid\":" + threadId +
+                        ",\"ts\":" + micros(Math.max(0, timeCopy[i] - epoch)));
+                if (phaseCopy[i] == COMPLETE) {
+                    writer.write(",\"dur\":" + micros(durationCopy[i]));
+                }
+                writer.write('}');
+            }
+
+            return false;
+        }
+    }
+}
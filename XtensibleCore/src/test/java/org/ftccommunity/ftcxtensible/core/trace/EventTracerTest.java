@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2016 David Sargent
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM,OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.ftccommunity.ftcxtensible.core.trace;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventTracerTest {
+    @After
+    public void tearDown() throws Exception {
+        EventTracer.disable();
+    }
+
+    @Test
+    public void testDisabledRecordsNothing() throws Exception {
+        EventTracer.enable();
+        EventTracer.disable();
+        EventTracer.begin("ignored");
+        EventTracer.end("ignored");
+
+        assertFalse(export().contains("ignored"));
+    }
+
+    @Test
+    public void testEachThreadGetsItsOwnTimeline() throws Exception {
+        EventTracer.enable();
+        EventTracer.begin("loop");
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                EventTracer.complete("i2c", start, start + 1500);
+            }
+        }, "I2C \"worker\"");
+        worker.start();
+        worker.join();
+        EventTracer.end("loop");
+
+        String json = export();
+        assertTrue(json.startsWith("{") && json.endsWith("]}"));
+        assertTrue(json.contains("\"name\":\"loop\",\"ph\":\"B\",\"pid\":1,\"tid\":" + Thread.currentThread().getId()));
+        assertTrue(json.contains("\"name\":\"loop\",\"ph\":\"E\",\"pid\":1,\"tid\":" + Thread.currentThread().getId()));
+        assertTrue(json.contains("\"name\":\"i2c\",\"ph\":\"X\",\"pid\":1,\"tid\":" + worker.getId()));
+        assertTrue(json.contains("\"dur\":1.500"));
+        assertTrue(json.contains("\"args\":{\"name\":\"I2C \\\"worker\\\"\"}"));
+    }
+
+    @Test
+    public void testKeepsOnlyTheNewestEvents() throws Exception {
+        EventTracer.enable(4);
+        for (int i = 0; i < 10; i++) {
+            EventTracer.begin("event" + i);
+        }
+
+        // The oldest slot is also the next one written, an export can't trust it
+        String json = export();
+        assertEquals(3, count(json, "\"ph\":\"B\""));
+        assertFalse(json.contains("\"event6\""));
+        assertTrue(json.contains("\"event7\""));
+        assertTrue(json.contains("\"event9\""));
+    }
+
+    @Test
+    public void testEnablingAgainStartsFresh() throws Exception {
+        EventTracer.enable();
+        EventTracer.begin("old");
+        EventTracer.enable();
+        EventTracer.begin("new");
+
+        String json = export();
+        assertFalse(json.contains("\"old\""));
+        assertTrue(json.contains("\"new\""));
+    }
+
+    @Test
+    public void testExportWhileWritingSkipsTornEvents() throws Exception {
+        EventTracer.enable(16);
+        final String[] names = new String[64];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "event" + i;
+        }
+
+        // Every event carries its own id in its duration, a torn slot would mix two events
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; running.get(); i = (i + 1) % names.length) {
+                    long start = System.nanoTime();
+                    EventTracer.complete(names[i], start, start + (i + 1) * 1000L);
+                }
+            }
+        });
+        worker.start();
+
+        Pattern event = Pattern.compile("\\{\"name\":\"event(\\d+)\"[^}]*\"dur\":(\\d+)\\.000\\}");
+        try {
+            for (int round = 0; round < 2000; round++) {
+                Matcher matcher = event.matcher(export());
+                while (matcher.find()) {
+                    assertEquals(matcher.group(), Integer.parseInt(matcher.group(1)) + 1,
+                            Integer.parseInt(matcher.group(2)));
+                }
+            }
+        } finally {
+            running.set(false);
+            worker.join();
+        }
+    }
+
+    private static String export() throws Exception {
+        StringWriter writer = new StringWriter();
+        EventTracer.write(writer);
+        return writer.toString();
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+
+        return count;
+    }
+}